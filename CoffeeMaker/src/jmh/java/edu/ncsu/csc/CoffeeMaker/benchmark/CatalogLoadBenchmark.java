@@ -0,0 +1,126 @@
+package edu.ncsu.csc.CoffeeMaker.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import edu.ncsu.csc.CoffeeMaker.CoffeeMakerApplication;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.repositories.IngredientRepository;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+
+/**
+ * Bulk load of the ingredient catalog: 10,000 new ingredients saved with one
+ * `IngredientService.saveAll`, against the database configured in
+ * application.yml, with JDBC batches of 1 (every insert sent on its own) and of
+ * 50 (as configured). Scores are per row, so rows per second is one second
+ * over the score.
+ *
+ * Needs the same MySQL database as the tests. Run with `mvn -P benchmark
+ * test-compile exec:exec -Djmh.args="CatalogLoadBenchmark"`.
+ */
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.SingleShotTime )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@Warmup ( iterations = 2 )
+@Measurement ( iterations = 5 )
+@Fork ( 1 )
+public class CatalogLoadBenchmark {
+
+    /** Number of ingredients loaded by each invocation */
+    private static final int               ROWS         = 10_000;
+
+    /** Number of rows removed by each statement when cleaning up */
+    private static final int               DELETE_CHUNK = 1_000;
+
+    /** Number of statements sent to the database in each JDBC batch */
+    @Param ( { "1", "50" } )
+    private int                            batchSize;
+
+    /** The application, without a web server */
+    private ConfigurableApplicationContext context;
+
+    /** Saves the ingredients */
+    private IngredientService              ingredientService;
+
+    /** Removes them again */
+    private IngredientRepository           ingredientRepository;
+
+    /** Ingredients to load; new ones for every invocation */
+    private List<Ingredient>               ingredients;
+
+    /** Distinguishes the names of one invocation's ingredients from the last */
+    private int                            invocation;
+
+    /**
+     * Starts the application with the JDBC batch size being measured.
+     */
+    @Setup ( Level.Trial )
+    public void start () {
+        context = new SpringApplicationBuilder( CoffeeMakerApplication.class ).web( WebApplicationType.NONE )
+                .properties( "spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize )
+                .run();
+        ingredientService = context.getBean( IngredientService.class );
+        ingredientRepository = context.getBean( IngredientRepository.class );
+    }
+
+    /**
+     * Creates the ingredients for the next load.
+     */
+    @Setup ( Level.Invocation )
+    public void prepare () {
+        invocation++;
+        ingredients = new ArrayList<Ingredient>( ROWS );
+        for ( int i = 0; i < ROWS; i++ ) {
+            ingredients.add( new Ingredient( "Load-" + invocation + "-" + i, i ) );
+        }
+    }
+
+    /**
+     * Removes the ingredients the last load saved, so the table is the same
+     * size for every invocation.
+     */
+    @TearDown ( Level.Invocation )
+    public void clean () {
+        for ( int from = 0; from < ROWS; from += DELETE_CHUNK ) {
+            ingredientRepository.deleteInBatch( ingredients.subList( from, Math.min( ROWS, from + DELETE_CHUNK ) ) );
+        }
+    }
+
+    /**
+     * Stops the application.
+     */
+    @TearDown ( Level.Trial )
+    public void stop () {
+        context.close();
+    }
+
+    /**
+     * Saves the ingredients.
+     */
+    @Benchmark
+    @OperationsPerInvocation ( ROWS )
+    public void saveAll () {
+        ingredientService.saveAll( ingredients );
+    }
+
+}
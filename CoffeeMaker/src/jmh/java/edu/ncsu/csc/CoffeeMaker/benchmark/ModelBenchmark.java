@@ -0,0 +1,156 @@
+package edu.ncsu.csc.CoffeeMaker.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+
+/**
+ * Microbenchmarks of the lookups and updates the Inventory and Recipe models
+ * make on every purchase and restock, across Inventories of 10 to 100,000
+ * ingredients and Recipes of 1 to 50. The models are used as plain objects, so
+ * no database or Spring context is involved.
+ *
+ * Run with `mvn -P benchmark test-compile exec:exec`; allocation rates are
+ * reported by the `gc` profiler, enabled by default in the profile.
+ */
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.NANOSECONDS )
+@Warmup ( iterations = 3, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class ModelBenchmark {
+
+    /** Starting amount of every ingredient; enough for any iteration */
+    private static final int STOCK = 1_000_000_000;
+
+    /** Number of ingredients in the Inventory */
+    @Param ( { "10", "100", "1000", "10000", "100000" } )
+    private int              inventorySize;
+
+    /**
+     * Number of ingredients in the Recipe; spread evenly over the Inventory,
+     * so a Recipe larger than the Inventory names some ingredients twice
+     */
+    @Param ( { "1", "10", "50" } )
+    private int              recipeSize;
+
+    /** The Inventory */
+    private Inventory        inventory;
+
+    /** The Recipe */
+    private Recipe           recipe;
+
+    /** Restock of every ingredient in the Recipe */
+    private List<Ingredient> restock;
+
+    /** Name of the last ingredient in the Inventory; the worst case for a scan */
+    private String           lastInventoryName;
+
+    /** Name of the last ingredient in the Recipe; the worst case for a scan */
+    private String           lastRecipeName;
+
+    /**
+     * Builds the Inventory and Recipe. Run again for each iteration so that
+     * `useIngredients` never runs the Inventory dry.
+     */
+    @Setup ( Level.Iteration )
+    public void setup () {
+        final List<Ingredient> ingredients = new ArrayList<Ingredient>( inventorySize );
+        for ( int i = 0; i < inventorySize; i++ ) {
+            ingredients.add( new Ingredient( name( i ), STOCK ) );
+        }
+        inventory = new Inventory( ingredients );
+        lastInventoryName = name( inventorySize - 1 );
+
+        recipe = new Recipe();
+        recipe.setName( "Benchmark" );
+        recipe.setPrice( 50 );
+        restock = new ArrayList<Ingredient>( recipeSize );
+        for ( int j = 0; j < recipeSize; j++ ) {
+            final String name = name( (int) ( (long) j * inventorySize / recipeSize ) % inventorySize );
+            recipe.addIngredient( new Ingredient( name, 1 ) );
+            restock.add( new Ingredient( name, STOCK ) );
+            lastRecipeName = name;
+        }
+    }
+
+    /**
+     * Name of the ingredient with the provided index.
+     *
+     * @param i
+     *            index of the ingredient
+     * @return its name
+     */
+    private static String name ( final int i ) {
+        return "Ingredient-" + i;
+    }
+
+    /**
+     * Looks up the last ingredient in the Inventory by name.
+     *
+     * @return the ingredient
+     */
+    @Benchmark
+    public Ingredient inventoryFindIngredientByName () {
+        return inventory.findIngredientByName( lastInventoryName );
+    }
+
+    /**
+     * Checks whether the Inventory holds enough for the Recipe.
+     *
+     * @return whether it does
+     */
+    @Benchmark
+    public boolean enoughIngredients () {
+        return inventory.enoughIngredients( recipe );
+    }
+
+    /**
+     * Takes the Recipe's ingredients out of the Inventory.
+     *
+     * @return whether they were taken
+     */
+    @Benchmark
+    public boolean useIngredients () {
+        return inventory.useIngredients( recipe );
+    }
+
+    /**
+     * Restocks the Recipe's ingredients.
+     *
+     * @return whether the restock succeeded
+     */
+    @Benchmark
+    public boolean addIngredients () {
+        return inventory.addIngredients( restock );
+    }
+
+    /**
+     * Looks up the last ingredient in the Recipe by name.
+     *
+     * @return the ingredient
+     */
+    @Benchmark
+    public Ingredient recipeFindIngredientByName () {
+        return recipe.findIngredientByName( lastRecipeName );
+    }
+
+}
@@ -0,0 +1,50 @@
+package edu.ncsu.csc.CoffeeMaker.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * DataSource that hands out connections to a read replica of the database
+ * inside of read-only transactions (`@Transactional ( readOnly = true )`), and
+ * to the primary everywhere else. The choice is made when a connection is
+ * taken, so this must sit behind a `LazyConnectionDataSourceProxy`: otherwise
+ * the transaction manager takes the connection before it has marked the
+ * transaction as read-only.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    /** Where a connection comes from */
+    public enum Target {
+        /** The database every write goes to */
+        PRIMARY,
+        /** A read-only copy of the primary, possibly lagging behind it */
+        REPLICA
+    }
+
+    /**
+     * Creates a ReadWriteRoutingDataSource.
+     *
+     * @param primary
+     *            pool of connections to the primary
+     * @param replica
+     *            pool of connections to the replica
+     */
+    public ReadWriteRoutingDataSource ( final DataSource primary, final DataSource replica ) {
+        final Map<Object, Object> targets = new HashMap<Object, Object>();
+        targets.put( Target.PRIMARY, primary );
+        targets.put( Target.REPLICA, replica );
+        setTargetDataSources( targets );
+        setDefaultTargetDataSource( primary );
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey () {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? Target.REPLICA : Target.PRIMARY;
+    }
+
+}
@@ -0,0 +1,32 @@
+package edu.ncsu.csc.CoffeeMaker.config;
+
+import java.sql.SQLException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.hibernate.CacheMode;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+
+/**
+ * HibernateJpaDialect for when read-only transactions are served by a replica
+ * that may lag behind the primary. What they read is never put in the
+ * second-level cache, where it could hide a newer version written to the
+ * primary until it expires; they still read from the cache as usual.
+ */
+public class ReplicaAwareJpaDialect extends HibernateJpaDialect {
+
+    /** Serial version UID, as HibernateJpaDialect is Serializable */
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Object beginTransaction ( final EntityManager entityManager, final TransactionDefinition definition )
+            throws PersistenceException, SQLException, TransactionException {
+        // set for every transaction, as the session may outlive this one
+        getSession( entityManager ).setCacheMode( definition.isReadOnly() ? CacheMode.GET : CacheMode.NORMAL );
+        return super.beginTransaction( entityManager, definition );
+    }
+
+}
@@ -0,0 +1,135 @@
+package edu.ncsu.csc.CoffeeMaker.config;
+
+import javax.sql.DataSource;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Splits reads from writes once `coffeemaker.datasource.replica.url` is set.
+ * Read-only transactions (listing recipes and ingredients, and displaying the
+ * Inventory) then take their connections from a pool for the replica, set up
+ * from `coffeemaker.datasource.replica.*` like `spring.datasource.*`, so
+ * displays do not compete with purchases and restocks for the primary. Reads
+ * from the replica may be as far behind as its replication lag. Without the
+ * setting, Spring Boot's single DataSource is used as usual.
+ */
+@Configuration
+@ConditionalOnProperty ( name = "coffeemaker.datasource.replica.url" )
+public class ReplicaDataSourceConfiguration {
+
+    /**
+     * Settings of the primary, from `spring.datasource`.
+     *
+     * @return the settings
+     */
+    @Bean
+    @Primary
+    @ConfigurationProperties ( "spring.datasource" )
+    public DataSourceProperties primaryDataSourceProperties () {
+        return new DataSourceProperties();
+    }
+
+    /**
+     * Pool of connections to the primary, tuned by
+     * `spring.datasource.hikari`.
+     *
+     * @return the pool
+     */
+    @Bean
+    @ConfigurationProperties ( "spring.datasource.hikari" )
+    public HikariDataSource primaryDataSource () {
+        final HikariDataSource primary = primaryDataSourceProperties().initializeDataSourceBuilder()
+                .type( HikariDataSource.class ).build();
+        primary.setPoolName( "primary" );
+        return primary;
+    }
+
+    /**
+     * Settings of the replica, from `coffeemaker.datasource.replica`.
+     *
+     * @return the settings
+     */
+    @Bean
+    @ConfigurationProperties ( "coffeemaker.datasource.replica" )
+    public DataSourceProperties replicaDataSourceProperties () {
+        return new DataSourceProperties();
+    }
+
+    /**
+     * Pool of read-only connections to the replica, tuned by
+     * `coffeemaker.datasource.replica.hikari`.
+     *
+     * @return the pool
+     */
+    @Bean
+    @ConfigurationProperties ( "coffeemaker.datasource.replica.hikari" )
+    public HikariDataSource replicaDataSource () {
+        final HikariDataSource replica = replicaDataSourceProperties().initializeDataSourceBuilder()
+                .type( HikariDataSource.class ).build();
+        replica.setPoolName( "replica" );
+        replica.setReadOnly( true );
+        return replica;
+    }
+
+    /**
+     * The DataSource used by JPA and everything else, which takes a connection
+     * from the primary or the replica once the first statement of a
+     * transaction is run.
+     *
+     * @return the DataSource
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource () {
+        final ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource( primaryDataSource(),
+                replicaDataSource() );
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy( routing );
+    }
+
+    /**
+     * Has Hibernate give its connection back at the end of every transaction,
+     * rather than holding it for the rest of the request, so that each
+     * transaction gets one from the right database.
+     *
+     * @return the customizer
+     */
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionsAfterTransaction () {
+        return properties -> properties.put( AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION );
+    }
+
+    /**
+     * Installs the `ReplicaAwareJpaDialect`, so that reads from the replica are
+     * kept out of the second-level cache.
+     *
+     * @return the post-processor
+     */
+    @Bean
+    public static BeanPostProcessor replicaAwareJpaDialect () {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization ( final Object bean, final String beanName ) {
+                if ( bean instanceof LocalContainerEntityManagerFactoryBean ) {
+                    ( (LocalContainerEntityManagerFactoryBean) bean ).setJpaDialect( new ReplicaAwareJpaDialect() );
+                }
+                return bean;
+            }
+        };
+    }
+
+}
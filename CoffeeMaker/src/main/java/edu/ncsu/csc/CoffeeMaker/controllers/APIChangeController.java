@@ -0,0 +1,39 @@
+package edu.ncsu.csc.CoffeeMaker.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import edu.ncsu.csc.CoffeeMaker.services.ChangeFeed;
+
+/**
+ * This is the controller that holds the REST endpoint pages use to be told of
+ * changes to the Inventory and the recipes as they happen, instead of polling
+ * for them.
+ *
+ */
+@RestController
+public class APIChangeController extends APIController {
+
+    /**
+     * ChangeFeed, to be autowired in by Spring, that sends the changes
+     */
+    @Autowired
+    private ChangeFeed feed;
+
+    /**
+     * REST API method to subscribe to changes, as a stream of Server-Sent
+     * Events. `ingredient` events carry the name and new amount of an
+     * ingredient, `recipe` events the name of a recipe saved or removed, and
+     * `resync` events mean the client should fetch everything again.
+     *
+     * @return the event stream
+     */
+    @GetMapping ( path = BASE_PATH + "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE )
+    public SseEmitter getChanges () {
+        return feed.subscribe();
+    }
+
+}
@@ -1,16 +1,25 @@
 package edu.ncsu.csc.CoffeeMaker.controllers;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.forms.OrderForm;
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
 import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.OptimisticRetry;
+import edu.ncsu.csc.CoffeeMaker.services.OrderPipeline;
 import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
 
 /**
@@ -42,19 +51,54 @@ public class APICoffeeController extends APIController {
     @Autowired
     private RecipeService    recipeService;
 
+    /**
+     * Retries purchases that conflict with a concurrent update of the
+     * Inventory
+     */
+    @Autowired
+    private OptimisticRetry  retry;
+
+    /**
+     * Makes coffee in the background for orders placed with `async=true`
+     */
+    @Autowired
+    private OrderPipeline    pipeline;
+
+    /**
+     * How a batch of orders is handled when the request does not say
+     */
+    @Value ( "${coffeemaker.batch.mode:ALL_OR_NOTHING}" )
+    private BatchMode        defaultBatchMode;
+
     /**
      * REST API method to make coffee by completing a POST request with the ID
      * of the recipe as the path variable and the amount that has been paid as
-     * the body of the response
+     * the body of the response. With `async=true` the order is only accepted,
+     * and made in the background; its outcome can then be fetched from
+     * `/orders/{id}`.
      *
      * @param name
      *            recipe name
      * @param amtPaid
      *            amount paid
-     * @return The change the customer is due if successful
+     * @param async
+     *            whether to make the coffee in the background
+     * @return The change the customer is due if successful; the accepted order
+     *         if made in the background
      */
     @PostMapping ( BASE_PATH + "/makecoffee/{name}" )
-    public ResponseEntity makeCoffee ( @PathVariable ( "name" ) final String name, @RequestBody final int amtPaid ) {
+    public ResponseEntity makeCoffee ( @PathVariable ( "name" ) final String name, @RequestBody final int amtPaid,
+            @RequestParam ( name = "async", defaultValue = "false" ) final boolean async ) {
+        if ( async ) {
+            final OrderPipeline.Order order = pipeline.submit( name, amtPaid );
+            if ( order == null ) {
+                return ResponseEntity.status( HttpStatus.SERVICE_UNAVAILABLE ).header( HttpHeaders.RETRY_AFTER, "1" )
+                        .body( errorResponse( "Too many orders waiting, please try again" ) );
+            }
+            return ResponseEntity.status( HttpStatus.ACCEPTED )
+                    .location( URI.create( BASE_PATH + "orders/" + order.getId() ) ).body( toJson( order ) );
+        }
+
         final Recipe recipe = recipeService.findByName( name );
         if ( recipe == null ) {
             return new ResponseEntity( errorResponse( "No recipe selected" ), HttpStatus.NOT_FOUND );
@@ -73,6 +117,68 @@ public class APICoffeeController extends APIController {
 
     }
 
+    /**
+     * REST API method to make several beverages at once by completing a POST
+     * request with a list of orders (the name of a recipe and the amount paid
+     * for it) as the body. All orders are checked against, and taken out of,
+     * the inventory in a single transaction.
+     *
+     * @param orders
+     *            the beverages to make
+     * @param mode
+     *            ALL_OR_NOTHING to make every beverage or none of them, or
+     *            BEST_EFFORT to make as many as possible in order; defaults to
+     *            the `coffeemaker.batch.mode` setting
+     * @return The result of each order, in the order they were provided: the
+     *         change due if the beverage was made, or why it was not
+     */
+    @PostMapping ( BASE_PATH + "/makecoffee/batch" )
+    public ResponseEntity makeCoffeeBatch ( @RequestBody final List<OrderForm> orders,
+            @RequestParam ( name = "mode", required = false ) final BatchMode mode ) {
+        if ( null == orders || orders.isEmpty() ) {
+            return new ResponseEntity( errorResponse( "No orders provided" ), HttpStatus.BAD_REQUEST );
+        }
+        final boolean allOrNothing = BatchMode.ALL_OR_NOTHING == ( null == mode ? defaultBatchMode : mode );
+
+        final List<Recipe> toMake = new ArrayList<Recipe>( orders.size() );
+        final String[] failures = new String[orders.size()];
+        boolean anyFailed = false;
+        for ( int i = 0; i < orders.size(); i++ ) {
+            final OrderForm order = orders.get( i );
+            final Recipe recipe = recipeService.findByName( order.getRecipe() );
+            if ( recipe == null ) {
+                failures[i] = "No recipe selected";
+            }
+            else if ( order.getAmtPaid() < recipe.getPrice() ) {
+                failures[i] = "Not enough money paid";
+            }
+            anyFailed |= null != failures[i];
+            toMake.add( null == failures[i] ? recipe : null );
+        }
+
+        final boolean[] made = allOrNothing && anyFailed ? new boolean[orders.size()]
+                : retry.run( () -> inventoryService.consumeAll( toMake, allOrNothing ) );
+
+        final List<OrderResult> results = new ArrayList<OrderResult>( orders.size() );
+        boolean anyMade = false;
+        for ( int i = 0; i < orders.size(); i++ ) {
+            final OrderForm order = orders.get( i );
+            if ( made[i] ) {
+                anyMade = true;
+                results.add( new OrderResult( order.getRecipe(), "success",
+                        String.valueOf( order.getAmtPaid() - toMake.get( i ).getPrice() ) ) );
+            }
+            else if ( null != failures[i] ) {
+                results.add( new OrderResult( order.getRecipe(), "failed", failures[i] ) );
+            }
+            else {
+                results.add( new OrderResult( order.getRecipe(), "failed",
+                        allOrNothing && anyFailed ? "Batch cancelled" : "Not enough inventory" ) );
+            }
+        }
+        return new ResponseEntity<String>( toJson( results ), anyMade ? HttpStatus.OK : HttpStatus.CONFLICT );
+    }
+
     /**
      * Helper method to make coffee
      *
@@ -85,14 +191,12 @@ public class APICoffeeController extends APIController {
      */
     public int makeCoffee ( final Recipe toPurchase, final int amtPaid ) {
         int change = amtPaid;
-        final Inventory inventory = inventoryService.getInventory();
 
         if ( toPurchase == null ) {
             throw new IllegalArgumentException( "Recipe not found" );
         }
         else if ( toPurchase.getPrice() <= amtPaid ) {
-            if ( inventory.useIngredients( toPurchase ) ) {
-                inventoryService.save( inventory );
+            if ( retry.run( () -> inventoryService.consume( toPurchase ) ) ) {
                 change = amtPaid - toPurchase.getPrice();
                 return change;
             }
@@ -104,4 +208,47 @@ public class APICoffeeController extends APIController {
         // not enough money
         return change;
     }
+
+    /**
+     * How a batch of orders should be made.
+     */
+    public enum BatchMode {
+        /** Every order in the batch is made, or none of them are */
+        ALL_OR_NOTHING,
+        /** Orders are made in turn for as long as there is enough inventory */
+        BEST_EFFORT
+    }
+
+    /**
+     * The result of a single order in a batch, sent back through the REST API.
+     * Contains the recipe ordered, the status of the order (success/failed)
+     * and either the change due or why the order failed.
+     */
+    static protected class OrderResult {
+
+        /** Name of the recipe that was ordered */
+        String recipe;
+
+        /** Status of the order (success/failed) */
+        String status;
+
+        /** Change due if successful, what went wrong otherwise */
+        String message;
+
+        /**
+         * Creates an OrderResult.
+         *
+         * @param recipe
+         *            The recipe that was ordered
+         * @param status
+         *            The status (success/failed)
+         * @param message
+         *            The change due, or the reason for failure
+         */
+        public OrderResult ( final String recipe, final String status, final String message ) {
+            this.recipe = recipe;
+            this.status = status;
+            this.message = message;
+        }
+    }
 }
@@ -3,6 +3,7 @@ package edu.ncsu.csc.CoffeeMaker.controllers;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -12,9 +13,13 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+import edu.ncsu.csc.CoffeeMaker.services.OptimisticRetry;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * This is the controller that holds the REST endpoints that handle CRUD
@@ -38,12 +43,32 @@ public class APIIngredientController extends APIController {
     private IngredientService ingredientService;
 
     /**
-     * REST API method to provide GET access to all ingredients in the system
+     * Retries edits that conflict with a concurrent update of the Ingredient
+     */
+    @Autowired
+    private OptimisticRetry   retry;
+
+    /**
+     * Version of the ingredients, used as the ETag of the GET endpoints
+     */
+    @Autowired
+    private ResourceVersions  versions;
+
+    /**
+     * REST API method to provide GET access to all ingredients in the system.
+     * Answers with 304 Not Modified if the ingredients have not changed since
+     * the version in the request's If-None-Match header; neither is done when
+     * the ingredients are read from a read replica.
      *
+     * @param request
+     *            the request, checked for an If-None-Match header
      * @return JSON representation of all ingredients
      */
     @GetMapping ( BASE_PATH + "/ingredients" )
-    public List<Ingredient> getIngredients () {
+    public List<Ingredient> getIngredients ( final WebRequest request ) {
+        if ( versions.tagsReadOnlyReads() && request.checkNotModified( versions.etag( Resource.INGREDIENTS ) ) ) {
+            return null;
+        }
         return ingredientService.findAll();
     }
 
@@ -54,10 +79,15 @@ public class APIIngredientController extends APIController {
      *
      * @param name
      *            ingredient name
+     * @param request
+     *            the request, checked for an If-None-Match header
      * @return response to the request
      */
     @GetMapping ( BASE_PATH + "/ingredients/{name}" )
-    public ResponseEntity getIngredient ( @PathVariable ( "name" ) final String name ) {
+    public ResponseEntity getIngredient ( @PathVariable ( "name" ) final String name, final WebRequest request ) {
+        if ( request.checkNotModified( versions.etag( Resource.INGREDIENTS ) ) ) {
+            return null;
+        }
         final Ingredient ing = ingredientService.findByName( name );
         if ( ing == null ) {
             return new ResponseEntity( errorResponse( "No ingredient found with name " + name ), HttpStatus.NOT_FOUND );
@@ -80,14 +110,18 @@ public class APIIngredientController extends APIController {
     @PutMapping ( BASE_PATH + "/ingredients/{name}" )
     public ResponseEntity editIngredient ( @RequestBody final Ingredient ingredient ) {
 
-        final Ingredient ingr = ingredientService.findByName( ingredient.getName() );
+        final Ingredient ingr = retry.run( () -> {
+            final Ingredient current = ingredientService.findByName( ingredient.getName() );
+            if ( null != current ) {
+                current.setAmount( ingredient.getAmount() );
+                ingredientService.save( current );
+            }
+            return current;
+        } );
 
         if ( null == ingr ) {
             return new ResponseEntity( HttpStatus.NOT_FOUND );
         }
-
-        ingr.setAmount( ingredient.getAmount() );
-        ingredientService.save( ingr );
         return new ResponseEntity( ingr, HttpStatus.OK );
     }
 
@@ -108,11 +142,16 @@ public class APIIngredientController extends APIController {
                     successResponse( "Ingredient with the name " + ingredient.getName() + " already exists" ),
                     HttpStatus.CONFLICT );
         }
-        else {
+        try {
             ingredientService.save( ingredient );
-            return new ResponseEntity( successResponse( ingredient.getName() + " successfully created" ),
-                    HttpStatus.OK );
         }
+        catch ( final DataIntegrityViolationException e ) {
+            // created concurrently, and caught by the unique index
+            return new ResponseEntity(
+                    successResponse( "Ingredient with the name " + ingredient.getName() + " already exists" ),
+                    HttpStatus.CONFLICT );
+        }
+        return new ResponseEntity( successResponse( ingredient.getName() + " successfully created" ), HttpStatus.OK );
     }
 
     /**
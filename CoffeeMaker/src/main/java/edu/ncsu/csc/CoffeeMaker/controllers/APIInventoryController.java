@@ -1,17 +1,28 @@
 package edu.ncsu.csc.CoffeeMaker.controllers;
 
+import java.util.List;
+import java.util.NoSuchElementException;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import edu.ncsu.csc.CoffeeMaker.forms.RestockForm;
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryMovements;
 import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.OptimisticRetry;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * This is the controller that holds the REST endpoints that handle add and
@@ -28,25 +39,88 @@ import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
 @RestController
 public class APIInventoryController extends APIController {
 
+    /** Movements returned when no limit is asked for */
+    private static final int   DEFAULT_HISTORY_SIZE = 100;
+
     /**
      * InventoryService object, to be autowired in by Spring to allow for
      * manipulating the Inventory model
      */
     @Autowired
-    private InventoryService service;
+    private InventoryService   service;
+
+    /**
+     * Retries updates that conflict with a concurrent update of the Inventory
+     */
+    @Autowired
+    private OptimisticRetry    retry;
+
+    /**
+     * Version of the Inventory, used as the ETag of the GET endpoint
+     */
+    @Autowired
+    private ResourceVersions   versions;
+
+    /**
+     * Log of movements of the ingredients, and the levels projected from it
+     */
+    @Autowired
+    private InventoryMovements movements;
 
     /**
      * REST API endpoint to provide GET access to the CoffeeMaker's singleton
-     * Inventory. This will convert the Inventory to JSON.
+     * Inventory. This will convert the Inventory to JSON. Answers with 304
+     * Not Modified if the Inventory has not changed since the version in the
+     * request's If-None-Match header, unless it is read from a read replica.
      *
+     * @param request
+     *            the request, checked for an If-None-Match header
      * @return response to the request
      */
     @GetMapping ( BASE_PATH + "/inventory" )
-    public ResponseEntity getInventory () {
-        final Inventory inventory = service.getInventory();
+    public ResponseEntity getInventory ( final WebRequest request ) {
+        if ( versions.tagsReadOnlyReads() && request.checkNotModified( versions.etag( Resource.INVENTORY ) ) ) {
+            return null;
+        }
+        final Inventory inventory = service.findInventory();
         return new ResponseEntity( inventory, HttpStatus.OK );
     }
 
+    /**
+     * REST API endpoint to provide GET access to the level of every
+     * ingredient that has been in the Inventory, by name. Served from the
+     * levels projected from the log of movements, without going to the
+     * database.
+     *
+     * @return response to the request
+     */
+    @GetMapping ( BASE_PATH + "/inventory/levels" )
+    public ResponseEntity getLevels () {
+        return new ResponseEntity( movements.levels(), HttpStatus.OK );
+    }
+
+    /**
+     * REST API endpoint to provide GET access to the log of every change made
+     * to the levels of the Inventory's ingredients, oldest first.
+     *
+     * @param after
+     *            id of the last movement already seen; omit for the first
+     * @param limit
+     *            most movements to return
+     * @return response to the request: 400 if the limit is out of range
+     */
+    @GetMapping ( BASE_PATH + "/inventory/movements" )
+    public ResponseEntity getMovements ( @RequestParam ( name = "after", required = false ) final Long after,
+            @RequestParam ( name = "limit", required = false ) final Integer limit ) {
+        try {
+            return new ResponseEntity( movements.history( null == after ? 0 : after,
+                    null == limit ? DEFAULT_HISTORY_SIZE : limit ), HttpStatus.OK );
+        }
+        catch ( final IllegalArgumentException e ) {
+            return new ResponseEntity( errorResponse( e.getMessage() ), HttpStatus.BAD_REQUEST );
+        }
+    }
+
     /**
      * REST API endpoint to provide update access to CoffeeMaker's singleton
      * Inventory. This will update the Inventory of the CoffeeMaker by adding
@@ -58,12 +132,46 @@ public class APIInventoryController extends APIController {
      */
     @PutMapping ( BASE_PATH + "/inventory" )
     public ResponseEntity updateInventory ( @RequestBody final Inventory inventory ) {
-        final Inventory inventoryCurrent = service.getInventory();
-        inventoryCurrent.addIngredients( inventory.getIngInventory() );
-        service.save( inventoryCurrent );
+        final Inventory inventoryCurrent = retry.run( () -> {
+            final Inventory current = service.getInventory();
+            current.addIngredients( inventory.getIngInventory() );
+            service.save( current );
+            return current;
+        } );
         return new ResponseEntity( inventoryCurrent, HttpStatus.OK );
     }
 
+    /**
+     * REST API endpoint to restock many of the Inventory's ingredients at
+     * once, as for a delivery. Each line names an ingredient and an amount to
+     * `add` to it, an amount to `set` it to, or both. Lines are applied
+     * together in a single update, and purchases made meanwhile are not lost.
+     *
+     * @param lines
+     *            the lines of the delivery
+     * @return response to the request: 404 if an ingredient is not in the
+     *         Inventory, 400 if a line is invalid or an amount would be too
+     *         large, 409 if the ingredients stayed locked by other writers;
+     *         no line is applied in any of these cases
+     */
+    @PostMapping ( BASE_PATH + "/inventory/restock" )
+    public ResponseEntity restockInventory ( @RequestBody final List<RestockForm> lines ) {
+        try {
+            final int restocked = retry.run( () -> service.restock( lines ) );
+            return new ResponseEntity( successResponse( restocked + " ingredients restocked" ), HttpStatus.OK );
+        }
+        catch ( final PessimisticLockingFailureException e ) {
+            return new ResponseEntity( errorResponse( "The Inventory is busy; try the restock again" ),
+                    HttpStatus.CONFLICT );
+        }
+        catch ( final NoSuchElementException e ) {
+            return new ResponseEntity( errorResponse( e.getMessage() ), HttpStatus.NOT_FOUND );
+        }
+        catch ( final IllegalArgumentException e ) {
+            return new ResponseEntity( errorResponse( e.getMessage() ), HttpStatus.BAD_REQUEST );
+        }
+    }
+
     /**
      * REST API method to provide POST access to the Ingredient model. This is
      * used to create a new Ingredient by automatically converting the JSON
@@ -76,15 +184,21 @@ public class APIInventoryController extends APIController {
      */
     @PostMapping ( BASE_PATH + "/inventory" )
     public ResponseEntity addIngredient ( @RequestBody final Ingredient ingredient ) {
-        final Inventory inventoryCurrent = service.getInventory();
-        if ( null != inventoryCurrent.findIngredientByName( ingredient.getName() ) ) {
+        final boolean added = retry.run( () -> {
+            final Inventory inventoryCurrent = service.getInventory();
+            if ( null != inventoryCurrent.findIngredientByName( ingredient.getName() ) ) {
+                return false;
+            }
+            inventoryCurrent.addIngredient( ingredient );
+            service.save( inventoryCurrent );
+            return true;
+        } );
+        if ( !added ) {
             return new ResponseEntity(
                     successResponse( "Ingredient with the name " + ingredient.getName() + " already exists" ),
                     HttpStatus.CONFLICT );
         }
         else {
-            inventoryCurrent.addIngredient( ingredient );
-            service.save( inventoryCurrent );
             return new ResponseEntity( successResponse( ingredient.getName() + " successfully created" ),
                     HttpStatus.OK );
         }
@@ -0,0 +1,48 @@
+package edu.ncsu.csc.CoffeeMaker.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.ncsu.csc.CoffeeMaker.services.OrderPipeline;
+
+/**
+ * This is the controller that holds the REST endpoints for following orders
+ * that are being made in the background.
+ *
+ * Spring will automatically convert all of the ResponseEntity and List results
+ * to JSON
+ *
+ */
+@SuppressWarnings ( { "unchecked", "rawtypes" } )
+@RestController
+public class APIOrderController extends APIController {
+
+    /**
+     * OrderPipeline, to be autowired in by Spring, that makes orders in the
+     * background
+     */
+    @Autowired
+    private OrderPipeline pipeline;
+
+    /**
+     * REST API method to provide GET access to an order placed with
+     * `/makecoffee/{name}?async=true`: its status (QUEUED, BREWING, DONE or
+     * FAILED) and, once finished, the change due or why it failed.
+     *
+     * @param id
+     *            ID of the order
+     * @return response to the request
+     */
+    @GetMapping ( BASE_PATH + "/orders/{id}" )
+    public ResponseEntity getOrder ( @PathVariable ( "id" ) final String id ) {
+        final OrderPipeline.Order order = pipeline.find( id );
+        return null == order
+                ? new ResponseEntity( errorResponse( "No order found with id " + id ), HttpStatus.NOT_FOUND )
+                : new ResponseEntity( toJson( order ), HttpStatus.OK );
+    }
+
+}
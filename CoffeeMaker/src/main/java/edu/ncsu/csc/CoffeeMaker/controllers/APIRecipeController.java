@@ -1,19 +1,33 @@
 package edu.ncsu.csc.CoffeeMaker.controllers;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.AvailableRecipes;
+import edu.ncsu.csc.CoffeeMaker.services.RecipePage;
 import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeSnapshot;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * This is the controller that holds the REST endpoints that handle CRUD
@@ -30,21 +44,109 @@ import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
 @RestController
 public class APIRecipeController extends APIController {
 
+    /** Recipes listed on a page when the request does not say how many */
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * Names a recipe cannot have, as requests for `/recipes/{name}` or
+     * `/makecoffee/{name}` with them go to other endpoints; normalised
+     */
+    private static final Set<String> RESERVED_NAMES = Collections
+            .unmodifiableSet( new HashSet<String>( Arrays.asList( "available", "batch" ) ) );
+
     /**
      * RecipeService object, to be autowired in by Spring to allow for
      * manipulating the Recipe model
      */
     @Autowired
-    private RecipeService service;
+    private RecipeService    service;
+
+    /**
+     * Version of the recipes, used as the ETag of the GET endpoints
+     */
+    @Autowired
+    private ResourceVersions versions;
+
+    /**
+     * The recipes, already rendered to JSON
+     */
+    @Autowired
+    private RecipeSnapshot   snapshot;
+
+    /**
+     * The recipes that can be made right now
+     */
+    @Autowired
+    private AvailableRecipes available;
 
     /**
-     * REST API method to provide GET access to all recipes in the system
+     * Most recipes the recipe book holds
+     */
+    @Value ( "${coffeemaker.recipes.capacity:3}" )
+    private long             capacity;
+
+    /**
+     * REST API method to provide GET access to all recipes in the system.
+     * Answers with 304 Not Modified if the recipes have not changed since the
+     * version in the request's If-None-Match header.
+     *
+     * If any of the paging parameters are provided, answers with a single page
+     * of recipes instead, as `{"recipes": [...], "next": cursor}`. The next
+     * page is fetched by passing `next` back as `after`, along with the same
+     * sort and price range; `next` is null on the last page.
      *
-     * @return JSON representation of all recipies
+     * @param sort
+     *            what to list the recipes by, `name` (the default) or `price`
+     * @param after
+     *            cursor of the page to fetch, as returned with the page before
+     *            it; omit for the first page
+     * @param minPrice
+     *            lowest price to list, inclusive
+     * @param maxPrice
+     *            highest price to list, inclusive
+     * @param limit
+     *            most recipes to list on the page
+     * @param request
+     *            the request, checked for an If-None-Match header
+     * @return JSON representation of all recipies, or of a page of them
      */
     @GetMapping ( BASE_PATH + "/recipes" )
-    public List<Recipe> getRecipes () {
-        return service.findAll();
+    public ResponseEntity getRecipes ( @RequestParam ( name = "sort", required = false ) final String sort,
+            @RequestParam ( name = "after", required = false ) final String after,
+            @RequestParam ( name = "minPrice", required = false ) final Integer minPrice,
+            @RequestParam ( name = "maxPrice", required = false ) final Integer maxPrice,
+            @RequestParam ( name = "limit", required = false ) final Integer limit, final WebRequest request ) {
+        final boolean paged = null != sort || null != after || null != minPrice || null != maxPrice
+                || null != limit;
+        /* pages are read in a read-only transaction, maybe from a replica */
+        if ( ( !paged || versions.tagsReadOnlyReads() )
+                && request.checkNotModified( versions.etag( Resource.RECIPES ) ) ) {
+            return null;
+        }
+        if ( !paged ) {
+            return rendered( snapshot.list(), request );
+        }
+        try {
+            final RecipePage.SortBy by = null == sort ? RecipePage.SortBy.NAME : RecipePage.SortBy.parse( sort );
+            final RecipePage page = service.findPage( by, after, minPrice, maxPrice,
+                    null == limit ? DEFAULT_PAGE_SIZE : limit );
+            return new ResponseEntity( page, HttpStatus.OK );
+        }
+        catch ( final IllegalArgumentException e ) {
+            return new ResponseEntity( errorResponse( e.getMessage() ), HttpStatus.BAD_REQUEST );
+        }
+    }
+
+    /**
+     * REST API method to provide GET access to the recipes that can be made
+     * with what is in the Inventory right now, along with how many cups of
+     * each it allows.
+     *
+     * @return JSON list of the recipes, by name, as `{name, price, cups}`
+     */
+    @GetMapping ( BASE_PATH + "/recipes/available" )
+    public ResponseEntity getAvailableRecipes () {
+        return new ResponseEntity( available.available(), HttpStatus.OK );
     }
 
     /**
@@ -53,14 +155,39 @@ public class APIRecipeController extends APIController {
      *
      * @param name
      *            recipe name
+     * @param request
+     *            the request, checked for an If-None-Match header
      * @return response to the request
      */
     @GetMapping ( BASE_PATH + "/recipes/{name}" )
-    public ResponseEntity getRecipe ( @PathVariable ( "name" ) final String name ) {
-        final Recipe recipe = service.findByName( name );
+    public ResponseEntity getRecipe ( @PathVariable ( "name" ) final String name, final WebRequest request ) {
+        if ( request.checkNotModified( versions.etag( Resource.RECIPES ) ) ) {
+            return null;
+        }
+        final RecipeSnapshot.Rendered recipe = snapshot.recipe( name );
         return null == recipe
                 ? new ResponseEntity( errorResponse( "No recipe found with name " + name ), HttpStatus.NOT_FOUND )
-                : new ResponseEntity( recipe, HttpStatus.OK );
+                : rendered( recipe, request );
+    }
+
+    /**
+     * Builds a response out of pre-rendered JSON, gzipped if the client
+     * accepts it.
+     *
+     * @param body
+     *            the rendered JSON
+     * @param request
+     *            the request, checked for an Accept-Encoding header
+     * @return response to the request
+     */
+    private ResponseEntity<byte[]> rendered ( final RecipeSnapshot.Rendered body, final WebRequest request ) {
+        final String encodings = request.getHeader( HttpHeaders.ACCEPT_ENCODING );
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType( MediaType.APPLICATION_JSON )
+                .header( HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING );
+        if ( null != encodings && encodings.contains( "gzip" ) ) {
+            return response.header( HttpHeaders.CONTENT_ENCODING, "gzip" ).body( body.getGzip() );
+        }
+        return response.body( body.getJson() );
     }
 
     /**
@@ -75,13 +202,25 @@ public class APIRecipeController extends APIController {
      */
     @PostMapping ( BASE_PATH + "/recipes" )
     public ResponseEntity createRecipe ( @RequestBody final Recipe recipe ) {
+        if ( RESERVED_NAMES.contains( Recipe.normalizeName( recipe.getName() ) ) ) {
+            return new ResponseEntity( errorResponse( "The name " + recipe.getName() + " is reserved" ),
+                    HttpStatus.BAD_REQUEST );
+        }
         if ( null != service.findByName( recipe.getName() ) ) {
             return new ResponseEntity(
                     successResponse( "Recipe with the name " + recipe.getName() + " already exists" ),
                     HttpStatus.CONFLICT );
         }
-        if ( service.findAll().size() < 3 ) {
-            service.save( recipe );
+        if ( service.count() < capacity ) {
+            try {
+                service.save( recipe );
+            }
+            catch ( final DataIntegrityViolationException e ) {
+                // created concurrently, and caught by the unique index
+                return new ResponseEntity(
+                        successResponse( "Recipe with the name " + recipe.getName() + " already exists" ),
+                        HttpStatus.CONFLICT );
+            }
             return new ResponseEntity( successResponse( recipe.getName() + " successfully created" ), HttpStatus.OK );
         }
         else {
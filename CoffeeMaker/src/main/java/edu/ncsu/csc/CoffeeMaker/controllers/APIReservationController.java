@@ -0,0 +1,193 @@
+package edu.ncsu.csc.CoffeeMaker.controllers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryReservations;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.OptimisticRetry;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * This is the controller that holds the REST endpoints that reserve the
+ * ingredients for a beverage ahead of time. A reservation holds the
+ * ingredients for a limited time, during which it can be committed (paying for
+ * and making the beverage) or cancelled. Reservations that are not committed
+ * in time are released automatically.
+ *
+ * Spring will automatically convert all of the ResponseEntity and List results
+ * to JSON
+ *
+ */
+@SuppressWarnings ( { "unchecked", "rawtypes" } )
+@RestController
+public class APIReservationController extends APIController {
+
+    /**
+     * InventoryService object, to be autowired in by Spring to allow for
+     * manipulating the Inventory model
+     */
+    @Autowired
+    private InventoryService      inventoryService;
+
+    /**
+     * RecipeService object, to be autowired in by Spring to allow for
+     * manipulating the Recipe model
+     */
+    @Autowired
+    private RecipeService         recipeService;
+
+    /**
+     * Table of open reservations
+     */
+    @Autowired
+    private InventoryReservations reservations;
+
+    /**
+     * Retries commits that conflict with a concurrent update of the Inventory
+     */
+    @Autowired
+    private OptimisticRetry       retry;
+
+    /**
+     * How long a reservation lasts when the request does not say, in seconds
+     */
+    @Value ( "${coffeemaker.reservations.ttl-seconds:600}" )
+    private long                  defaultTtl;
+
+    /**
+     * The longest a reservation may last, in seconds
+     */
+    @Value ( "${coffeemaker.reservations.max-ttl-seconds:3600}" )
+    private long                  maxTtl;
+
+    /**
+     * REST API method to reserve the ingredients for a recipe, by completing a
+     * POST request with the name of the recipe as the path variable.
+     *
+     * @param name
+     *            recipe name
+     * @param ttl
+     *            how long the reservation should last, in seconds
+     * @return the reservation if there was enough inventory, or why there was
+     *         not
+     */
+    @PostMapping ( BASE_PATH + "/reservations/{name}" )
+    public ResponseEntity reserve ( @PathVariable ( "name" ) final String name,
+            @RequestParam ( name = "ttl", required = false ) final Long ttl ) {
+        final Recipe recipe = recipeService.findByName( name );
+        if ( recipe == null ) {
+            return new ResponseEntity( errorResponse( "No recipe selected" ), HttpStatus.NOT_FOUND );
+        }
+        final long seconds = null == ttl ? defaultTtl : ttl;
+        if ( seconds <= 0 ) {
+            return new ResponseEntity( errorResponse( "Reservations must last a positive number of seconds" ),
+                    HttpStatus.BAD_REQUEST );
+        }
+        if ( seconds > maxTtl ) {
+            return new ResponseEntity( errorResponse( "Reservations can last at most " + maxTtl + " seconds" ),
+                    HttpStatus.BAD_REQUEST );
+        }
+
+        final InventoryReservations.Hold hold = inventoryService.reserve( recipe, TimeUnit.SECONDS.toMillis( seconds ) );
+        if ( hold == null ) {
+            return new ResponseEntity( errorResponse( "Not enough inventory" ), HttpStatus.CONFLICT );
+        }
+        return new ResponseEntity( toJson( new Reservation( hold ) ), HttpStatus.OK );
+    }
+
+    /**
+     * REST API method to commit a reservation, paying for and making the
+     * beverage, by completing a POST request with the ID of the reservation as
+     * the path variable and the amount that has been paid as the body of the
+     * request. If too little is paid the reservation stays open.
+     *
+     * @param id
+     *            ID of the reservation
+     * @param amtPaid
+     *            amount paid
+     * @return The change the customer is due if successful
+     */
+    @PostMapping ( BASE_PATH + "/reservations/{id}/commit" )
+    public ResponseEntity commit ( @PathVariable ( "id" ) final String id, @RequestBody final int amtPaid ) {
+        final InventoryReservations.Hold hold = reservations.take( id );
+        if ( hold == null ) {
+            return new ResponseEntity( errorResponse( "No reservation with id " + id ), HttpStatus.NOT_FOUND );
+        }
+        if ( amtPaid < hold.getRecipe().getPrice() ) {
+            reservations.restore( hold );
+            return new ResponseEntity( errorResponse( "Not enough money paid" ), HttpStatus.CONFLICT );
+        }
+
+        final boolean made;
+        try {
+            made = retry.run( () -> inventoryService.commitReservation( hold ) );
+        }
+        catch ( final RuntimeException e ) {
+            // nothing was written, so the reservation may be committed again
+            reservations.restore( hold );
+            throw e;
+        }
+        if ( !made ) {
+            return new ResponseEntity( errorResponse( "Not enough inventory" ), HttpStatus.CONFLICT );
+        }
+        return new ResponseEntity<String>(
+                successResponse( String.valueOf( amtPaid - hold.getRecipe().getPrice() ) ), HttpStatus.OK );
+    }
+
+    /**
+     * REST API method to cancel a reservation, releasing the ingredients it
+     * held.
+     *
+     * @param id
+     *            ID of the reservation
+     * @return Success if the reservation was cancelled; an error if it does
+     *         not exist (or has already expired)
+     */
+    @DeleteMapping ( BASE_PATH + "/reservations/{id}" )
+    public ResponseEntity cancel ( @PathVariable ( "id" ) final String id ) {
+        if ( !reservations.cancel( id ) ) {
+            return new ResponseEntity( errorResponse( "No reservation with id " + id ), HttpStatus.NOT_FOUND );
+        }
+        return new ResponseEntity( successResponse( "Reservation " + id + " was cancelled" ), HttpStatus.OK );
+    }
+
+    /**
+     * A reservation, sent back through the REST API. Contains the ID of the
+     * reservation, the recipe it is for, and when it expires.
+     */
+    static protected class Reservation {
+
+        /** ID of the reservation, used to commit or cancel it */
+        String id;
+
+        /** Name of the recipe the reservation is for */
+        String recipe;
+
+        /** When the reservation expires, in milliseconds since the epoch */
+        long   expiresAt;
+
+        /**
+         * Creates a Reservation from a hold.
+         *
+         * @param hold
+         *            The hold to describe
+         */
+        public Reservation ( final InventoryReservations.Hold hold ) {
+            this.id = hold.getId();
+            this.recipe = hold.getRecipe().getName();
+            this.expiresAt = hold.getExpiresAt();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package edu.ncsu.csc.CoffeeMaker.controllers;
+
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.ncsu.csc.CoffeeMaker.models.SalesRollup.Granularity;
+import edu.ncsu.csc.CoffeeMaker.services.SalesHistory;
+
+/**
+ * This is the controller that holds the REST endpoints for reporting on what
+ * has been sold, and when.
+ *
+ * Spring will automatically convert all of the ResponseEntity and List results
+ * to JSON
+ *
+ */
+@SuppressWarnings ( { "unchecked", "rawtypes" } )
+@RestController
+public class APISalesController extends APIController {
+
+    /** Buckets returned when no start of the range is asked for */
+    private static final int DEFAULT_BUCKETS = 60;
+
+    /**
+     * SalesHistory, to be autowired in by Spring, that rolls up the sales
+     */
+    @Autowired
+    private SalesHistory     sales;
+
+    /**
+     * REST API method to provide GET access to the sales of each recipe over a
+     * range of time, rolled up by minute, hour or day (in UTC): for each
+     * recipe sold in each bucket, how many were sold, the revenue, and the
+     * ingredients used. Only the rollups are read, never the individual sales.
+     *
+     * @param granularity
+     *            MINUTE, HOUR or DAY; defaults to HOUR
+     * @param from
+     *            start of the range, such as 2020-01-01T00:00:00Z; defaults to
+     *            60 buckets before the end
+     * @param to
+     *            end of the range, not included; defaults to now
+     * @param recipe
+     *            name of the only recipe to report on; omit for every recipe
+     * @return response to the request: 400 if the range is empty or too long
+     */
+    @GetMapping ( BASE_PATH + "/sales" )
+    public ResponseEntity getSales (
+            @RequestParam ( name = "granularity", defaultValue = "HOUR" ) final Granularity granularity,
+            @RequestParam ( name = "from", required = false ) final Instant from,
+            @RequestParam ( name = "to", required = false ) final Instant to,
+            @RequestParam ( name = "recipe", required = false ) final String recipe ) {
+        final Instant end = null == to ? Instant.now() : to;
+        final Instant start = null == from ? end.minus( DEFAULT_BUCKETS, granularity.getUnit() ) : from;
+        try {
+            return new ResponseEntity( sales.rollups( granularity, start, end, recipe ), HttpStatus.OK );
+        }
+        catch ( final IllegalArgumentException e ) {
+            return new ResponseEntity( errorResponse( e.getMessage() ), HttpStatus.BAD_REQUEST );
+        }
+    }
+
+}
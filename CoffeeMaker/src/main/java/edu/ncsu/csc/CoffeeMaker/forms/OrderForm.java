@@ -0,0 +1,72 @@
+package edu.ncsu.csc.CoffeeMaker.forms;
+
+/**
+ * A single order in a request to make several beverages at once. Contains the
+ * name of the recipe that should be made and the amount that was paid for it.
+ */
+public class OrderForm {
+
+    /** Name of the recipe to make */
+    private String recipe;
+
+    /** Amount paid for the beverage */
+    private int    amtPaid;
+
+    /**
+     * Empty constructor, used when deserializing from JSON.
+     */
+    public OrderForm () {
+    }
+
+    /**
+     * Creates an OrderForm for the provided recipe and payment.
+     *
+     * @param recipe
+     *            name of the recipe to make
+     * @param amtPaid
+     *            amount paid for the beverage
+     */
+    public OrderForm ( final String recipe, final int amtPaid ) {
+        this.recipe = recipe;
+        this.amtPaid = amtPaid;
+    }
+
+    /**
+     * Returns the name of the recipe to make.
+     *
+     * @return the name of the recipe
+     */
+    public String getRecipe () {
+        return recipe;
+    }
+
+    /**
+     * Sets the name of the recipe to make.
+     *
+     * @param recipe
+     *            the name of the recipe
+     */
+    public void setRecipe ( final String recipe ) {
+        this.recipe = recipe;
+    }
+
+    /**
+     * Returns the amount paid for the beverage.
+     *
+     * @return the amount paid
+     */
+    public int getAmtPaid () {
+        return amtPaid;
+    }
+
+    /**
+     * Sets the amount paid for the beverage.
+     *
+     * @param amtPaid
+     *            the amount paid
+     */
+    public void setAmtPaid ( final int amtPaid ) {
+        this.amtPaid = amtPaid;
+    }
+
+}
@@ -0,0 +1,100 @@
+package edu.ncsu.csc.CoffeeMaker.forms;
+
+/**
+ * A single line of a delivery restocking the Inventory. Contains the name of
+ * the ingredient delivered and either the amount to add to what is in the
+ * Inventory, or the amount the Inventory should be set to (a stock count), or
+ * both, in which case the amount is set first and then added to.
+ */
+public class RestockForm {
+
+    /** Name of the ingredient */
+    private String  name;
+
+    /** Amount to add, null if none */
+    private Integer add;
+
+    /** Amount to set the ingredient to, null to keep the current amount */
+    private Integer set;
+
+    /**
+     * Empty constructor, used when deserializing from JSON.
+     */
+    public RestockForm () {
+    }
+
+    /**
+     * Creates a RestockForm for the provided ingredient.
+     *
+     * @param name
+     *            name of the ingredient
+     * @param add
+     *            amount to add, null if none
+     * @param set
+     *            amount to set the ingredient to, null to keep the current
+     *            amount
+     */
+    public RestockForm ( final String name, final Integer add, final Integer set ) {
+        this.name = name;
+        this.add = add;
+        this.set = set;
+    }
+
+    /**
+     * Returns the name of the ingredient.
+     *
+     * @return the name of the ingredient
+     */
+    public String getName () {
+        return name;
+    }
+
+    /**
+     * Sets the name of the ingredient.
+     *
+     * @param name
+     *            the name of the ingredient
+     */
+    public void setName ( final String name ) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the amount to add.
+     *
+     * @return the amount to add, null if none
+     */
+    public Integer getAdd () {
+        return add;
+    }
+
+    /**
+     * Sets the amount to add.
+     *
+     * @param add
+     *            the amount to add, null if none
+     */
+    public void setAdd ( final Integer add ) {
+        this.add = add;
+    }
+
+    /**
+     * Returns the amount to set the ingredient to.
+     *
+     * @return the amount, null to keep the current amount
+     */
+    public Integer getSet () {
+        return set;
+    }
+
+    /**
+     * Sets the amount to set the ingredient to.
+     *
+     * @param set
+     *            the amount, null to keep the current amount
+     */
+    public void setSet ( final Integer set ) {
+        this.set = set;
+    }
+
+}
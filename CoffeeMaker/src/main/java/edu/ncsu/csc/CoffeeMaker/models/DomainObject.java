@@ -1,17 +1,31 @@
 package edu.ncsu.csc.CoffeeMaker.models;
 
 import java.io.Serializable;
+import java.util.Locale;
 
 /**
- * The root class for all of our persistent entities. Defines no fields or
- * methods, but is used to provide a common superclass that the `Service`
- * methods can use.
+ * The root class for all of our persistent entities. Defines no fields, but is
+ * used to provide a common superclass that the `Service` methods can use, and
+ * holds what the entities share about how their IDs are generated.
  *
  * @author Kai Presler-Marshall
  *
  */
 abstract public class DomainObject {
 
+    /**
+     * Sequence every entity takes its IDs from; the table Hibernate has always
+     * used, so IDs handed out before it was pooled are never handed out again
+     */
+    public static final String ID_SEQUENCE   = "hibernate_sequence";
+
+    /**
+     * Number of IDs taken from the sequence at a time. Inserts only go to the
+     * sequence once per this many rows, which lets them be sent to the
+     * database in JDBC batches of up to the same size.
+     */
+    public static final String ID_BLOCK_SIZE = "50";
+
     /**
      * Returns the ID of this object. the ID is used for uniquely identifying
      * this object for persistent storage in the database.
@@ -20,4 +34,17 @@ abstract public class DomainObject {
      */
     public abstract Serializable getId ();
 
+    /**
+     * Normalises a name for comparison with other names: surrounding
+     * whitespace is dropped and case is ignored. Names that normalise to the
+     * same thing are considered the same name.
+     *
+     * @param name
+     *            the name
+     * @return the normalised name, null if the name is null
+     */
+    public static String normalizeName ( final String name ) {
+        return null == name ? null : name.trim().toLowerCase( Locale.ROOT );
+    }
+
 }
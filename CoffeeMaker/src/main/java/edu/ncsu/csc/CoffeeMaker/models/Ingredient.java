@@ -2,34 +2,74 @@ package edu.ncsu.csc.CoffeeMaker.models;
 
 import java.io.Serializable;
 
+import javax.persistence.Cacheable;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.Min;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Ingredients used in CoffeeMaker. The Ingredients are tied to the database via
  * Hibernate. Check IngredientService and IngredientRepository for database
- * support.
+ * support. The same table holds the ingredients of every recipe and of the
+ * Inventory, which may share names, and the ingredients managed through the
+ * IngredientService, whose names are unique (ignoring case and surrounding
+ * whitespace).
  *
  * @author Christian Andersen
  *
  */
 @Entity
+@Table ( indexes = @Index ( name = "ingredient_catalog_name", columnList = "catalog_name", unique = true ) )
+@Cacheable
+@Cache ( usage = CacheConcurrencyStrategy.READ_WRITE )
 public class Ingredient extends DomainObject {
 
     /** id for the Ingredient */
     @Id
-    @GeneratedValue
+    @GeneratedValue ( generator = "ingredient_ids" )
+    @GenericGenerator ( name = "ingredient_ids", strategy = "enhanced-sequence",
+            parameters = { @Parameter ( name = "sequence_name", value = ID_SEQUENCE ),
+                    @Parameter ( name = "increment_size", value = ID_BLOCK_SIZE ),
+                    @Parameter ( name = "optimizer", value = "pooled-lo" ) } )
     private long   id;
 
     /** name of the Ingredient */
     private String name;
 
+    /**
+     * name of the Ingredient, normalised, if it is managed through the
+     * IngredientService; null for the ingredients of recipes and of the
+     * Inventory
+     */
+    @JsonIgnore
+    @Column ( name = "catalog_name" )
+    private String catalogName;
+
     /** amount of the Ingredient */
     @Min ( 0 )
     private int    amount;
 
+    /**
+     * version of the Ingredient, used to detect concurrent updates
+     */
+    @Version
+    @Column ( columnDefinition = "bigint default 0 not null" )
+    private long   version;
+
     /**
      * Empty constructor for Hibernate
      */
@@ -69,6 +109,27 @@ public class Ingredient extends DomainObject {
         this.name = name;
     }
 
+    /**
+     * Marks the Ingredient as one managed through the IngredientService, whose
+     * name must not be shared with any other such Ingredient.
+     */
+    public void addToCatalog () {
+        this.catalogName = normalizeName( name );
+    }
+
+    /**
+     * Keeps the normalised name up to date before the Ingredient is saved
+     * (Used by Hibernate)
+     */
+    @PrePersist
+    @PreUpdate
+    @SuppressWarnings ( "unused" )
+    private void updateCatalogName () {
+        if ( null != catalogName ) {
+            this.catalogName = normalizeName( name );
+        }
+    }
+
     /**
      * Returns the amount of the Ingredient.
      *
@@ -1,14 +1,26 @@
 package edu.ncsu.csc.CoffeeMaker.models;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /**
  * Inventory for the coffee maker. Inventory is tied to the database using
@@ -18,11 +30,17 @@ import javax.persistence.OneToMany;
  * @author Kai Presler-Marshall
  */
 @Entity
+@Cacheable
+@Cache ( usage = CacheConcurrencyStrategy.READ_WRITE )
 public class Inventory extends DomainObject {
 
     /** id for inventory entry */
     @Id
-    @GeneratedValue
+    @GeneratedValue ( generator = "inventory_ids" )
+    @GenericGenerator ( name = "inventory_ids", strategy = "enhanced-sequence",
+            parameters = { @Parameter ( name = "sequence_name", value = ID_SEQUENCE ),
+                    @Parameter ( name = "increment_size", value = ID_BLOCK_SIZE ),
+                    @Parameter ( name = "optimizer", value = "pooled-lo" ) } )
     private Long                   id;
 
     // /** amount of coffee */
@@ -39,9 +57,24 @@ public class Inventory extends DomainObject {
     // private Integer chocolate;
 
     /** list of ingredients in the inventory */
+    @Cache ( usage = CacheConcurrencyStrategy.READ_WRITE )
     @OneToMany ( cascade = CascadeType.ALL, fetch = FetchType.EAGER )
     private final List<Ingredient> ingInventory;
 
+    /**
+     * sequence number of the last InventoryJournal entry applied to this
+     * inventory
+     */
+    @JsonIgnore
+    private Long                   journalSequence;
+
+    /**
+     * version of the inventory, used to detect concurrent updates
+     */
+    @Version
+    @Column ( columnDefinition = "bigint default 0 not null" )
+    private long                   version;
+
     /**
      * Constructor for Hibernate, initializes the inventory.
      */
@@ -89,6 +122,27 @@ public class Inventory extends DomainObject {
         this.id = id;
     }
 
+    /**
+     * Returns the sequence number of the last InventoryJournal entry that has
+     * been applied to this inventory.
+     *
+     * @return the sequence number, 0 if no entries have been applied
+     */
+    public long getJournalSequence () {
+        return null == journalSequence ? 0 : journalSequence;
+    }
+
+    /**
+     * Sets the sequence number of the last InventoryJournal entry that has
+     * been applied to this inventory.
+     *
+     * @param journalSequence
+     *            the sequence number
+     */
+    public void setJournalSequence ( final long journalSequence ) {
+        this.journalSequence = journalSequence;
+    }
+
     /**
      * Finds the ingredient in the inventory by a name
      *
@@ -364,10 +418,24 @@ public class Inventory extends DomainObject {
      * @return true if enough ingredients to make the beverage
      */
     public boolean enoughIngredients ( final Recipe r ) {
+        return enoughIngredients( r, indexByName() );
+    }
+
+    /**
+     * Returns true if there are enough ingredients to make the beverage, using
+     * an index of the inventory built by `indexByName()`.
+     *
+     * @param r
+     *            recipe to check if there are enough ingredients
+     * @param index
+     *            the inventory's ingredients, keyed by name
+     * @return true if enough ingredients to make the beverage
+     */
+    private boolean enoughIngredients ( final Recipe r, final Map<String, Ingredient> index ) {
         boolean isEnough = true;
         for ( int i = 0; i < r.getIngredients().size(); i++ ) {
             final Ingredient ing = r.getIngredients().get( i );
-            final Ingredient invIng = findIngredientByName( ing.getName() );
+            final Ingredient invIng = index.get( ing.getName() );
             if ( invIng != null && ( invIng.getAmount() < ing.getAmount() ) ) {
                 isEnough = false;
                 break;
@@ -385,10 +453,11 @@ public class Inventory extends DomainObject {
      * @return true if recipe is made.
      */
     public boolean useIngredients ( final Recipe r ) {
-        if ( enoughIngredients( r ) ) {
+        final Map<String, Ingredient> index = indexByName();
+        if ( enoughIngredients( r, index ) ) {
             for ( int i = 0; i < r.getIngredients().size(); i++ ) {
                 final Ingredient ing = r.getIngredients().get( i );
-                final Ingredient invIng = findIngredientByName( ing.getName() );
+                final Ingredient invIng = index.get( ing.getName() );
                 invIng.setAmount( invIng.getAmount() - ing.getAmount() );
             }
             return true;
@@ -398,6 +467,22 @@ public class Inventory extends DomainObject {
         }
     }
 
+    /**
+     * Builds an index of the ingredients in the inventory by name, so that a
+     * recipe can be checked against the inventory with one lookup per
+     * ingredient instead of a scan. Where a name appears more than once, the
+     * first ingredient wins, as with `findIngredientByName()`.
+     *
+     * @return the inventory's ingredients, keyed by name
+     */
+    private Map<String, Ingredient> indexByName () {
+        final Map<String, Ingredient> index = new HashMap<String, Ingredient>( ingInventory.size() * 2 );
+        for ( int i = 0; i < ingInventory.size(); i++ ) {
+            index.putIfAbsent( ingInventory.get( i ).getName(), ingInventory.get( i ) );
+        }
+        return index;
+    }
+
     /**
      * Adds ingredients to the inventory
      *
@@ -413,11 +498,13 @@ public class Inventory extends DomainObject {
             }
 
         }
+        final Map<String, Ingredient> index = indexByName();
         for ( int i = 0; i < ingredients.size(); i++ ) {
             final Ingredient add = ingredients.get( i );
-            final Ingredient ing = findIngredientByName( add.getName() );
+            final Ingredient ing = index.get( add.getName() );
             if ( ing == null ) {
                 ingInventory.add( add );
+                index.put( add.getName(), add );
             }
             else {
                 ing.setAmount( add.getAmount() );
@@ -0,0 +1,145 @@
+package edu.ncsu.csc.CoffeeMaker.models;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * A single change to the level of one of the Inventory's ingredients. Every
+ * change is recorded as a movement in the same transaction as the change
+ * itself, and movements are never updated or removed, so the movements after
+ * an InventorySnapshot account for every unit of every ingredient since it
+ * was taken. Movements of the same ingredient are numbered in the order they
+ * were committed.
+ */
+@Entity
+@Table ( indexes = @Index ( name = "movement_by_ingredient", columnList = "ingredient, id" ) )
+public class InventoryMovement extends DomainObject {
+
+    /** What caused a movement */
+    public enum Kind {
+        /** Ingredients used to make beverages */
+        BREW,
+        /** Ingredients added to the Inventory */
+        RESTOCK,
+        /** Ingredients set to a new level, added or removed by hand */
+        ADJUSTMENT
+    }
+
+    /** Movement id; later movements of an ingredient have larger ones */
+    @Id
+    @GeneratedValue ( generator = "movement_ids" )
+    @GenericGenerator ( name = "movement_ids", strategy = "enhanced-sequence",
+            parameters = { @Parameter ( name = "sequence_name", value = ID_SEQUENCE ),
+                    @Parameter ( name = "increment_size", value = ID_BLOCK_SIZE ),
+                    @Parameter ( name = "optimizer", value = "pooled-lo" ) } )
+    private Long    id;
+
+    /** What caused the movement */
+    @Enumerated ( EnumType.STRING )
+    @Column ( nullable = false, length = 16 )
+    private Kind    kind;
+
+    /** Name of the ingredient that moved */
+    @Column ( nullable = false )
+    private String  ingredient;
+
+    /** Change to the ingredient's level; negative if it went down */
+    private int     delta;
+
+    /** When the movement was recorded */
+    @Column ( nullable = false )
+    private Instant recordedAt;
+
+    /**
+     * Empty constructor for Hibernate
+     */
+    public InventoryMovement () {
+    }
+
+    /**
+     * Creates a movement recorded now.
+     *
+     * @param kind
+     *            what caused the movement
+     * @param ingredient
+     *            name of the ingredient that moved
+     * @param delta
+     *            change to the ingredient's level
+     */
+    public InventoryMovement ( final Kind kind, final String ingredient, final int delta ) {
+        this.kind = kind;
+        this.ingredient = ingredient;
+        this.delta = delta;
+        this.recordedAt = Instant.now();
+    }
+
+    /**
+     * Returns the id of the movement.
+     *
+     * @return the id
+     */
+    @Override
+    public Serializable getId () {
+        return id;
+    }
+
+    /**
+     * Returns what caused the movement.
+     *
+     * @return the kind of movement
+     */
+    public Kind getKind () {
+        return kind;
+    }
+
+    /**
+     * Returns the name of the ingredient that moved.
+     *
+     * @return the ingredient's name
+     */
+    public String getIngredient () {
+        return ingredient;
+    }
+
+    /**
+     * Returns the change to the ingredient's level.
+     *
+     * @return the change; negative if it went down
+     */
+    public int getDelta () {
+        return delta;
+    }
+
+    /**
+     * Returns when the movement was recorded.
+     *
+     * @return the time it was recorded
+     */
+    public Instant getRecordedAt () {
+        return recordedAt;
+    }
+
+    /**
+     * Returns the movement in a formatted String.
+     *
+     * @return the movement in string format
+     */
+    @Override
+    public String toString () {
+        return "InventoryMovement [id=" + id + ", kind=" + kind + ", ingredient=" + ingredient + ", delta=" + delta
+                + "]";
+    }
+
+}
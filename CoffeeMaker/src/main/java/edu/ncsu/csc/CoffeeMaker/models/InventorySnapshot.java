@@ -0,0 +1,109 @@
+package edu.ncsu.csc.CoffeeMaker.models;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.MapKeyColumn;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * The level of every ingredient in the Inventory once every InventoryMovement
+ * up to and including a given one had been made. The current levels are the
+ * latest snapshot plus the movements that came after it.
+ */
+@Entity
+public class InventorySnapshot extends DomainObject {
+
+    /** Snapshot id */
+    @Id
+    @GeneratedValue ( generator = "snapshot_ids" )
+    @GenericGenerator ( name = "snapshot_ids", strategy = "enhanced-sequence",
+            parameters = { @Parameter ( name = "sequence_name", value = ID_SEQUENCE ),
+                    @Parameter ( name = "increment_size", value = ID_BLOCK_SIZE ),
+                    @Parameter ( name = "optimizer", value = "pooled-lo" ) } )
+    private Long                 id;
+
+    /** Id of the last movement included; 0 if none were */
+    private long                 lastMovement;
+
+    /** When the snapshot was taken */
+    @Column ( nullable = false )
+    private Instant              takenAt;
+
+    /** Level of each ingredient, by name */
+    @ElementCollection ( fetch = FetchType.EAGER )
+    @CollectionTable ( name = "inventory_snapshot_level", joinColumns = @JoinColumn ( name = "snapshot_id" ) )
+    @MapKeyColumn ( name = "ingredient" )
+    @Column ( name = "amount" )
+    private Map<String, Integer> levels;
+
+    /**
+     * Empty constructor for Hibernate
+     */
+    public InventorySnapshot () {
+    }
+
+    /**
+     * Creates a snapshot taken now.
+     *
+     * @param lastMovement
+     *            id of the last movement included
+     * @param levels
+     *            level of each ingredient, by name
+     */
+    public InventorySnapshot ( final long lastMovement, final Map<String, Integer> levels ) {
+        this.lastMovement = lastMovement;
+        this.levels = new HashMap<String, Integer>( levels );
+        this.takenAt = Instant.now();
+    }
+
+    /**
+     * Returns the id of the snapshot.
+     *
+     * @return the id
+     */
+    @Override
+    public Serializable getId () {
+        return id;
+    }
+
+    /**
+     * Returns the id of the last movement included.
+     *
+     * @return the movement id; 0 if none were included
+     */
+    public long getLastMovement () {
+        return lastMovement;
+    }
+
+    /**
+     * Returns when the snapshot was taken.
+     *
+     * @return the time it was taken
+     */
+    public Instant getTakenAt () {
+        return takenAt;
+    }
+
+    /**
+     * Returns the level of each ingredient.
+     *
+     * @return the levels, by ingredient name
+     */
+    public Map<String, Integer> getLevels () {
+        return levels;
+    }
+
+}
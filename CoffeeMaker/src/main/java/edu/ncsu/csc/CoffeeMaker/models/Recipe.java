@@ -3,37 +3,70 @@ package edu.ncsu.csc.CoffeeMaker.models;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
 import javax.validation.constraints.Min;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Recipe for the coffee maker. Recipe is tied to the database using Hibernate
  * libraries. See RecipeRepository and RecipeService for the other two pieces
- * used for database support.
+ * used for database support. Recipes are indexed by name and by price, for
+ * listing them a page at a time. Recipe names are unique, ignoring case and
+ * surrounding whitespace.
  *
  * @author Kai Presler-Marshall
  */
 @Entity
+@Table ( indexes = { @Index ( name = "recipe_by_name", columnList = "name, id" ),
+        @Index ( name = "recipe_by_price", columnList = "price, id" ),
+        @Index ( name = "recipe_name_key", columnList = "name_key", unique = true ) } )
+@Cacheable
+@Cache ( usage = CacheConcurrencyStrategy.READ_WRITE )
 public class Recipe extends DomainObject {
 
     /** Recipe id */
     @Id
-    @GeneratedValue
+    @GeneratedValue ( generator = "recipe_ids" )
+    @GenericGenerator ( name = "recipe_ids", strategy = "enhanced-sequence",
+            parameters = { @Parameter ( name = "sequence_name", value = ID_SEQUENCE ),
+                    @Parameter ( name = "increment_size", value = ID_BLOCK_SIZE ),
+                    @Parameter ( name = "optimizer", value = "pooled-lo" ) } )
     private Long                   id;
 
     /** Recipe name */
     private String                 name;
 
+    /**
+     * Recipe name, normalised; kept up to date whenever the recipe is saved.
+     * No two recipes may have the same one.
+     */
+    @JsonIgnore
+    @Column ( name = "name_key" )
+    private String                 nameKey;
+
     /** Recipe price */
     @Min ( 0 )
     private Integer                price;
 
     /** Ingredients in the recipe */
+    @Cache ( usage = CacheConcurrencyStrategy.READ_WRITE )
     @OneToMany ( cascade = CascadeType.ALL, fetch = FetchType.EAGER )
     private final List<Ingredient> ingredients;
 
@@ -129,6 +162,17 @@ public class Recipe extends DomainObject {
         this.name = name;
     }
 
+    /**
+     * Normalises the recipe name before the recipe is saved (Used by
+     * Hibernate)
+     */
+    @PrePersist
+    @PreUpdate
+    @SuppressWarnings ( "unused" )
+    private void updateNameKey () {
+        this.nameKey = normalizeName( name );
+    }
+
     /**
      * Returns the price of the recipe.
      *
@@ -0,0 +1,149 @@
+package edu.ncsu.csc.CoffeeMaker.models;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.MapKeyColumn;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * A beverage that was made and paid for. A sale is saved in the same
+ * transaction as the ingredients it used are taken out of the Inventory, and is
+ * never changed afterwards except to mark it as added to the SalesRollups.
+ */
+@Entity
+@Table ( indexes = @Index ( name = "sale_by_rolled_up", columnList = "rolledUp" ) )
+public class Sale extends DomainObject {
+
+    /** Sale id */
+    @Id
+    @GeneratedValue ( generator = "sale_ids" )
+    @GenericGenerator ( name = "sale_ids", strategy = "enhanced-sequence",
+            parameters = { @Parameter ( name = "sequence_name", value = ID_SEQUENCE ),
+                    @Parameter ( name = "increment_size", value = ID_BLOCK_SIZE ),
+                    @Parameter ( name = "optimizer", value = "pooled-lo" ) } )
+    private Long                 id;
+
+    /** Name of the recipe that was made */
+    @Column ( nullable = false )
+    private String               recipe;
+
+    /** Price of the recipe when it was made */
+    private int                  price;
+
+    /** When the beverage was made */
+    @Column ( nullable = false )
+    private Instant              soldAt;
+
+    /** Whether the sale has been added to the SalesRollups */
+    private boolean              rolledUp;
+
+    /** Amount of each ingredient used, by name */
+    @ElementCollection
+    @CollectionTable ( name = "sale_ingredient", joinColumns = @JoinColumn ( name = "sale_id" ) )
+    @MapKeyColumn ( name = "ingredient" )
+    @Column ( name = "amount" )
+    private Map<String, Integer> ingredients;
+
+    /**
+     * Empty constructor for Hibernate
+     */
+    public Sale () {
+    }
+
+    /**
+     * Creates a sale made now.
+     *
+     * @param recipe
+     *            name of the recipe that was made
+     * @param price
+     *            price of the recipe
+     * @param ingredients
+     *            amount of each ingredient used, by name
+     */
+    public Sale ( final String recipe, final int price, final Map<String, Integer> ingredients ) {
+        this.recipe = recipe;
+        this.price = price;
+        this.ingredients = new HashMap<String, Integer>( ingredients );
+        this.soldAt = Instant.now();
+    }
+
+    /**
+     * Returns the id of the sale.
+     *
+     * @return the id
+     */
+    @Override
+    public Serializable getId () {
+        return id;
+    }
+
+    /**
+     * Returns the name of the recipe that was made.
+     *
+     * @return the recipe's name
+     */
+    public String getRecipe () {
+        return recipe;
+    }
+
+    /**
+     * Returns the price the recipe was sold for.
+     *
+     * @return the price
+     */
+    public int getPrice () {
+        return price;
+    }
+
+    /**
+     * Returns when the beverage was made.
+     *
+     * @return the time of the sale
+     */
+    public Instant getSoldAt () {
+        return soldAt;
+    }
+
+    /**
+     * Returns whether the sale has been added to the SalesRollups.
+     *
+     * @return true if it has been rolled up
+     */
+    public boolean isRolledUp () {
+        return rolledUp;
+    }
+
+    /**
+     * Returns the amount of each ingredient used.
+     *
+     * @return the amounts, by name
+     */
+    public Map<String, Integer> getIngredients () {
+        return ingredients;
+    }
+
+    /**
+     * Returns the sale in a formatted String.
+     *
+     * @return the sale in string format
+     */
+    @Override
+    public String toString () {
+        return "Sale [id=" + id + ", recipe=" + recipe + ", price=" + price + ", soldAt=" + soldAt + "]";
+    }
+
+}
@@ -0,0 +1,238 @@
+package edu.ncsu.csc.CoffeeMaker.models;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.MapKeyColumn;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * The sales of one recipe over one minute, hour or day (in UTC): how many
+ * were made, what they were sold for, and the ingredients they used. There is
+ * at most one rollup per recipe for each bucket, which is added to as sales
+ * are rolled up, so reporting on sales never has to go through the Sales
+ * themselves.
+ */
+@Entity
+@Table ( uniqueConstraints = @UniqueConstraint ( name = "rollup_by_bucket",
+        columnNames = { "granularity", "bucket", "recipe" } ) )
+public class SalesRollup extends DomainObject {
+
+    /** How long the buckets sales are rolled up into are */
+    public enum Granularity {
+        /** One rollup per recipe per minute */
+        MINUTE ( ChronoUnit.MINUTES ),
+        /** One rollup per recipe per hour */
+        HOUR ( ChronoUnit.HOURS ),
+        /** One rollup per recipe per day */
+        DAY ( ChronoUnit.DAYS );
+
+        /** Length of a bucket */
+        private final ChronoUnit unit;
+
+        /**
+         * Creates a Granularity.
+         *
+         * @param unit
+         *            length of a bucket
+         */
+        Granularity ( final ChronoUnit unit ) {
+            this.unit = unit;
+        }
+
+        /**
+         * Returns the start of the bucket a time falls in.
+         *
+         * @param time
+         *            the time
+         * @return the start of its bucket
+         */
+        public Instant bucket ( final Instant time ) {
+            return time.truncatedTo( unit );
+        }
+
+        /**
+         * Returns the length of a bucket.
+         *
+         * @return the length
+         */
+        public ChronoUnit getUnit () {
+            return unit;
+        }
+    }
+
+    /** Rollup id */
+    @Id
+    @GeneratedValue ( generator = "rollup_ids" )
+    @GenericGenerator ( name = "rollup_ids", strategy = "enhanced-sequence",
+            parameters = { @Parameter ( name = "sequence_name", value = ID_SEQUENCE ),
+                    @Parameter ( name = "increment_size", value = ID_BLOCK_SIZE ),
+                    @Parameter ( name = "optimizer", value = "pooled-lo" ) } )
+    private Long              id;
+
+    /** Length of the bucket */
+    @Enumerated ( EnumType.STRING )
+    @Column ( nullable = false, length = 8 )
+    private Granularity       granularity;
+
+    /** Start of the bucket */
+    @Column ( nullable = false )
+    private Instant           bucket;
+
+    /** Name of the recipe sold */
+    @Column ( nullable = false )
+    private String            recipe;
+
+    /** Number of beverages sold */
+    private long              count;
+
+    /** Total of the prices they were sold for */
+    private long              revenue;
+
+    /** Total amount of each ingredient they used, by name */
+    @ElementCollection ( fetch = FetchType.EAGER )
+    @CollectionTable ( name = "sales_rollup_ingredient", joinColumns = @JoinColumn ( name = "rollup_id" ) )
+    @MapKeyColumn ( name = "ingredient" )
+    @Column ( name = "amount" )
+    private Map<String, Long> ingredients;
+
+    /**
+     * Empty constructor for Hibernate
+     */
+    public SalesRollup () {
+    }
+
+    /**
+     * Creates an empty rollup.
+     *
+     * @param granularity
+     *            length of the bucket
+     * @param bucket
+     *            start of the bucket
+     * @param recipe
+     *            name of the recipe sold
+     */
+    public SalesRollup ( final Granularity granularity, final Instant bucket, final String recipe ) {
+        this.granularity = granularity;
+        this.bucket = bucket;
+        this.recipe = recipe;
+        this.ingredients = new HashMap<String, Long>();
+    }
+
+    /**
+     * Adds a sale to the rollup.
+     *
+     * @param sale
+     *            the sale, which must fall in the bucket
+     */
+    public void add ( final Sale sale ) {
+        count++;
+        revenue += sale.getPrice();
+        sale.getIngredients().forEach( ( name, amount ) -> ingredients.merge( name, (long) amount, Long::sum ) );
+    }
+
+    /**
+     * Adds another rollup of the same recipe and bucket to this one.
+     *
+     * @param other
+     *            the other rollup
+     */
+    public void add ( final SalesRollup other ) {
+        count += other.count;
+        revenue += other.revenue;
+        other.ingredients.forEach( ( name, amount ) -> ingredients.merge( name, amount, Long::sum ) );
+    }
+
+    /**
+     * Returns the id of the rollup.
+     *
+     * @return the id
+     */
+    @Override
+    public Serializable getId () {
+        return id;
+    }
+
+    /**
+     * Returns the length of the bucket.
+     *
+     * @return the granularity
+     */
+    public Granularity getGranularity () {
+        return granularity;
+    }
+
+    /**
+     * Returns the start of the bucket.
+     *
+     * @return the start
+     */
+    public Instant getBucket () {
+        return bucket;
+    }
+
+    /**
+     * Returns the name of the recipe sold.
+     *
+     * @return the recipe's name
+     */
+    public String getRecipe () {
+        return recipe;
+    }
+
+    /**
+     * Returns the number of beverages sold.
+     *
+     * @return the count
+     */
+    public long getCount () {
+        return count;
+    }
+
+    /**
+     * Returns the total of the prices the beverages were sold for.
+     *
+     * @return the revenue
+     */
+    public long getRevenue () {
+        return revenue;
+    }
+
+    /**
+     * Returns the total amount of each ingredient used.
+     *
+     * @return the amounts, by name
+     */
+    public Map<String, Long> getIngredients () {
+        return ingredients;
+    }
+
+    /**
+     * Returns the rollup in a formatted String.
+     *
+     * @return the rollup in string format
+     */
+    @Override
+    public String toString () {
+        return "SalesRollup [granularity=" + granularity + ", bucket=" + bucket + ", recipe=" + recipe + ", count="
+                + count + ", revenue=" + revenue + "]";
+    }
+
+}
@@ -1,7 +1,19 @@
 package edu.ncsu.csc.CoffeeMaker.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import edu.ncsu.csc.CoffeeMaker.models.DomainObject;
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 
 /**
@@ -11,15 +23,181 @@ import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
  * @author Christian Andersen
  *
  */
-public interface IngredientRepository extends JpaRepository<Ingredient, Long> {
+public interface IngredientRepository extends JpaRepository<Ingredient, Long>, IngredientRepositoryCustom {
 
     /**
-     * Finds an Ingredient object with the provided name. Spring will generate
-     * code to make this happen.
+     * Finds an Ingredient managed through the IngredientService with the
+     * provided name, ignoring case and surrounding whitespace. Looked up
+     * through the unique index on the normalised name.
      *
      * @param name
      *            Name of the Ingredient
      * @return Found Ingredient, null if none.
      */
-    Ingredient findByName ( String name );
+    default Ingredient findByName ( final String name ) {
+        return findByCatalogName( DomainObject.normalizeName( name ) );
+    }
+
+    /**
+     * Finds an Ingredient managed through the IngredientService with the
+     * provided normalised name. Spring will generate code to make this happen.
+     * The result is kept in Hibernate's query cache.
+     *
+     * @param catalogName
+     *            Normalised name of the Ingredient
+     * @return Found Ingredient, null if none.
+     */
+    @QueryHints ( @QueryHint ( name = "org.hibernate.cacheable", value = "true" ) )
+    Ingredient findByCatalogName ( String catalogName );
+
+    /**
+     * Fills in the normalised name of Ingredients saved before it was kept:
+     * those that belong to neither a recipe nor the Inventory. Must be called
+     * inside of a transaction.
+     *
+     * @return the number of Ingredients updated
+     */
+    @Modifying
+    @Query ( "update Ingredient i set i.catalogName = lower(trim(i.name)) where i.catalogName is null"
+            + " and not exists (select r from Recipe r where i member of r.ingredients)"
+            + " and not exists (select inv from Inventory inv where i member of inv.ingInventory)" )
+    int fillInCatalogNames ();
+
+    /**
+     * Takes the provided amount off of an Ingredient in a single UPDATE, but
+     * only if there is at least that much of it. The version is bumped so that
+     * anyone holding an older copy of the Ingredient cannot overwrite the
+     * change. Must be called inside of a transaction.
+     *
+     * @param id
+     *            ID of the Ingredient
+     * @param amount
+     *            amount to take off
+     * @return 1 if the amount was taken, 0 if there was not enough (or no such
+     *         Ingredient)
+     */
+    @Modifying ( flushAutomatically = true, clearAutomatically = true )
+    @Query ( "update Ingredient i set i.amount = i.amount - :amount, i.version = i.version + 1 "
+            + "where i.id = :id and i.amount >= :amount" )
+    int decrementAmount ( @Param ( "id" ) long id, @Param ( "amount" ) int amount );
+
+    /**
+     * Adds the provided amount to an Ingredient in a single UPDATE, bumping the
+     * version. Must be called inside of a transaction.
+     *
+     * @param id
+     *            ID of the Ingredient
+     * @param amount
+     *            amount to add
+     * @return 1 if the Ingredient was updated, 0 if there is no such
+     *         Ingredient
+     */
+    @Modifying ( flushAutomatically = true, clearAutomatically = true )
+    @Query ( "update Ingredient i set i.amount = i.amount + :amount, i.version = i.version + 1 where i.id = :id" )
+    int incrementAmount ( @Param ( "id" ) long id, @Param ( "amount" ) int amount );
+
+    /**
+     * Finds the ingredients of the Inventory, holding a write lock on them
+     * until the current transaction ends, so that no other change can be made
+     * to their levels meanwhile.
+     *
+     * @return the Inventory's ingredients
+     */
+    @Lock ( LockModeType.PESSIMISTIC_WRITE )
+    @Query ( "select i from Inventory inv join inv.ingInventory i" )
+    List<Ingredient> findInventoryIngredientsForUpdate ();
+
+    /**
+     * Finds the ingredients of the Inventory with the provided names, holding
+     * a write lock on them until the current transaction ends.
+     *
+     * @param names
+     *            names of the ingredients
+     * @return the ingredients found
+     */
+    @Lock ( LockModeType.PESSIMISTIC_WRITE )
+    @Query ( "select i from Inventory inv join inv.ingInventory i where i.name in :names" )
+    List<Ingredient> findInventoryIngredientsForUpdate ( @Param ( "names" ) Collection<String> names );
+
+    /**
+     * Returns the level of each of an Inventory's ingredients as stored in the
+     * database, holding a write lock on them until the current transaction
+     * ends. Changes made to them in the current transaction that have not been
+     * written yet are not written first, and so are not included.
+     *
+     * @param inventoryId
+     *            ID of the Inventory
+     * @return the stored levels
+     */
+    @Lock ( LockModeType.PESSIMISTIC_WRITE )
+    @QueryHints ( @QueryHint ( name = "org.hibernate.flushMode", value = "COMMIT" ) )
+    @Query ( "select i.name as name, i.amount as amount from Inventory inv join inv.ingInventory i "
+            + "where inv.id = :id" )
+    List<Level> findLevelsForUpdate ( @Param ( "id" ) long inventoryId );
+
+    /**
+     * Returns the level of each of the provided Ingredients that belongs to an
+     * Inventory, as stored in the database, holding a write lock on them until
+     * the current transaction ends. As with `findLevelsForUpdate()`, changes
+     * not written yet are not included.
+     *
+     * @param ids
+     *            IDs of the Ingredients
+     * @return the stored levels of those in an Inventory
+     */
+    @Lock ( LockModeType.PESSIMISTIC_WRITE )
+    @QueryHints ( @QueryHint ( name = "org.hibernate.flushMode", value = "COMMIT" ) )
+    @Query ( "select i.name as name, i.amount as amount from Inventory inv join inv.ingInventory i "
+            + "where i.id in :ids" )
+    List<Level> findInventoryLevelsForUpdate ( @Param ( "ids" ) Collection<Long> ids );
+
+    /**
+     * Returns the level of each of the Inventory's ingredients with the
+     * provided names, as stored in the database, holding a write lock on them
+     * until the current transaction ends. Changes made in the current
+     * transaction are written first.
+     *
+     * @param names
+     *            names of the ingredients
+     * @return the stored levels of those in the Inventory
+     */
+    @Lock ( LockModeType.PESSIMISTIC_WRITE )
+    @Query ( "select i.name as name, i.amount as amount from Inventory inv join inv.ingInventory i "
+            + "where i.name in :names" )
+    List<Level> findInventoryLevelsByNameForUpdate ( @Param ( "names" ) Collection<String> names );
+
+    /**
+     * Returns the level of each of the Inventory's ingredients with the
+     * provided names, as stored in the database. Read straight from the
+     * database, so changes made by bulk updates in the current transaction are
+     * included.
+     *
+     * @param names
+     *            names of the ingredients
+     * @return the stored levels of those in the Inventory
+     */
+    @Query ( "select i.name as name, i.amount as amount from Inventory inv join inv.ingInventory i "
+            + "where i.name in :names" )
+    List<Level> findInventoryLevels ( @Param ( "names" ) Collection<String> names );
+
+    /**
+     * Level of one ingredient.
+     */
+    interface Level {
+
+        /**
+         * Returns the name of the ingredient.
+         *
+         * @return the name
+         */
+        String getName ();
+
+        /**
+         * Returns the amount of the ingredient.
+         *
+         * @return the amount
+         */
+        Integer getAmount ();
+    }
+
 }
@@ -0,0 +1,24 @@
+package edu.ncsu.csc.CoffeeMaker.repositories;
+
+import java.util.Map;
+
+/**
+ * Operations on Ingredients that Spring cannot generate, implemented in
+ * IngredientRepositoryImpl and made part of IngredientRepository.
+ */
+public interface IngredientRepositoryCustom {
+
+    /**
+     * Restocks several of the Inventory's ingredients in a single UPDATE,
+     * bumping each one's version. Must be called inside of a transaction.
+     *
+     * @param increments
+     *            amounts to add, keyed by ingredient name
+     * @param levels
+     *            amounts to set, keyed by ingredient name; no name may also be
+     *            in `increments`
+     * @return the number of the Inventory's ingredients updated
+     */
+    int restock ( Map<String, Integer> increments, Map<String, Integer> levels );
+
+}
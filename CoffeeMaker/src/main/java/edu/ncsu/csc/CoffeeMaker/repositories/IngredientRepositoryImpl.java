@@ -0,0 +1,58 @@
+package edu.ncsu.csc.CoffeeMaker.repositories;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+/**
+ * Implements the operations in IngredientRepositoryCustom. Spring finds this
+ * class by its name and adds it to IngredientRepository.
+ */
+public class IngredientRepositoryImpl implements IngredientRepositoryCustom {
+
+    /** Used to run the queries */
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int restock ( final Map<String, Integer> increments, final Map<String, Integer> levels ) {
+        if ( increments.isEmpty() && levels.isEmpty() ) {
+            return 0;
+        }
+        final StringBuilder jpql = new StringBuilder( "update Ingredient i set i.amount = case" );
+        final List<String> names = new ArrayList<String>();
+        final Map<String, Object> params = new HashMap<String, Object>();
+        int n = 0;
+        for ( final Map.Entry<String, Integer> e : increments.entrySet() ) {
+            jpql.append( " when i.name = :n" ).append( n ).append( " then i.amount + :a" ).append( n );
+            params.put( "n" + n, e.getKey() );
+            params.put( "a" + n, e.getValue() );
+            names.add( e.getKey() );
+            n++;
+        }
+        for ( final Map.Entry<String, Integer> e : levels.entrySet() ) {
+            jpql.append( " when i.name = :n" ).append( n ).append( " then :a" ).append( n );
+            params.put( "n" + n, e.getKey() );
+            params.put( "a" + n, e.getValue() );
+            names.add( e.getKey() );
+            n++;
+        }
+        jpql.append( " else i.amount end, i.version = i.version + 1 where i.name in :names" )
+                .append( " and exists (select inv from Inventory inv where i member of inv.ingInventory)" );
+
+        // as with @Modifying ( flushAutomatically = true, clearAutomatically =
+        // true ) on the generated updates
+        entityManager.flush();
+        final Query query = entityManager.createQuery( jpql.toString() ).setParameter( "names", names );
+        params.forEach( query::setParameter );
+        final int updated = query.executeUpdate();
+        entityManager.clear();
+        return updated;
+    }
+
+}
@@ -0,0 +1,71 @@
+package edu.ncsu.csc.CoffeeMaker.repositories;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import edu.ncsu.csc.CoffeeMaker.models.InventoryMovement;
+
+/**
+ * InventoryMovementRepository is used to append to, and read back, the log of
+ * movements of the Inventory's ingredients. Spring will generate appropriate
+ * code with JPA.
+ */
+public interface InventoryMovementRepository extends JpaRepository<InventoryMovement, Long> {
+
+    /**
+     * Finds the movements after the provided one, oldest first.
+     *
+     * @param after
+     *            id of the last movement already seen; 0 for the first
+     * @param page
+     *            how many movements to return
+     * @return the movements
+     */
+    List<InventoryMovement> findByIdGreaterThanOrderByIdAsc ( long after, Pageable page );
+
+    /**
+     * Returns the id of the latest movement.
+     *
+     * @return the id, 0 if there are no movements
+     */
+    @Query ( "select coalesce(max(m.id), 0) from InventoryMovement m" )
+    long findLastId ();
+
+    /**
+     * Adds up the movements of each ingredient in a range of movements.
+     *
+     * @param after
+     *            id of the last movement not to include
+     * @param upTo
+     *            id of the last movement to include
+     * @return the total change of each ingredient that moved
+     */
+    @Query ( "select m.ingredient as ingredient, sum(m.delta) as total from InventoryMovement m "
+            + "where m.id > :after and m.id <= :upTo group by m.ingredient" )
+    List<Total> totalBetween ( @Param ( "after" ) long after, @Param ( "upTo" ) long upTo );
+
+    /**
+     * Total change of one ingredient over a range of movements.
+     */
+    interface Total {
+
+        /**
+         * Returns the name of the ingredient.
+         *
+         * @return the name
+         */
+        String getIngredient ();
+
+        /**
+         * Returns the total change of the ingredient.
+         *
+         * @return the total change
+         */
+        Long getTotal ();
+    }
+
+}
@@ -1,6 +1,15 @@
 package edu.ncsu.csc.CoffeeMaker.repositories;
 
+import java.util.List;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import edu.ncsu.csc.CoffeeMaker.models.Inventory;
 
@@ -13,4 +22,27 @@ import edu.ncsu.csc.CoffeeMaker.models.Inventory;
  */
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
 
+    /**
+     * Finds all Inventory records, along with their ingredients in the same
+     * query. The result is kept in the query cache, as the Inventory is looked
+     * up far more often than it is created.
+     *
+     * @return All Inventory records
+     */
+    @Override
+    @EntityGraph ( attributePaths = "ingInventory" )
+    @QueryHints ( @QueryHint ( name = "org.hibernate.cacheable", value = "true" ) )
+    List<Inventory> findAll ();
+
+    /**
+     * Finds all Inventory records, holding a write lock on them until the
+     * current transaction ends. Used so that concurrent writers cannot
+     * overwrite each other's changes.
+     *
+     * @return All Inventory records
+     */
+    @Lock ( LockModeType.PESSIMISTIC_WRITE )
+    @Query ( "select i from Inventory i" )
+    List<Inventory> findAllForUpdate ();
+
 }
@@ -0,0 +1,21 @@
+package edu.ncsu.csc.CoffeeMaker.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import edu.ncsu.csc.CoffeeMaker.models.InventorySnapshot;
+
+/**
+ * InventorySnapshotRepository is used to save and find snapshots of the
+ * Inventory's ingredient levels. Spring will generate appropriate code with
+ * JPA.
+ */
+public interface InventorySnapshotRepository extends JpaRepository<InventorySnapshot, Long> {
+
+    /**
+     * Finds the snapshot that includes the most movements.
+     *
+     * @return the latest snapshot, null if none has been taken
+     */
+    InventorySnapshot findFirstByOrderByLastMovementDesc ();
+
+}
@@ -1,7 +1,19 @@
 package edu.ncsu.csc.CoffeeMaker.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import edu.ncsu.csc.CoffeeMaker.models.DomainObject;
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
 
 /**
@@ -14,13 +26,103 @@ import edu.ncsu.csc.CoffeeMaker.models.Recipe;
 public interface RecipeRepository extends JpaRepository<Recipe, Long> {
 
     /**
-     * Finds a Recipe object with the provided name. Spring will generate code
-     * to make this happen.
-     * 
+     * Finds a Recipe object with the provided name, ignoring case and
+     * surrounding whitespace. Looked up through the unique index on the
+     * normalised name.
+     *
      * @param name
      *            Name of the recipe
      * @return Found recipe, null if none.
      */
-    Recipe findByName ( String name );
+    default Recipe findByName ( final String name ) {
+        return findByNameKey( DomainObject.normalizeName( name ) );
+    }
+
+    /**
+     * Finds a Recipe object with the provided normalised name. Spring will
+     * generate code to make this happen. The result is kept in Hibernate's
+     * query cache.
+     *
+     * @param nameKey
+     *            Normalised name of the recipe
+     * @return Found recipe, null if none.
+     */
+    @EntityGraph ( attributePaths = "ingredients" )
+    @QueryHints ( @QueryHint ( name = "org.hibernate.cacheable", value = "true" ) )
+    Recipe findByNameKey ( String nameKey );
+
+    /**
+     * Fills in the normalised name of recipes saved before it was kept. Must
+     * be called inside of a transaction.
+     *
+     * @return the number of recipes updated
+     */
+    @Modifying
+    @Query ( "update Recipe r set r.nameKey = lower(trim(r.name)) where r.nameKey is null" )
+    int fillInNameKeys ();
+
+    /**
+     * Finds every Recipe along with its ingredients, in a single query rather
+     * than one for the recipes and another for each recipe's ingredients.
+     *
+     * @return All recipes
+     */
+    @Query ( "select distinct r from Recipe r left join fetch r.ingredients" )
+    @QueryHints ( @QueryHint ( name = "hibernate.query.passDistinctThrough", value = "false" ) )
+    List<Recipe> findAllWithIngredients ();
+
+    /**
+     * Finds the Recipes with the provided IDs along with their ingredients, in
+     * a single query.
+     *
+     * @param ids
+     *            IDs of the recipes; must not be empty
+     * @return Found recipes, in no particular order
+     */
+    @Query ( "select distinct r from Recipe r left join fetch r.ingredients where r.id in :ids" )
+    @QueryHints ( @QueryHint ( name = "hibernate.query.passDistinctThrough", value = "false" ) )
+    List<Recipe> findAllWithIngredientsByIdIn ( @Param ( "ids" ) Collection<Long> ids );
+
+    /**
+     * Finds the IDs of the Recipes that come after the provided one by name,
+     * then ID, within a price range. Served from the name index.
+     *
+     * @param name
+     *            Name of the recipe to start after
+     * @param id
+     *            ID of the recipe to start after
+     * @param min
+     *            Lowest price, inclusive
+     * @param max
+     *            Highest price, inclusive
+     * @param page
+     *            How many IDs to return
+     * @return IDs of the recipes, in order
+     */
+    @Query ( "select r.id from Recipe r where r.price between :min and :max"
+            + " and ( r.name > :name or ( r.name = :name and r.id > :id ) ) order by r.name, r.id" )
+    List<Long> findIdsAfterName ( @Param ( "name" ) String name, @Param ( "id" ) long id, @Param ( "min" ) int min,
+            @Param ( "max" ) int max, Pageable page );
+
+    /**
+     * Finds the IDs of the Recipes that come after the provided one by price,
+     * then ID, within a price range. Served from the price index.
+     *
+     * @param price
+     *            Price of the recipe to start after
+     * @param id
+     *            ID of the recipe to start after
+     * @param min
+     *            Lowest price, inclusive
+     * @param max
+     *            Highest price, inclusive
+     * @param page
+     *            How many IDs to return
+     * @return IDs of the recipes, in order
+     */
+    @Query ( "select r.id from Recipe r where r.price between :min and :max"
+            + " and ( r.price > :price or ( r.price = :price and r.id > :id ) ) order by r.price, r.id" )
+    List<Long> findIdsAfterPrice ( @Param ( "price" ) int price, @Param ( "id" ) long id, @Param ( "min" ) int min,
+            @Param ( "max" ) int max, Pageable page );
 
 }
@@ -0,0 +1,40 @@
+package edu.ncsu.csc.CoffeeMaker.repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import edu.ncsu.csc.CoffeeMaker.models.Sale;
+
+/**
+ * SaleRepository is used to save every Sale, and to keep track of which have
+ * been added to the SalesRollups. Spring will generate appropriate code with
+ * JPA.
+ */
+public interface SaleRepository extends JpaRepository<Sale, Long> {
+
+    /**
+     * Finds every sale that has not been added to the rollups yet, along with
+     * the ingredients it used.
+     *
+     * @return the sales
+     */
+    @Query ( "select distinct s from Sale s left join fetch s.ingredients where s.rolledUp = false" )
+    List<Sale> findNotRolledUp ();
+
+    /**
+     * Marks sales as added to the rollups.
+     *
+     * @param ids
+     *            ids of the sales
+     * @return the number of sales updated
+     */
+    @Modifying
+    @Query ( "update Sale s set s.rolledUp = true where s.id in :ids" )
+    int markRolledUp ( @Param ( "ids" ) Collection<Long> ids );
+
+}
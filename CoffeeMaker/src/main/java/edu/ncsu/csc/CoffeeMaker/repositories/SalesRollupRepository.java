@@ -0,0 +1,53 @@
+package edu.ncsu.csc.CoffeeMaker.repositories;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import edu.ncsu.csc.CoffeeMaker.models.SalesRollup;
+import edu.ncsu.csc.CoffeeMaker.models.SalesRollup.Granularity;
+
+/**
+ * SalesRollupRepository is used to save and find the rollups of sales by
+ * recipe and time. Spring will generate appropriate code with JPA.
+ */
+public interface SalesRollupRepository extends JpaRepository<SalesRollup, Long> {
+
+    /**
+     * Finds the rollup of a recipe's sales over a bucket.
+     *
+     * @param granularity
+     *            length of the bucket
+     * @param bucket
+     *            start of the bucket
+     * @param recipe
+     *            name of the recipe
+     * @return the rollup, null if the recipe has not been rolled up for the
+     *         bucket
+     */
+    SalesRollup findByGranularityAndBucketAndRecipe ( Granularity granularity, Instant bucket, String recipe );
+
+    /**
+     * Finds the rollups of buckets that start in a range of time, along with
+     * the ingredients they used, in order of bucket and then recipe.
+     *
+     * @param granularity
+     *            length of the buckets
+     * @param from
+     *            earliest start of a bucket to include
+     * @param to
+     *            start of the first bucket not to include
+     * @param recipe
+     *            name of the only recipe to include; null for every recipe
+     * @return the rollups
+     */
+    @Query ( "select distinct r from SalesRollup r left join fetch r.ingredients where r.granularity = :granularity "
+            + "and r.bucket >= :from and r.bucket < :to and (:recipe is null or r.recipe = :recipe) "
+            + "order by r.bucket, r.recipe" )
+    List<SalesRollup> findBetween ( @Param ( "granularity" ) Granularity granularity, @Param ( "from" ) Instant from,
+            @Param ( "to" ) Instant to, @Param ( "recipe" ) String recipe );
+
+}
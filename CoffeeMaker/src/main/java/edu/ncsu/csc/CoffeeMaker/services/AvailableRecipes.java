@@ -0,0 +1,362 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
+
+/**
+ * The recipes that can be made right now, and how many cups of each the
+ * Inventory allows. Rather than working this out across every recipe each time
+ * it is asked for, the number of cups of each recipe is kept along with the
+ * ingredient levels it was worked out from; when asked again, only the
+ * recipes using an ingredient whose level has moved since are worked out
+ * again. Everything is worked out afresh when the recipes change.
+ *
+ * The result is published as an immutable snapshot along with the recipes'
+ * version and the InventoryLedger's count of changes it was worked out from.
+ * A request finding both unchanged is answered from the snapshot without
+ * taking any lock or starting a transaction. Otherwise the request works out a
+ * new snapshot from the last one, without changing it, and publishes it with
+ * a compare-and-set unless a newer one got there first; requests never wait
+ * for one another.
+ *
+ * Levels are read from the InventoryLedger, so ingredients held by open
+ * reservations count as used.
+ */
+@Component
+public class AvailableRecipes {
+
+    /** Used to load the recipes */
+    @Autowired
+    private RecipeService                     recipeService;
+
+    /** Used to load the ingredient levels when the ledger is not loaded */
+    @Autowired
+    private InventoryService                  inventoryService;
+
+    /** Used to read the ingredient levels */
+    @Autowired
+    private InventoryLedger                   ledger;
+
+    /** Used to compile the recipes */
+    @Autowired
+    private IngredientCatalog                 catalog;
+
+    /** Tells when the recipes have changed */
+    @Autowired
+    private ResourceVersions                  versions;
+
+    /** The recipes that could be made when last worked out */
+    private final AtomicReference<Published> published = new AtomicReference<Published>(
+            new Published( Index.EMPTY, -1, null, new int[0], Collections.emptyList() ) );
+
+    /**
+     * Returns the recipes that can be made right now, by name.
+     *
+     * @return the recipes, with the number of cups of each that can be made;
+     *         the list cannot be changed
+     */
+    public List<Available> available () {
+        if ( !ledger.isLoaded() ) {
+            // load it first, so that loading it does not count as a change
+            inventoryService.levels();
+        }
+        final long recipesVersion = versions.version( Resource.RECIPES );
+        final long ledgerVersion = ledger.version();
+        final Published last = published.get();
+        if ( last.index.recipesVersion == recipesVersion && last.ledgerVersion == ledgerVersion ) {
+            return last.recipes;
+        }
+
+        final Index index = last.index.recipesVersion == recipesVersion ? last.index
+                : new Index( recipesVersion, recipeService.findAll(), catalog );
+        final Published next = work( index, ledgerVersion, levels(), last );
+        publish( next );
+        return next.recipes;
+    }
+
+    /**
+     * Reads the ingredient levels from the ledger, loading it if it has been
+     * dropped.
+     *
+     * @return the levels, indexed by ordinal
+     */
+    private int[] levels () {
+        try {
+            return ledger.levels();
+        }
+        catch ( final IllegalStateException e ) {
+            return inventoryService.levels();
+        }
+    }
+
+    /**
+     * Works out the cups of every recipe, starting from those last worked out
+     * if they are for the same recipes.
+     *
+     * @param index
+     *            the recipes
+     * @param ledgerVersion
+     *            the ledger's count of changes, read before the levels
+     * @param levels
+     *            the ingredient levels
+     * @param last
+     *            the last snapshot published; not changed
+     * @return the new snapshot
+     */
+    private static Published work ( final Index index, final long ledgerVersion, final int[] levels,
+            final Published last ) {
+        final int[] cups;
+        if ( last.index != index || null == last.levels ) {
+            cups = new int[index.recipes.length];
+            for ( int r = 0; r < cups.length; r++ ) {
+                cups[r] = cups( index.vectors[r], levels );
+            }
+        }
+        else {
+            cups = last.cups.clone();
+            for ( int ord = 0; ord < index.users.length; ord++ ) {
+                if ( level( levels, ord ) != level( last.levels, ord ) ) {
+                    for ( final int r : index.users[ord] ) {
+                        cups[r] = cups( index.vectors[r], levels );
+                    }
+                }
+            }
+        }
+
+        final List<Available> available = new ArrayList<Available>();
+        for ( int r = 0; r < cups.length; r++ ) {
+            if ( cups[r] > 0 ) {
+                available.add( new Available( index.recipes[r].getName(), index.recipes[r].getPrice(), cups[r] ) );
+            }
+        }
+        return new Published( index, ledgerVersion, levels, cups, Collections.unmodifiableList( available ) );
+    }
+
+    /**
+     * Publishes a snapshot, unless one worked out from newer recipes or levels
+     * has been published already.
+     *
+     * @param next
+     *            the snapshot
+     */
+    private void publish ( final Published next ) {
+        while ( true ) {
+            final Published current = published.get();
+            if ( current.index.recipesVersion > next.index.recipesVersion
+                    || ( current.index.recipesVersion == next.index.recipesVersion
+                            && current.ledgerVersion >= next.ledgerVersion ) ) {
+                return;
+            }
+            if ( published.compareAndSet( current, next ) ) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Works out how many cups of a recipe can be made.
+     *
+     * @param vector
+     *            the compiled recipe
+     * @param levels
+     *            the ingredient levels
+     * @return the number of cups; an ingredient not in the Inventory allows
+     *         none, and one needed in no amount does not limit it
+     */
+    private static int cups ( final RecipeVector vector, final int[] levels ) {
+        int cups = Integer.MAX_VALUE;
+        for ( int i = 0; i < vector.size(); i++ ) {
+            final int have = level( levels, vector.ordinal( i ) );
+            if ( have < 0 ) {
+                return 0;
+            }
+            if ( vector.amount( i ) > 0 ) {
+                cups = Math.min( cups, have / vector.amount( i ) );
+            }
+        }
+        return cups;
+    }
+
+    /**
+     * Reads an ingredient level.
+     *
+     * @param levels
+     *            the levels
+     * @param ord
+     *            ordinal of the ingredient
+     * @return the level, -1 if the ingredient is not in the Inventory
+     */
+    private static int level ( final int[] levels, final int ord ) {
+        return ord < levels.length ? levels[ord] : -1;
+    }
+
+    /**
+     * Every recipe, compiled and indexed by the ingredients it uses. Never
+     * changed once built.
+     */
+    private static final class Index {
+
+        /** Index of no recipes, from before any were read */
+        private static final Index   EMPTY = new Index( -1, Collections.emptyList(), null );
+
+        /** Version of the recipes */
+        private final long           recipesVersion;
+
+        /** Every recipe, by name */
+        private final Recipe[]       recipes;
+
+        /** The recipes, compiled */
+        private final RecipeVector[] vectors;
+
+        /** Positions of the recipes using each ingredient, indexed by ordinal */
+        private final int[][]        users;
+
+        /**
+         * Compiles the recipes, and indexes them by the ingredients they use.
+         *
+         * @param recipesVersion
+         *            version of the recipes, read before they were
+         * @param all
+         *            every recipe
+         * @param catalog
+         *            catalog to compile them with
+         */
+        Index ( final long recipesVersion, final List<Recipe> all, final IngredientCatalog catalog ) {
+            this.recipesVersion = recipesVersion;
+            final Map<String, Recipe> byName = new TreeMap<String, Recipe>();
+            all.forEach( recipe -> byName.put( recipe.getName(), recipe ) );
+            recipes = byName.values().toArray( new Recipe[0] );
+            vectors = new RecipeVector[recipes.length];
+            final List<List<Integer>> using = new ArrayList<List<Integer>>();
+            for ( int r = 0; r < recipes.length; r++ ) {
+                vectors[r] = catalog.compile( recipes[r] );
+                for ( int i = 0; i < vectors[r].size(); i++ ) {
+                    final int ord = vectors[r].ordinal( i );
+                    while ( using.size() <= ord ) {
+                        using.add( new ArrayList<Integer>() );
+                    }
+                    using.get( ord ).add( r );
+                }
+            }
+            users = new int[using.size()][];
+            for ( int ord = 0; ord < users.length; ord++ ) {
+                users[ord] = using.get( ord ).stream().mapToInt( Integer::intValue ).toArray();
+            }
+        }
+    }
+
+    /**
+     * The recipes that could be made, and what that was worked out from. Never
+     * changed once published.
+     */
+    private static final class Published {
+
+        /** The recipes */
+        private final Index           index;
+
+        /** The ledger's count of changes, read before the levels */
+        private final long            ledgerVersion;
+
+        /** Ingredient levels; null if none were read */
+        private final int[]           levels;
+
+        /** Number of cups of each recipe, in the order of the index */
+        private final int[]           cups;
+
+        /** The recipes that could be made */
+        private final List<Available> recipes;
+
+        /**
+         * Creates a Published.
+         *
+         * @param index
+         *            the recipes
+         * @param ledgerVersion
+         *            the ledger's count of changes, read before the levels
+         * @param levels
+         *            ingredient levels
+         * @param cups
+         *            number of cups of each recipe
+         * @param recipes
+         *            the recipes that could be made
+         */
+        Published ( final Index index, final long ledgerVersion, final int[] levels, final int[] cups,
+                final List<Available> recipes ) {
+            this.index = index;
+            this.ledgerVersion = ledgerVersion;
+            this.levels = levels;
+            this.cups = cups;
+            this.recipes = recipes;
+        }
+    }
+
+    /**
+     * A recipe that can be made, and how many cups of it.
+     */
+    public static final class Available {
+
+        /** Name of the recipe */
+        private final String  name;
+
+        /** Price of the recipe */
+        private final Integer price;
+
+        /** Number of cups that can be made */
+        private final int     cups;
+
+        /**
+         * Creates an Available.
+         *
+         * @param name
+         *            name of the recipe
+         * @param price
+         *            price of the recipe
+         * @param cups
+         *            number of cups that can be made
+         */
+        Available ( final String name, final Integer price, final int cups ) {
+            this.name = name;
+            this.price = price;
+            this.cups = cups;
+        }
+
+        /**
+         * Returns the name of the recipe.
+         *
+         * @return the name
+         */
+        public String getName () {
+            return name;
+        }
+
+        /**
+         * Returns the price of the recipe.
+         *
+         * @return the price
+         */
+        public Integer getPrice () {
+            return price;
+        }
+
+        /**
+         * Returns the number of cups that can be made, Integer.MAX_VALUE if the
+         * recipe needs no ingredients at all.
+         *
+         * @return the number of cups
+         */
+        public int getCups () {
+            return cups;
+        }
+    }
+
+}
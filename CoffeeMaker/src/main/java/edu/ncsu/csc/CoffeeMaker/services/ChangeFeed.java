@@ -0,0 +1,417 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Pushes changes to the Inventory and the recipes to clients over Server-Sent
+ * Events, so that pages showing them can stay up to date without polling.
+ * Each change is a small event naming what changed: an `ingredient` event with
+ * its new amount, a `recipe` event when a recipe is saved or removed, or a
+ * `resync` event when too much has changed to describe and the client should
+ * fetch everything again.
+ *
+ * Changes are published once the transaction making them has committed, and
+ * are sent in batches every `coffeemaker.changes.coalesce-ms`; several changes
+ * to the same ingredient or recipe within a batch are sent as one. Each client
+ * has a bounded buffer of changes waiting to be sent, and a client that falls
+ * so far behind that it overflows is sent a `resync` instead, so a slow client
+ * never holds on to an unbounded amount of memory. Each client is written to
+ * on its own thread, one batch at a time, so a slow client never holds up the
+ * others; one that has not accepted a batch within
+ * `coffeemaker.changes.send-timeout-ms` is disconnected. The number of
+ * clients is published as the `coffeemaker.changes.clients` gauge, and
+ * overflows are counted in `coffeemaker.changes.overflows`.
+ */
+@Component
+public class ChangeFeed {
+
+    /** Sent to a client that has missed changes */
+    private static final Change RESYNC  = new Change( "resync", null, null, null );
+
+    /** Registry the feed metrics are published to */
+    @Autowired
+    private MeterRegistry       registry;
+
+    /** How often waiting changes are sent, in milliseconds */
+    @Value ( "${coffeemaker.changes.coalesce-ms:200}" )
+    private long                coalesce;
+
+    /** Most changes waiting to be sent to one client */
+    @Value ( "${coffeemaker.changes.buffer:256}" )
+    private int                 buffer;
+
+    /** How long a client stays connected before it has to reconnect */
+    @Value ( "${coffeemaker.changes.timeout-ms:1800000}" )
+    private long                timeout;
+
+    /** Longest a client may take to accept a batch of changes */
+    @Value ( "${coffeemaker.changes.send-timeout-ms:10000}" )
+    private long                sendTimeout;
+
+    /** Connected clients */
+    private final Set<Client>   clients = ConcurrentHashMap.newKeySet();
+
+    /** Hands waiting changes to the writers */
+    private ScheduledExecutorService sender;
+
+    /** Writes changes to the clients, one client per thread */
+    private ExecutorService     writers;
+
+    /** Number of times a client's buffer overflowed */
+    private Counter             overflows;
+
+    /**
+     * Starts sending changes.
+     */
+    @PostConstruct
+    public void start () {
+        sender = Executors.newSingleThreadScheduledExecutor( r -> {
+            final Thread t = new Thread( r, "change-feed" );
+            t.setDaemon( true );
+            return t;
+        } );
+        writers = Executors.newCachedThreadPool( r -> {
+            final Thread t = new Thread( r, "change-feed-writer" );
+            t.setDaemon( true );
+            return t;
+        } );
+        sender.scheduleWithFixedDelay( this::send, coalesce, coalesce, TimeUnit.MILLISECONDS );
+        registry.gaugeCollectionSize( "coffeemaker.changes.clients", Tags.empty(), clients );
+        overflows = registry.counter( "coffeemaker.changes.overflows" );
+    }
+
+    /**
+     * Stops sending changes, and disconnects every client.
+     */
+    @PreDestroy
+    public void stop () {
+        sender.shutdownNow();
+        writers.shutdownNow();
+        for ( final Client client : clients ) {
+            client.emitter.complete();
+        }
+        clients.clear();
+    }
+
+    /**
+     * Connects a new client.
+     *
+     * @return the event stream to send the client
+     */
+    public SseEmitter subscribe () {
+        final Client client = new Client( new SseEmitter( timeout ) );
+        client.emitter.onCompletion( () -> clients.remove( client ) );
+        client.emitter.onTimeout( () -> clients.remove( client ) );
+        client.emitter.onError( e -> clients.remove( client ) );
+        clients.add( client );
+        return client.emitter;
+    }
+
+    /**
+     * Checks whether any client is connected, so that working out a change
+     * nobody would be sent can be skipped.
+     *
+     * @return true if there is at least one client
+     */
+    public boolean hasClients () {
+        return !clients.isEmpty();
+    }
+
+    /**
+     * Publishes a change to the amount of an ingredient, once the current
+     * transaction commits.
+     *
+     * @param name
+     *            name of the ingredient
+     * @param amount
+     *            its new amount, as written by the transaction; if null,
+     *            clients are told to resync instead
+     */
+    public void ingredientChanged ( final String name, final Integer amount ) {
+        afterCommit( () -> offer( null == amount ? RESYNC : new Change( "ingredient", name, amount, null ) ) );
+    }
+
+    /**
+     * Publishes that a recipe has been saved or removed, once the current
+     * transaction commits.
+     *
+     * @param name
+     *            name of the recipe
+     * @param removed
+     *            true if the recipe was removed
+     */
+    public void recipeChanged ( final String name, final boolean removed ) {
+        afterCommit( () -> offer( new Change( "recipe", name, null, removed ) ) );
+    }
+
+    /**
+     * Tells every client to fetch everything again, once the current
+     * transaction commits. Used for changes too broad to describe.
+     */
+    public void resync () {
+        afterCommit( () -> offer( RESYNC ) );
+    }
+
+    /**
+     * Runs an action once the current transaction commits, or straight away
+     * if there is none. Does nothing while no client is connected, as a client
+     * fetches everything when it connects.
+     *
+     * @param action
+     *            the action
+     */
+    private void afterCommit ( final Runnable action ) {
+        if ( clients.isEmpty() ) {
+            return;
+        }
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit () {
+                action.run();
+            }
+        } );
+    }
+
+    /**
+     * Queues a change to be sent to every client.
+     *
+     * @param change
+     *            the change
+     */
+    private void offer ( final Change change ) {
+        for ( final Client client : clients ) {
+            if ( !client.offer( change, buffer ) ) {
+                overflows.increment();
+            }
+        }
+    }
+
+    /**
+     * Hands every client that is not still being written to the changes
+     * waiting for it. A client that has been written to for longer than the
+     * send timeout is disconnected.
+     */
+    private void send () {
+        final long now = System.currentTimeMillis();
+        for ( final Client client : clients ) {
+            final long since = client.sendingSince.get();
+            if ( 0 != since ) {
+                if ( now - since > sendTimeout ) {
+                    disconnect( client,
+                            new TimeoutException( "Client did not accept changes within " + sendTimeout + " ms" ) );
+                }
+                continue;
+            }
+            final List<Change> batch = client.drain();
+            if ( batch.isEmpty() ) {
+                continue;
+            }
+            client.sendingSince.set( now );
+            writers.execute( () -> write( client, batch ) );
+        }
+    }
+
+    /**
+     * Writes a batch of changes to a client. A client that cannot be written
+     * to is disconnected.
+     *
+     * @param client
+     *            the client
+     * @param batch
+     *            the changes, oldest first
+     */
+    private void write ( final Client client, final List<Change> batch ) {
+        try {
+            for ( final Change change : batch ) {
+                client.emitter.send(
+                        SseEmitter.event().name( change.getType() ).data( change, MediaType.APPLICATION_JSON ) );
+            }
+        }
+        catch ( final IOException | RuntimeException e ) {
+            disconnect( client, e );
+        }
+        finally {
+            client.sendingSince.set( 0 );
+        }
+    }
+
+    /**
+     * Disconnects a client, unless it has already been.
+     *
+     * @param client
+     *            the client
+     * @param cause
+     *            why it is disconnected
+     */
+    private void disconnect ( final Client client, final Throwable cause ) {
+        if ( clients.remove( client ) ) {
+            client.emitter.completeWithError( cause );
+        }
+    }
+
+    /**
+     * A connected client, and the changes waiting to be sent to it.
+     */
+    private static final class Client {
+
+        /** Event stream to the client */
+        private final SseEmitter          emitter;
+
+        /** Changes waiting to be sent, by what changed, oldest first */
+        private final Map<String, Change> waiting      = new LinkedHashMap<String, Change>();
+
+        /** When the batch being written to the client was handed over; 0 if none is */
+        private final AtomicLong          sendingSince = new AtomicLong();
+
+        /**
+         * Creates a client.
+         *
+         * @param emitter
+         *            event stream to the client
+         */
+        Client ( final SseEmitter emitter ) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * Queues a change, replacing any waiting change to the same thing.
+         *
+         * @param change
+         *            the change
+         * @param capacity
+         *            most changes that may be waiting
+         * @return false if the buffer overflowed, and was replaced with a
+         *         `resync`
+         */
+        synchronized boolean offer ( final Change change, final int capacity ) {
+            final String key = change.getType() + ":" + change.getName();
+            waiting.remove( key );
+            waiting.put( key, change );
+            if ( waiting.size() <= capacity ) {
+                return true;
+            }
+            waiting.clear();
+            waiting.put( RESYNC.getType() + ":" + RESYNC.getName(), RESYNC );
+            return false;
+        }
+
+        /**
+         * Takes every change waiting to be sent.
+         *
+         * @return the changes, oldest first
+         */
+        synchronized List<Change> drain () {
+            final List<Change> changes = new ArrayList<Change>( waiting.values() );
+            waiting.clear();
+            return changes;
+        }
+    }
+
+    /**
+     * A change, as sent to the clients.
+     */
+    @JsonInclude ( JsonInclude.Include.NON_NULL )
+    public static final class Change {
+
+        /** What kind of thing changed; sent as the event name */
+        private final String  type;
+
+        /** Name of the ingredient or recipe */
+        private final String  name;
+
+        /** New amount of the ingredient; null for recipes */
+        private final Integer amount;
+
+        /** Whether the recipe was removed; null for ingredients */
+        private final Boolean removed;
+
+        /**
+         * Creates a change.
+         *
+         * @param type
+         *            what kind of thing changed
+         * @param name
+         *            name of the ingredient or recipe
+         * @param amount
+         *            new amount of the ingredient
+         * @param removed
+         *            whether the recipe was removed
+         */
+        Change ( final String type, final String name, final Integer amount, final Boolean removed ) {
+            this.type = type;
+            this.name = name;
+            this.amount = amount;
+            this.removed = removed;
+        }
+
+        /**
+         * Returns what kind of thing changed.
+         *
+         * @return `ingredient`, `recipe` or `resync`
+         */
+        String getType () {
+            return type;
+        }
+
+        /**
+         * Returns the name of the ingredient or recipe.
+         *
+         * @return the name
+         */
+        public String getName () {
+            return name;
+        }
+
+        /**
+         * Returns the new amount of the ingredient.
+         *
+         * @return the amount, null for recipes
+         */
+        public Integer getAmount () {
+            return amount;
+        }
+
+        /**
+         * Returns whether the recipe was removed.
+         *
+         * @return true if it was removed, null for ingredients
+         */
+        public Boolean getRemoved () {
+            return removed;
+        }
+    }
+
+}
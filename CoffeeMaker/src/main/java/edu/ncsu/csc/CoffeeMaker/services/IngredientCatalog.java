@@ -0,0 +1,113 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+
+/**
+ * Assigns every ingredient name seen by the CoffeeMaker a dense ordinal (0, 1,
+ * 2, ...), so that ingredient levels and recipe requirements can be kept in
+ * primitive arrays indexed by ordinal instead of being looked up by name.
+ * Ordinals are handed out on first use and never reused or reassigned.
+ */
+@Component
+public class IngredientCatalog {
+
+    /** Ordinal of each ingredient name */
+    private final ConcurrentHashMap<String, Integer> ordinals = new ConcurrentHashMap<String, Integer>();
+
+    /** Name of each ordinal; only ever appended to */
+    private volatile String[]                        names    = new String[0];
+
+    /**
+     * Returns the ordinal of the provided ingredient name, assigning the next
+     * free one if the name has not been seen before.
+     *
+     * @param name
+     *            name of the ingredient
+     * @return ordinal of the ingredient
+     */
+    public int ordinal ( final String name ) {
+        final Integer existing = ordinals.get( name );
+        if ( null != existing ) {
+            return existing;
+        }
+        synchronized ( this ) {
+            return ordinals.computeIfAbsent( name, n -> {
+                final String[] grown = Arrays.copyOf( names, names.length + 1 );
+                grown[names.length] = n;
+                names = grown;
+                return grown.length - 1;
+            } );
+        }
+    }
+
+    /**
+     * Returns the ordinal of the provided ingredient name, without assigning
+     * one.
+     *
+     * @param name
+     *            name of the ingredient
+     * @return ordinal of the ingredient, -1 if it has never been seen
+     */
+    public int find ( final String name ) {
+        final Integer existing = ordinals.get( name );
+        return null == existing ? -1 : existing;
+    }
+
+    /**
+     * Returns the ingredient name that was given the provided ordinal.
+     *
+     * @param ordinal
+     *            ordinal of the ingredient
+     * @return name of the ingredient
+     */
+    public String name ( final int ordinal ) {
+        return names[ordinal];
+    }
+
+    /**
+     * Returns the number of ordinals handed out so far; every ordinal is below
+     * this number.
+     *
+     * @return the number of ingredient names known
+     */
+    public int size () {
+        return names.length;
+    }
+
+    /**
+     * Compiles a recipe into the ordinals and amounts of the ingredients it
+     * needs. An ingredient listed more than once is merged into one entry.
+     *
+     * @param recipe
+     *            the recipe to compile
+     * @return the recipe's requirement vector
+     */
+    public RecipeVector compile ( final Recipe recipe ) {
+        final List<Ingredient> ingredients = recipe.getIngredients();
+        final int[] ords = new int[ingredients.size()];
+        final int[] amounts = new int[ingredients.size()];
+        int n = 0;
+        for ( int i = 0; i < ingredients.size(); i++ ) {
+            final Ingredient ing = ingredients.get( i );
+            final int ord = ordinal( ing.getName() );
+            int j = 0;
+            while ( j < n && ords[j] != ord ) {
+                j++;
+            }
+            if ( j == n ) {
+                ords[n] = ord;
+                n++;
+            }
+            amounts[j] += ing.getAmount();
+        }
+        return new RecipeVector( Arrays.copyOf( ords, n ), Arrays.copyOf( amounts, n ) );
+    }
+
+}
@@ -0,0 +1,247 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Striped locks over the ingredients in the Inventory, taken while a purchase
+ * writes its ingredients to the database. Each ingredient maps to one of a
+ * fixed number of locks by its ordinal in the IngredientCatalog, so purchases
+ * that share no ingredients (a latte and a hot chocolate) write in parallel,
+ * and only those that touch the same rows wait for each other. Locks are
+ * always taken in ascending stripe order, so two purchases can never each hold
+ * a lock the other needs.
+ *
+ * Locks are held until the transaction that took them completes, so several
+ * purchases made in one transaction add to the same set of locks. A stripe
+ * below one the thread already holds cannot be waited for without breaking
+ * the order; it is taken only if it is free, and otherwise the acquisition is
+ * refused with a `CannotAcquireLockException` so that the transaction rolls
+ * back and lets go of what it holds.
+ *
+ * How often each lock was found taken, and how long was spent waiting for it,
+ * is published as the `coffeemaker.inventory.lock.contended` and
+ * `coffeemaker.inventory.lock.wait` metrics, tagged with the stripe. Several
+ * ingredients can share a stripe, so the stripe is what was waited for.
+ */
+@Component
+public class IngredientLocks {
+
+    /** The locks; ingredient `n` is guarded by lock `n % locks.length` */
+    private final ReentrantLock[]     locks;
+
+    /** Used to find ingredients' stripes by name */
+    private final IngredientCatalog   catalog;
+
+    /** Registry the contention metrics are published to */
+    private final MeterRegistry       registry;
+
+    /** Stripes held by each thread, across all of the purchases it has made */
+    private final ThreadLocal<BitSet> owned = ThreadLocal.withInitial( BitSet::new );
+
+    /**
+     * Creates the locks.
+     *
+     * @param stripes
+     *            number of locks to spread the ingredients over
+     * @param catalog
+     *            catalog used to find ingredients' stripes by name
+     * @param registry
+     *            registry to publish the contention metrics to
+     */
+    @Autowired
+    public IngredientLocks ( @Value ( "${coffeemaker.inventory.lock-stripes:64}" ) final int stripes,
+            final IngredientCatalog catalog, final MeterRegistry registry ) {
+        this.locks = new ReentrantLock[Math.max( 1, stripes )];
+        for ( int i = 0; i < locks.length; i++ ) {
+            locks[i] = new ReentrantLock();
+        }
+        this.catalog = catalog;
+        this.registry = registry;
+    }
+
+    /**
+     * Takes the locks for every ingredient used by the recipes that were made,
+     * waiting for any that are held by another purchase.
+     *
+     * @param vectors
+     *            compiled recipes that were attempted
+     * @param made
+     *            which of the recipes were made
+     * @return the locks taken, to be released once the purchase is written
+     * @throws CannotAcquireLockException
+     *             if the thread already holds a later lock and one it needs
+     *             is taken by another thread
+     */
+    public Held lock ( final RecipeVector[] vectors, final boolean[] made ) {
+        final BitSet stripes = new BitSet( locks.length );
+        for ( int i = 0; i < made.length; i++ ) {
+            if ( !made[i] ) {
+                continue;
+            }
+            for ( int j = 0; j < vectors[i].size(); j++ ) {
+                stripes.set( vectors[i].ordinal( j ) % locks.length );
+            }
+        }
+
+        return lock( stripes );
+    }
+
+    /**
+     * Takes the locks for the provided ingredients, waiting for any that are
+     * held by another purchase. Used by other writes of the Inventory's levels
+     * so that they never take their rows in a different order than purchases.
+     * Names not yet in the IngredientCatalog are added to it for good, so only
+     * ingredients known to be in the Inventory should be passed.
+     *
+     * @param names
+     *            names of the ingredients
+     * @return the locks taken, to be released once the write is done
+     * @throws CannotAcquireLockException
+     *             if the thread already holds a later lock and one it needs
+     *             is taken by another thread
+     */
+    public Held lock ( final Collection<String> names ) {
+        final BitSet stripes = new BitSet( locks.length );
+        for ( final String name : names ) {
+            stripes.set( catalog.ordinal( name ) % locks.length );
+        }
+        return lock( stripes );
+    }
+
+    /**
+     * Takes the provided locks, in ascending order. Locks the thread already
+     * holds are taken again without waiting; new ones below the highest it
+     * holds are only taken if they are free.
+     *
+     * @param stripes
+     *            the stripes to lock
+     * @return the locks taken
+     * @throws CannotAcquireLockException
+     *             if a lock below one already held is taken by another thread;
+     *             whatever this call took is released again
+     */
+    private Held lock ( final BitSet stripes ) {
+        final BitSet mine = owned.get();
+        final int[] taken = new int[stripes.cardinality()];
+        int n = 0;
+        try {
+            for ( int stripe = stripes.nextSetBit( 0 ); stripe >= 0; stripe = stripes.nextSetBit( stripe + 1 ) ) {
+                if ( mine.get( stripe ) ) {
+                    locks[stripe].lock();
+                }
+                else if ( stripe < mine.length() ) {
+                    if ( !locks[stripe].tryLock() ) {
+                        throw new CannotAcquireLockException( "Ingredient lock " + stripe
+                                + " is taken, and cannot be waited for while holding a later one" );
+                    }
+                }
+                else {
+                    acquire( stripe );
+                }
+                mine.set( stripe );
+                taken[n++] = stripe;
+            }
+        }
+        catch ( final RuntimeException e ) {
+            unlock( taken, n );
+            throw e;
+        }
+        return new Held( taken );
+    }
+
+    /**
+     * Takes a single lock, recording whether it had to be waited for.
+     *
+     * @param stripe
+     *            the lock to take
+     */
+    private void acquire ( final int stripe ) {
+        final ReentrantLock lock = locks[stripe];
+        if ( lock.tryLock() ) {
+            return;
+        }
+        final String tag = String.valueOf( stripe );
+        registry.counter( "coffeemaker.inventory.lock.contended", "stripe", tag ).increment();
+        final long start = System.nanoTime();
+        lock.lock();
+        registry.timer( "coffeemaker.inventory.lock.wait", "stripe", tag ).record( System.nanoTime() - start,
+                TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Releases locks, in the reverse of the order they were taken, forgetting
+     * those the thread no longer holds at all.
+     *
+     * @param stripes
+     *            stripes locked, in the order they were taken
+     * @param count
+     *            how many of them to release
+     */
+    private void unlock ( final int[] stripes, final int count ) {
+        final BitSet mine = owned.get();
+        for ( int i = count - 1; i >= 0; i-- ) {
+            final ReentrantLock lock = locks[stripes[i]];
+            lock.unlock();
+            if ( !lock.isHeldByCurrentThread() ) {
+                mine.clear( stripes[i] );
+            }
+        }
+    }
+
+    /**
+     * The locks taken for a single purchase.
+     */
+    public final class Held {
+
+        /** Stripes locked, in the order they were taken */
+        private final int[] stripes;
+
+        /**
+         * Records the locks taken for a purchase.
+         *
+         * @param stripes
+         *            stripes locked, in the order they were taken
+         */
+        Held ( final int[] stripes ) {
+            this.stripes = stripes;
+        }
+
+        /**
+         * Releases the locks, in the reverse of the order they were taken.
+         */
+        public void release () {
+            unlock( stripes, stripes.length );
+        }
+
+        /**
+         * Releases the locks once the current transaction has committed or
+         * rolled back, as the rows they guard stay locked in the database until
+         * then. Outside of a transaction they are released straight away.
+         */
+        public void releaseAfterCompletion () {
+            if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+                release();
+                return;
+            }
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion ( final int status ) {
+                    release();
+                }
+            } );
+        }
+    }
+
+}
@@ -1,5 +1,11 @@
 package edu.ncsu.csc.CoffeeMaker.services;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,10 +14,14 @@ import org.springframework.stereotype.Component;
 
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.repositories.IngredientRepository;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * The IngredientService is used to handle CRUD operations on the Ingredient
- * model.
+ * model. As the Inventory is made up of Ingredients, any change made here also
+ * drops the `InventoryLedger`, both straight away and once the change has
+ * committed or rolled back. Changes to the amounts of the Inventory's own
+ * Ingredients are recorded in the `InventoryMovements` log as adjustments.
  *
  * @author Christian Andersen
  *
@@ -27,13 +37,36 @@ public class IngredientService extends Service<Ingredient, Long> {
     @Autowired
     private IngredientRepository ingredientRepository;
 
+    /**
+     * In-memory copy of the Inventory, which must be reloaded when an
+     * Ingredient changes.
+     */
+    @Autowired
+    private InventoryLedger      ledger;
+
+    /**
+     * Cache of recipes, whose Ingredients share this table.
+     */
+    @Autowired
+    private RecipeCache          recipeCache;
+
+    /** Versions of everything that includes Ingredients, for conditional GETs */
+    @Autowired
+    private ResourceVersions     versions;
+
+    /** Log of every change to the Inventory's ingredient levels */
+    @Autowired
+    private InventoryMovements   movements;
+
     @Override
     protected JpaRepository<Ingredient, Long> getRepository () {
         return ingredientRepository;
     }
 
     /**
-     * Find a ingredient with the provided name
+     * Find a ingredient with the provided name, ignoring case and surrounding
+     * whitespace. Only ingredients saved through this service are found, not
+     * those in recipes or the Inventory.
      *
      * @param name
      *            Name of the ingredient to find
@@ -43,4 +76,83 @@ public class IngredientService extends Service<Ingredient, Long> {
         return ingredientRepository.findByName( name );
     }
 
+    /**
+     * Returns every Ingredient. Read-only, so it is served by the read
+     * replica when one is configured.
+     *
+     * @return All Ingredients stored in the database
+     */
+    @Override
+    @org.springframework.transaction.annotation.Transactional ( readOnly = true )
+    public List<Ingredient> findAll () {
+        return super.findAll();
+    }
+
+    @Override
+    public void save ( final Ingredient obj ) {
+        obj.addToCatalog();
+        final Map<String, Integer> before = lockInventoryLevels( Collections.singletonList( obj ) );
+        super.save( obj );
+        movements.recordAdjustment( lockInventoryLevels( Collections.singletonList( obj ) ), before );
+        ledger.invalidateOnCompletion();
+        recipeCache.invalidateOnCompletion();
+        versions.changed( Resource.INGREDIENTS, Resource.INVENTORY, Resource.RECIPES );
+    }
+
+    @Override
+    public void saveAll ( final List<Ingredient> objects ) {
+        objects.forEach( Ingredient::addToCatalog );
+        final Map<String, Integer> before = lockInventoryLevels( objects );
+        super.saveAll( objects );
+        movements.recordAdjustment( lockInventoryLevels( objects ), before );
+        ledger.invalidateOnCompletion();
+        recipeCache.invalidateOnCompletion();
+        versions.changed( Resource.INGREDIENTS, Resource.INVENTORY, Resource.RECIPES );
+    }
+
+    @Override
+    public void delete ( final Ingredient obj ) {
+        final Map<String, Integer> before = lockInventoryLevels( Collections.singletonList( obj ) );
+        super.delete( obj );
+        movements.recordAdjustment( Collections.emptyMap(), before );
+        ledger.invalidateOnCompletion();
+        recipeCache.invalidateOnCompletion();
+        versions.changed( Resource.INGREDIENTS, Resource.INVENTORY, Resource.RECIPES );
+    }
+
+    @Override
+    public void deleteAll () {
+        final Map<String, Integer> before = lockInventoryLevels( ingredientRepository.findAll() );
+        super.deleteAll();
+        movements.recordAdjustment( Collections.emptyMap(), before );
+        ledger.invalidateOnCompletion();
+        recipeCache.invalidateOnCompletion();
+        versions.changed( Resource.INGREDIENTS, Resource.INVENTORY, Resource.RECIPES );
+    }
+
+    /**
+     * Returns the level of each of the provided Ingredients that belongs to the
+     * Inventory, as stored in the database, and locks them until the current
+     * transaction ends.
+     *
+     * @param ingredients
+     *            the Ingredients
+     * @return the levels of those in the Inventory, by name
+     */
+    private Map<String, Integer> lockInventoryLevels ( final List<Ingredient> ingredients ) {
+        final List<Long> ids = new ArrayList<Long>( ingredients.size() );
+        for ( final Ingredient ing : ingredients ) {
+            final long id = (Long) ing.getId();
+            if ( 0 != id ) {
+                ids.add( id );
+            }
+        }
+        final Map<String, Integer> stored = new HashMap<String, Integer>();
+        if ( !ids.isEmpty() ) {
+            ingredientRepository.findInventoryLevelsForUpdate( ids )
+                    .forEach( level -> stored.merge( level.getName(), level.getAmount(), Integer::sum ) );
+        }
+        return stored;
+    }
+
 }
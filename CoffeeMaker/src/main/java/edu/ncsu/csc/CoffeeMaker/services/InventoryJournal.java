@@ -0,0 +1,572 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.InventoryMovement;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.repositories.InventoryRepository;
+
+/**
+ * Write-behind journal for the ingredients used to make beverages. When
+ * enabled, a purchase costs a sequential append to a local file instead of a
+ * database write: entries are fsync'd to disk in batches every few
+ * milliseconds, and periodically coalesced into a single update of the
+ * Inventory. Each entry is numbered, and the Inventory records the number of
+ * the last entry applied to it, so entries that had not reached the database
+ * when the application stopped are replayed (exactly once) on startup.
+ *
+ * A purchase is only appended once the transaction making it has committed,
+ * so a purchase that is rolled back never reaches the journal. Until then its
+ * ingredients are still counted as used by `unflushedSince`, as the ledger has
+ * already taken them.
+ *
+ * Entries accepted in the last fsync interval before a crash can be lost. The
+ * journal assumes this is the only instance using the database; in any other
+ * deployment leave it disabled.
+ */
+@Component
+public class InventoryJournal {
+
+    /** Logger for problems writing the journal */
+    private static final Logger                LOGGER  = Logger.getLogger( InventoryJournal.class.getName() );
+
+    /** Used to serialize journal entries */
+    private static final Gson                  GSON    = new Gson();
+
+    /** Whether purchases go through the journal at all */
+    @Value ( "${coffeemaker.inventory.write-behind.enabled:false}" )
+    private boolean                            enabled;
+
+    /** File the journal is appended to */
+    @Value ( "${coffeemaker.inventory.write-behind.journal:inventory.journal}" )
+    private String                             journalFile;
+
+    /** How often the journal is fsync'd, in milliseconds */
+    @Value ( "${coffeemaker.inventory.write-behind.fsync-interval-ms:20}" )
+    private long                               fsyncInterval;
+
+    /** How often journal entries are written to the database, in milliseconds */
+    @Value ( "${coffeemaker.inventory.write-behind.flush-interval-ms:1000}" )
+    private long                               flushInterval;
+
+    /** Used to write coalesced entries to the database */
+    @Autowired
+    private InventoryRepository                inventoryRepository;
+
+    /** Used to run database writes in their own transaction */
+    @Autowired
+    private PlatformTransactionManager         transactionManager;
+
+    /** Log of ingredient movements, which batches are recorded in as they are applied */
+    @Autowired
+    private InventoryMovements                 movements;
+
+    /** Versions of the Inventory and Ingredients, bumped when a batch is applied */
+    @Autowired
+    private ResourceVersions                   versions;
+
+    /** Runs the fsync and database flush tasks */
+    private ScheduledExecutorService           scheduler;
+
+    /** Channel for the file currently being appended to */
+    private FileChannel                        channel;
+
+    /** Sequence number of the last entry appended */
+    private long                               sequence;
+
+    /** Ingredients used by purchases whose transaction has not finished */
+    private final List<Map<String, Integer>>   uncommitted = new ArrayList<Map<String, Integer>>();
+
+    /** Ingredients used by entries not yet handed to the database */
+    private Map<String, Integer>               pending = new HashMap<String, Integer>();
+
+    /** Batches handed to the database whose transaction has not finished */
+    private final Deque<Batch>                 inFlight = new ArrayDeque<Batch>();
+
+    /** Guards appends and the bookkeeping above */
+    private final Object                       lock    = new Object();
+
+    /**
+     * Checks whether purchases should be written to the journal rather than
+     * straight to the database.
+     *
+     * @return true if write-behind is enabled
+     */
+    public boolean isEnabled () {
+        return enabled;
+    }
+
+    /**
+     * Replays anything left in the journal from a previous run into the
+     * database, and starts the background tasks.
+     *
+     * @throws IOException
+     *             if the journal cannot be read or opened
+     */
+    @PostConstruct
+    public void start () throws IOException {
+        if ( !enabled ) {
+            return;
+        }
+        replay();
+        channel = open( Paths.get( journalFile ) );
+        scheduler = Executors.newSingleThreadScheduledExecutor( r -> {
+            final Thread t = new Thread( r, "inventory-journal" );
+            t.setDaemon( true );
+            return t;
+        } );
+        scheduler.scheduleWithFixedDelay( this::sync, fsyncInterval, fsyncInterval, TimeUnit.MILLISECONDS );
+        scheduler.scheduleWithFixedDelay( this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stops the background tasks, writing everything outstanding to disk and
+     * to the database.
+     *
+     * @throws IOException
+     *             if the journal cannot be closed
+     */
+    @PreDestroy
+    public void stop () throws IOException {
+        if ( !enabled ) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination( 10, TimeUnit.SECONDS );
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized ( lock ) {
+            channel.force( false );
+        }
+        flush();
+        synchronized ( lock ) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Appends an entry for the ingredients used by the recipes made. If called
+     * inside of a transaction, the entry is appended once that transaction
+     * has committed, and dropped should it roll back. The entry is in the
+     * operating system's buffers once it has been appended, and on disk within
+     * one fsync interval.
+     *
+     * @param recipes
+     *            recipes that were attempted
+     * @param made
+     *            which of the recipes were made
+     */
+    public void append ( final List<Recipe> recipes, final boolean[] made ) {
+        final Map<String, Integer> used = new HashMap<String, Integer>();
+        for ( int i = 0; i < made.length; i++ ) {
+            if ( made[i] ) {
+                for ( final Ingredient ing : recipes.get( i ).getIngredients() ) {
+                    used.merge( ing.getName(), ing.getAmount(), Integer::sum );
+                }
+            }
+        }
+        if ( used.isEmpty() ) {
+            return;
+        }
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            synchronized ( lock ) {
+                write( used );
+            }
+            return;
+        }
+        synchronized ( lock ) {
+            uncommitted.add( used );
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion ( final int status ) {
+                synchronized ( lock ) {
+                    uncommitted.remove( used );
+                    if ( TransactionSynchronization.STATUS_COMMITTED == status ) {
+                        write( used );
+                    }
+                }
+            }
+        } );
+    }
+
+    /**
+     * Writes an entry to the journal file and adds it to the entries waiting
+     * to be handed to the database. Must be called while holding the lock.
+     *
+     * @param used
+     *            ingredient amounts used, keyed by name
+     */
+    private void write ( final Map<String, Integer> used ) {
+        final Entry entry = new Entry( sequence + 1, used );
+        final byte[] line = ( GSON.toJson( entry ) + "\n" ).getBytes( StandardCharsets.UTF_8 );
+        try {
+            final ByteBuffer buf = ByteBuffer.wrap( line );
+            while ( buf.hasRemaining() ) {
+                channel.write( buf );
+            }
+        }
+        catch ( final IOException e ) {
+            // the purchase has committed; it still reaches the database with
+            // the next flush, but would be lost in a crash before then
+            LOGGER.log( Level.SEVERE, "Could not append entry " + entry.seq + " to the inventory journal", e );
+        }
+        sequence = entry.seq;
+        used.forEach( ( name, amount ) -> pending.merge( name, amount, Integer::sum ) );
+    }
+
+    /**
+     * Returns the ingredients used by journal entries that are not reflected
+     * in an Inventory read from the database, along with those used by
+     * purchases not yet committed, so that they can be taken off of it.
+     *
+     * @param journalSequence
+     *            the journal sequence number recorded on that Inventory
+     * @return ingredient amounts still to be taken off, keyed by name
+     */
+    public Map<String, Integer> unflushedSince ( final long journalSequence ) {
+        if ( !enabled ) {
+            return Collections.emptyMap();
+        }
+        synchronized ( lock ) {
+            final Map<String, Integer> unflushed = new HashMap<String, Integer>( pending );
+            for ( final Map<String, Integer> used : uncommitted ) {
+                used.forEach( ( name, amount ) -> unflushed.merge( name, amount, Integer::sum ) );
+            }
+            for ( final Batch batch : inFlight ) {
+                if ( batch.lastSequence > journalSequence ) {
+                    batch.used.forEach( ( name, amount ) -> unflushed.merge( name, amount, Integer::sum ) );
+                }
+            }
+            return unflushed;
+        }
+    }
+
+    /**
+     * Writes all entries appended so far to the database as a single update of
+     * the Inventory, then removes journal segments that are no longer needed.
+     */
+    public void flush () {
+        final Batch batch;
+        final Path segment;
+        synchronized ( lock ) {
+            if ( pending.isEmpty() ) {
+                return;
+            }
+            batch = new Batch( sequence, pending );
+            pending = new HashMap<String, Integer>();
+            inFlight.addLast( batch );
+            segment = rotate( batch.lastSequence );
+        }
+
+        boolean applied = false;
+        try {
+            apply( batch.used, batch.lastSequence );
+            applied = true;
+        }
+        finally {
+            synchronized ( lock ) {
+                inFlight.remove( batch );
+                if ( !applied ) {
+                    // try again with the next flush
+                    batch.used.forEach( ( name, amount ) -> pending.merge( name, amount, Integer::sum ) );
+                }
+            }
+        }
+        if ( null != segment ) {
+            try {
+                Files.deleteIfExists( segment );
+            }
+            catch ( final IOException e ) {
+                LOGGER.log( Level.WARNING, "Could not remove inventory journal segment " + segment, e );
+            }
+        }
+    }
+
+    /**
+     * Runs `flush()` from the background task, where an exception would stop
+     * any further flushes from being scheduled.
+     */
+    private void flushQuietly () {
+        try {
+            flush();
+        }
+        catch ( final RuntimeException e ) {
+            LOGGER.log( Level.WARNING, "Could not write the inventory journal to the database", e );
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk.
+     */
+    private void sync () {
+        final FileChannel current;
+        synchronized ( lock ) {
+            current = channel;
+        }
+        try {
+            current.force( false );
+        }
+        catch ( final ClosedChannelException e ) {
+            // rotated away; rotate() forces the file before closing it
+        }
+        catch ( final IOException e ) {
+            LOGGER.log( Level.WARNING, "Could not fsync the inventory journal", e );
+        }
+    }
+
+    /**
+     * Moves the journal file aside as a segment holding entries up to the
+     * provided sequence number, and starts a new journal file. Must be called
+     * while holding the lock.
+     *
+     * @param lastSequence
+     *            sequence number of the last entry in the file
+     * @return the segment, or null if the journal could not be rotated (in
+     *         which case it is kept as-is; replay skips entries that have
+     *         already been applied)
+     */
+    private Path rotate ( final long lastSequence ) {
+        final Path current = Paths.get( journalFile );
+        final Path segment = Paths.get( journalFile + "." + lastSequence );
+        try {
+            channel.force( false );
+            channel.close();
+            Files.move( current, segment );
+        }
+        catch ( final IOException e ) {
+            LOGGER.log( Level.WARNING, "Could not rotate the inventory journal", e );
+            return null;
+        }
+        finally {
+            try {
+                channel = open( current );
+            }
+            catch ( final IOException e ) {
+                throw new UncheckedIOException( "Could not reopen the inventory journal", e );
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Takes the provided ingredient amounts off of the Inventory stored in the
+     * database, records the sequence number of the last journal entry
+     * included, and logs the amounts taken off as brew movements, all in one
+     * transaction. A level never goes below zero; any amount that could not be
+     * taken off (as the Inventory was changed underneath the journal) is
+     * logged.
+     *
+     * @param used
+     *            ingredient amounts to take off, keyed by name
+     * @param lastSequence
+     *            sequence number of the last journal entry included
+     */
+    private void apply ( final Map<String, Integer> used, final long lastSequence ) {
+        new TransactionTemplate( transactionManager ).executeWithoutResult( status -> {
+            final List<Inventory> inventoryList = inventoryRepository.findAllForUpdate();
+            if ( inventoryList.size() != 1 ) {
+                throw new IllegalStateException( "Inventory has not been created" );
+            }
+            final Inventory inventory = inventoryList.get( 0 );
+            if ( inventory.getJournalSequence() >= lastSequence ) {
+                return;
+            }
+            final Map<String, Integer> brewed = new HashMap<String, Integer>();
+            used.forEach( ( name, amount ) -> {
+                final Ingredient ing = inventory.findIngredientByName( name );
+                if ( null == ing ) {
+                    LOGGER.warning( "Inventory journal used " + amount + " of " + name
+                            + ", which is no longer in the Inventory" );
+                    return;
+                }
+                final int level = Math.max( 0, ing.getAmount() - amount );
+                if ( level > ing.getAmount() - amount ) {
+                    LOGGER.warning( "Inventory journal used " + amount + " of " + name + " but only "
+                            + ing.getAmount() + " was left; the other " + ( amount - ing.getAmount() )
+                            + " could not be taken off" );
+                }
+                brewed.put( name, level - ing.getAmount() );
+                ing.setAmount( level );
+            } );
+            inventory.setJournalSequence( lastSequence );
+            inventoryRepository.saveAndFlush( inventory );
+            movements.record( InventoryMovement.Kind.BREW, brewed );
+            versions.changed( ResourceVersions.Resource.INVENTORY, ResourceVersions.Resource.INGREDIENTS );
+        } );
+    }
+
+    /**
+     * Applies every journal entry that did not make it to the database before
+     * the application last stopped, then removes the old journal files.
+     *
+     * @throws IOException
+     *             if the journal cannot be read
+     */
+    private void replay () throws IOException {
+        final Path current = Paths.get( journalFile );
+        final Path dir = null == current.toAbsolutePath().getParent() ? Paths.get( "." )
+                : current.toAbsolutePath().getParent();
+        // the journal file itself, and the segments rotate() moves it to
+        final Pattern journalFiles = Pattern
+                .compile( Pattern.quote( current.getFileName().toString() ) + "(\\.\\d+)?" );
+
+        final List<Path> files = new ArrayList<Path>();
+        if ( Files.isDirectory( dir ) ) {
+            try ( Stream<Path> list = Files.list( dir ) ) {
+                list.filter( p -> journalFiles.matcher( p.getFileName().toString() ).matches() )
+                        .forEach( files::add );
+            }
+        }
+
+        final List<Inventory> inventoryList = inventoryRepository.findAll();
+        final long applied = inventoryList.size() == 1 ? inventoryList.get( 0 ).getJournalSequence() : 0;
+        final Map<String, Integer> used = new HashMap<String, Integer>();
+        long last = applied;
+        for ( final Path file : files ) {
+            try ( BufferedReader reader = Files.newBufferedReader( file, StandardCharsets.UTF_8 ) ) {
+                String line;
+                while ( null != ( line = reader.readLine() ) ) {
+                    final Entry entry;
+                    try {
+                        entry = GSON.fromJson( line, Entry.class );
+                    }
+                    catch ( final JsonParseException e ) {
+                        // a partial write from a crash; nothing after it was
+                        // acknowledged as durable
+                        break;
+                    }
+                    if ( null == entry || entry.seq <= applied ) {
+                        continue;
+                    }
+                    entry.used.forEach( ( name, amount ) -> used.merge( name, amount, Integer::sum ) );
+                    last = Math.max( last, entry.seq );
+                }
+            }
+        }
+
+        if ( !used.isEmpty() ) {
+            LOGGER.info( "Replaying inventory journal up to entry " + last );
+            apply( used, last );
+        }
+        sequence = last;
+        for ( final Path file : files ) {
+            Files.deleteIfExists( file );
+        }
+    }
+
+    /**
+     * Opens a journal file for appending, creating it if needed.
+     *
+     * @param file
+     *            the file to open
+     * @return channel positioned at the end of the file
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    private static FileChannel open ( final Path file ) throws IOException {
+        final File parent = file.toAbsolutePath().getParent().toFile();
+        if ( !parent.exists() && !parent.mkdirs() ) {
+            throw new IOException( "Could not create directory " + parent );
+        }
+        return FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND );
+    }
+
+    /**
+     * A single line of the journal: the ingredients used by one purchase (or
+     * one batch of purchases).
+     */
+    private static class Entry {
+
+        /** Sequence number of the entry */
+        long                 seq;
+
+        /** Ingredient amounts used, keyed by name */
+        Map<String, Integer> used;
+
+        /**
+         * Creates a journal entry.
+         *
+         * @param seq
+         *            Sequence number of the entry
+         * @param used
+         *            Ingredient amounts used, keyed by name
+         */
+        Entry ( final long seq, final Map<String, Integer> used ) {
+            this.seq = seq;
+            this.used = used;
+        }
+    }
+
+    /**
+     * Entries that have been coalesced and handed to the database.
+     */
+    private static class Batch {
+
+        /** Sequence number of the last entry included */
+        final long                 lastSequence;
+
+        /** Total ingredient amounts used, keyed by name */
+        final Map<String, Integer> used;
+
+        /**
+         * Creates a batch.
+         *
+         * @param lastSequence
+         *            Sequence number of the last entry included
+         * @param used
+         *            Total ingredient amounts used, keyed by name
+         */
+        Batch ( final long lastSequence, final Map<String, Integer> used ) {
+            this.lastSequence = lastSequence;
+            this.used = used;
+        }
+    }
+
+}
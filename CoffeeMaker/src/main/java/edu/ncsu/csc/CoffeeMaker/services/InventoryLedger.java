@@ -0,0 +1,373 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+
+/**
+ * In-memory ledger of the ingredient levels in the CoffeeMaker's Inventory.
+ * Each ingredient has its own counter which is claimed with compare-and-set,
+ * so deciding whether a beverage can be made (and taking the ingredients for
+ * it) never waits on a shared monitor and never takes an ingredient below
+ * zero. Counters are kept in an array indexed by the ingredient's ordinal in
+ * the IngredientCatalog, and recipes are compiled into RecipeVectors, so a
+ * purchase involves no string comparisons and no boxing.
+ *
+ * The ledger is a cache of the Inventory stored in the database. The
+ * InventoryService loads it lazily and drops it whenever the Inventory is
+ * changed through some other path, or when a transaction that loaded it or
+ * wrote its changes is rolled back.
+ *
+ * Every change to the levels, including loading and dropping the ledger, is
+ * counted, so that readers can tell whether anything has moved without
+ * copying the levels. The count is a LongAdder, so purchases bumping it do not
+ * contend on a single counter.
+ */
+@Component
+public class InventoryLedger {
+
+    /** Marks an ingredient that is not in the Inventory at all */
+    private static final int            ABSENT     = -1;
+
+    /** Assigns each ingredient name its ordinal */
+    private final IngredientCatalog     catalog;
+
+    /**
+     * Current ingredient levels, indexed by ordinal (ABSENT for ingredients
+     * not in the Inventory); null if unloaded
+     */
+    private volatile AtomicIntegerArray levels;
+
+    /**
+     * Database ID of each ingredient in the Inventory, indexed by ordinal (-1
+     * for ingredients not in the Inventory)
+     */
+    private volatile long[]             ids        = new long[0];
+
+    /** Number of changes made to the levels */
+    private final LongAdder             changes    = new LongAdder();
+
+    /** Number of times the ledger has been dropped */
+    private final AtomicLong            generation = new AtomicLong();
+
+    /**
+     * Creates an (unloaded) ledger.
+     *
+     * @param catalog
+     *            catalog used to assign ingredient ordinals
+     */
+    @Autowired
+    public InventoryLedger ( final IngredientCatalog catalog ) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Checks whether the ledger currently holds a copy of the Inventory.
+     *
+     * @return true if the ledger has been loaded
+     */
+    public boolean isLoaded () {
+        return null != levels;
+    }
+
+    /**
+     * Returns the number of times the ledger has been dropped, to be passed to
+     * `load()` along with an Inventory read after calling this.
+     *
+     * @return the generation
+     */
+    public long generation () {
+        return generation.get();
+    }
+
+    /**
+     * Loads the ledger from the provided Inventory, unless another thread has
+     * already done so. The Inventory must have been read just now.
+     *
+     * @param inventory
+     *            the Inventory to copy ingredient levels from
+     */
+    public void load ( final Inventory inventory ) {
+        load( inventory, Collections.emptyMap(), generation() );
+    }
+
+    /**
+     * Loads the ledger from the provided Inventory, unless another thread has
+     * already done so, taking off amounts that have been used but are not yet
+     * reflected in the Inventory. Nothing is loaded if the ledger has been
+     * dropped since the Inventory was read, as the change that dropped it may
+     * have committed after the read; the caller should read it again.
+     *
+     * @param inventory
+     *            the Inventory to copy ingredient levels from
+     * @param outstanding
+     *            ingredient amounts to take off, keyed by name
+     * @param readGeneration
+     *            the generation before the Inventory was read
+     */
+    public synchronized void load ( final Inventory inventory, final Map<String, Integer> outstanding,
+            final long readGeneration ) {
+        if ( null != levels || readGeneration != generation.get() ) {
+            return;
+        }
+        for ( final Ingredient ing : inventory.getIngInventory() ) {
+            catalog.ordinal( ing.getName() );
+        }
+        final int[] loaded = new int[catalog.size()];
+        final long[] loadedIds = new long[catalog.size()];
+        Arrays.fill( loaded, ABSENT );
+        Arrays.fill( loadedIds, ABSENT );
+        for ( final Ingredient ing : inventory.getIngInventory() ) {
+            final int ord = catalog.find( ing.getName() );
+            if ( ABSENT == loaded[ord] ) {
+                loaded[ord] = Math.max( 0, ing.getAmount() - outstanding.getOrDefault( ing.getName(), 0 ) );
+                loadedIds[ord] = null == ing.getId() ? ABSENT : ( (Number) ing.getId() ).longValue();
+            }
+        }
+        ids = loadedIds;
+        levels = new AtomicIntegerArray( loaded );
+        changes.increment();
+        if ( readGeneration != generation.get() ) {
+            // dropped while being published; the drop may have missed it
+            levels = null;
+            return;
+        }
+        invalidateOnRollback();
+    }
+
+    /**
+     * Drops the ledger, forcing it to be loaded again from the database the
+     * next time it is needed. A load that read the database before this is
+     * not published, or is withdrawn.
+     */
+    public void invalidate () {
+        generation.incrementAndGet();
+        levels = null;
+        changes.increment();
+    }
+
+    /**
+     * Returns the number of changes made to the levels so far. Read it before
+     * the levels: if it is the same the next time, they have not moved since.
+     *
+     * @return the number of changes
+     */
+    public long version () {
+        return changes.sum();
+    }
+
+    /**
+     * Atomically checks that there are enough ingredients to make the provided
+     * recipe and, if there are, removes them from the ledger. Either all of the
+     * recipe's ingredients are taken or none are. An ingredient that is not in
+     * the Inventory at all counts as not enough.
+     *
+     * @param recipe
+     *            recipe to make
+     * @return true if the ingredients were taken, false if there were not
+     *         enough
+     * @throws IllegalStateException
+     *             if the ledger has not been loaded
+     */
+    public boolean tryConsume ( final Recipe recipe ) {
+        return tryConsume( catalog.compile( recipe ) );
+    }
+
+    /**
+     * Atomically checks that there are enough ingredients to make the provided
+     * compiled recipe and, if there are, removes them from the ledger. Either
+     * all of the recipe's ingredients are taken or none are.
+     *
+     * @param recipe
+     *            compiled recipe to make
+     * @return true if the ingredients were taken, false if there were not
+     *         enough
+     * @throws IllegalStateException
+     *             if the ledger has not been loaded
+     */
+    public boolean tryConsume ( final RecipeVector recipe ) {
+        final AtomicIntegerArray current = levels;
+        if ( null == current ) {
+            throw new IllegalStateException( "Inventory ledger has not been loaded" );
+        }
+        final int n = recipe.size();
+        for ( int i = 0; i < n; i++ ) {
+            if ( !claim( current, recipe.ordinal( i ), recipe.amount( i ) ) ) {
+                // put back everything claimed so far
+                for ( int j = 0; j < i; j++ ) {
+                    current.addAndGet( recipe.ordinal( j ), recipe.amount( j ) );
+                }
+                if ( i > 0 ) {
+                    // the levels were briefly lower, and may have been read
+                    changes.increment();
+                }
+                return false;
+            }
+        }
+        changes.increment();
+        return true;
+    }
+
+    /**
+     * Returns the ingredients taken by a successful `tryConsume()` to the
+     * ledger. Used when the purchase could not be completed afterwards.
+     *
+     * @param recipe
+     *            recipe whose ingredients should be returned
+     */
+    public void release ( final Recipe recipe ) {
+        release( catalog.compile( recipe ) );
+    }
+
+    /**
+     * Returns the ingredients taken by a successful `tryConsume()` to the
+     * ledger. Used when the purchase could not be completed afterwards.
+     *
+     * @param recipe
+     *            compiled recipe whose ingredients should be returned
+     */
+    public void release ( final RecipeVector recipe ) {
+        final AtomicIntegerArray current = levels;
+        if ( null == current ) {
+            return;
+        }
+        for ( int i = 0; i < recipe.size(); i++ ) {
+            final int ord = recipe.ordinal( i );
+            if ( ord < current.length() && ABSENT != current.get( ord ) ) {
+                current.addAndGet( ord, recipe.amount( i ) );
+            }
+        }
+        changes.increment();
+    }
+
+    /**
+     * Returns the amount of an ingredient currently held by the ledger.
+     *
+     * @param name
+     *            name of the ingredient
+     * @return the amount, or null if the ledger is not loaded or has no such
+     *         ingredient
+     */
+    public Integer getAmount ( final String name ) {
+        final AtomicIntegerArray current = levels;
+        final int ord = catalog.find( name );
+        if ( null == current || ord < 0 || ord >= current.length() || ABSENT == current.get( ord ) ) {
+            return null;
+        }
+        return current.get( ord );
+    }
+
+    /**
+     * Returns the current level of every ingredient.
+     *
+     * @return a copy of the levels, indexed by ordinal; -1 for ingredients not
+     *         in the Inventory
+     * @throws IllegalStateException
+     *             if the ledger has not been loaded
+     */
+    public int[] levels () {
+        final AtomicIntegerArray current = levels;
+        if ( null == current ) {
+            throw new IllegalStateException( "Inventory ledger has not been loaded" );
+        }
+        final int[] copy = new int[current.length()];
+        for ( int i = 0; i < copy.length; i++ ) {
+            copy[i] = current.get( i );
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the database ID of the Inventory's Ingredient with the provided
+     * ordinal, as of when the ledger was last loaded.
+     *
+     * @param ordinal
+     *            ordinal of the ingredient
+     * @return ID of the Ingredient, -1 if the Inventory did not have it
+     */
+    public long ingredientId ( final int ordinal ) {
+        final long[] current = ids;
+        return ordinal < current.length ? current[ordinal] : ABSENT;
+    }
+
+    /**
+     * Takes the provided amount from an ingredient counter if, and only if,
+     * there is enough of it. Ingredients the ledger does not hold are never
+     * enough.
+     *
+     * @param current
+     *            the ingredient counters
+     * @param ord
+     *            ordinal of the ingredient
+     * @param amount
+     *            amount to take
+     * @return true if the amount was taken
+     */
+    private static boolean claim ( final AtomicIntegerArray current, final int ord, final int amount ) {
+        if ( ord >= current.length() ) {
+            return false;
+        }
+        while ( true ) {
+            final int have = current.get( ord );
+            if ( ABSENT == have || have < amount ) {
+                return false;
+            }
+            if ( current.compareAndSet( ord, have, have - amount ) ) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drops the ledger now and, if called inside of a transaction, again once
+     * it has committed or rolled back, so that a copy loaded while the change
+     * was in flight does not survive it. Called when the Inventory is changed
+     * in the database without going through the ledger.
+     */
+    public void invalidateOnCompletion () {
+        invalidate();
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion ( final int status ) {
+                invalidate();
+            }
+        } );
+    }
+
+    /**
+     * If called inside of a transaction, arranges for the ledger to be dropped
+     * should that transaction not commit, as the ledger may then hold changes
+     * that never made it to the database. Called once a change to the ledger
+     * has been written as part of the current transaction.
+     */
+    public void invalidateOnRollback () {
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion ( final int status ) {
+                if ( TransactionSynchronization.STATUS_COMMITTED != status ) {
+                    invalidate();
+                }
+            }
+        } );
+    }
+
+}
@@ -0,0 +1,251 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.InventoryMovement;
+import edu.ncsu.csc.CoffeeMaker.models.InventoryMovement.Kind;
+import edu.ncsu.csc.CoffeeMaker.models.InventorySnapshot;
+import edu.ncsu.csc.CoffeeMaker.repositories.IngredientRepository;
+import edu.ncsu.csc.CoffeeMaker.repositories.InventoryMovementRepository;
+import edu.ncsu.csc.CoffeeMaker.repositories.InventorySnapshotRepository;
+
+/**
+ * Append-only log of every change to the levels of the Inventory's
+ * ingredients, and the projection of the current levels built from it. The
+ * services record a movement for each ingredient they change, in the same
+ * transaction and while holding the lock on its row, so movements of an
+ * ingredient are numbered in the order they were committed.
+ *
+ * Every `coffeemaker.inventory.snapshots.interval-ms` the levels are rolled up
+ * into an InventorySnapshot: the previous snapshot plus every movement since.
+ * On startup the projection is loaded from a fresh snapshot, and from then on
+ * each movement is added to it once its transaction commits, so reading the
+ * levels never touches the database. The first snapshot ever taken starts
+ * from the levels in the Inventory. Like the InventoryJournal, the projection
+ * assumes this is the only instance writing to the database.
+ *
+ * The log is kept alongside the amount column of each Ingredient, not instead
+ * of it: a purchase still takes its ingredients off with a conditional UPDATE,
+ * which is what stops a level going below zero and what the InventoryLedger
+ * is checked against. Recording the movements therefore adds an INSERT per
+ * ingredient to every purchase written straight to the database (batched by
+ * Hibernate, but still more work than before). With the write-behind journal
+ * enabled, purchases only append to the journal, and the movements are written
+ * in bulk when it is flushed. The projection is only read by
+ * `GET /api/v1/inventory/levels`.
+ */
+@Component
+public class InventoryMovements {
+
+    /** Logger for snapshots that could not be taken */
+    private static final Logger         LOGGER      = Logger.getLogger( InventoryMovements.class.getName() );
+
+    /** Most movements returned by one call to `history()` */
+    public static final int             MAX_HISTORY = 1000;
+
+    /** Used to append movements and read them back */
+    @Autowired
+    private InventoryMovementRepository movementRepository;
+
+    /** Used to save and find snapshots */
+    @Autowired
+    private InventorySnapshotRepository snapshotRepository;
+
+    /** Used to lock the Inventory's ingredients while a snapshot is taken */
+    @Autowired
+    private IngredientRepository        ingredientRepository;
+
+    /** Used to take each snapshot in a transaction */
+    @Autowired
+    private PlatformTransactionManager  transactionManager;
+
+    /** How often a snapshot is taken, in milliseconds */
+    @Value ( "${coffeemaker.inventory.snapshots.interval-ms:60000}" )
+    private long                        snapshotInterval;
+
+    /** Current level of each ingredient, by name */
+    private final Map<String, Integer>  levels      = new ConcurrentHashMap<String, Integer>();
+
+    /** Takes the periodic snapshots */
+    private ScheduledExecutorService    scheduler;
+
+    /**
+     * Loads the projection from a fresh snapshot, and starts taking snapshots.
+     */
+    @PostConstruct
+    public void start () {
+        levels.putAll( snapshot().getLevels() );
+        scheduler = Executors.newSingleThreadScheduledExecutor( r -> {
+            final Thread t = new Thread( r, "inventory-snapshots" );
+            t.setDaemon( true );
+            return t;
+        } );
+        scheduler.scheduleWithFixedDelay( this::snapshotQuietly, snapshotInterval, snapshotInterval,
+                TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stops taking snapshots.
+     */
+    @PreDestroy
+    public void stop () {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Records changes to the levels of some ingredients, one movement per
+     * ingredient that changed. Must be called inside of a transaction, once the
+     * rows of the ingredients have been written or locked; the projection sees
+     * the changes once it commits.
+     *
+     * @param kind
+     *            what caused the changes
+     * @param deltas
+     *            change to each ingredient's level, by name
+     */
+    public void record ( final Kind kind, final Map<String, Integer> deltas ) {
+        final List<InventoryMovement> movements = new ArrayList<InventoryMovement>( deltas.size() );
+        deltas.forEach( ( name, delta ) -> {
+            if ( 0 != delta ) {
+                movements.add( new InventoryMovement( kind, name, delta ) );
+            }
+        } );
+        if ( movements.isEmpty() ) {
+            return;
+        }
+        movementRepository.saveAll( movements );
+        afterCommit( () -> movements
+                .forEach( movement -> levels.merge( movement.getIngredient(), movement.getDelta(), Integer::sum ) ) );
+    }
+
+    /**
+     * Records the ADJUSTMENT movements that take the levels of some
+     * ingredients from one set of levels to another. Must be called inside of
+     * a transaction, once the rows of the ingredients have been locked.
+     *
+     * @param after
+     *            the new levels, by name
+     * @param before
+     *            the old levels, by name; missing ingredients are taken as 0
+     */
+    public void recordAdjustment ( final Map<String, Integer> after, final Map<String, Integer> before ) {
+        final Map<String, Integer> difference = new HashMap<String, Integer>( after );
+        before.forEach( ( name, amount ) -> difference.merge( name, -amount, Integer::sum ) );
+        record( Kind.ADJUSTMENT, difference );
+    }
+
+    /**
+     * Returns the current level of every ingredient that has ever been in the
+     * Inventory, as of the last committed movement.
+     *
+     * @return the levels, by name
+     */
+    public SortedMap<String, Integer> levels () {
+        return new TreeMap<String, Integer>( levels );
+    }
+
+    /**
+     * Returns the movements after the provided one, oldest first.
+     *
+     * @param after
+     *            id of the last movement already seen; 0 for the first
+     * @param limit
+     *            most movements to return, at most `MAX_HISTORY`
+     * @return the movements
+     * @throws IllegalArgumentException
+     *             if the limit is out of range
+     */
+    public List<InventoryMovement> history ( final long after, final int limit ) {
+        if ( limit < 1 || limit > MAX_HISTORY ) {
+            throw new IllegalArgumentException( "limit must be between 1 and " + MAX_HISTORY );
+        }
+        return movementRepository.findByIdGreaterThanOrderByIdAsc( after, PageRequest.of( 0, limit ) );
+    }
+
+    /**
+     * Takes a snapshot of the levels, unless nothing has moved since the last
+     * one. The Inventory's ingredients are locked while it is taken, so every
+     * movement with a smaller id than the last one included has committed.
+     *
+     * @return the snapshot taken, or the last one if nothing had moved
+     */
+    public InventorySnapshot snapshot () {
+        return new TransactionTemplate( transactionManager ).execute( status -> {
+            final List<Ingredient> locked = ingredientRepository.findInventoryIngredientsForUpdate();
+            final long last = movementRepository.findLastId();
+            final InventorySnapshot previous = snapshotRepository.findFirstByOrderByLastMovementDesc();
+            final Map<String, Integer> snapshot = new HashMap<String, Integer>();
+            if ( null == previous ) {
+                // nothing to start from, so the Inventory is the opening balance
+                locked.forEach( ing -> snapshot.put( ing.getName(), ing.getAmount() ) );
+            }
+            else if ( previous.getLastMovement() == last ) {
+                return previous;
+            }
+            else {
+                snapshot.putAll( previous.getLevels() );
+                movementRepository.totalBetween( previous.getLastMovement(), last ).forEach(
+                        total -> snapshot.merge( total.getIngredient(), total.getTotal().intValue(), Integer::sum ) );
+            }
+            return snapshotRepository.save( new InventorySnapshot( last, snapshot ) );
+        } );
+    }
+
+    /**
+     * Runs `snapshot()` from the background task, where an exception would
+     * stop any further snapshots from being scheduled.
+     */
+    private void snapshotQuietly () {
+        try {
+            snapshot();
+        }
+        catch ( final RuntimeException e ) {
+            LOGGER.log( Level.WARNING, "Could not take a snapshot of the inventory", e );
+        }
+    }
+
+    /**
+     * Runs an action once the current transaction commits, or straight away
+     * if there is none.
+     *
+     * @param action
+     *            the action
+     */
+    private void afterCommit ( final Runnable action ) {
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit () {
+                action.run();
+            }
+        } );
+    }
+
+}
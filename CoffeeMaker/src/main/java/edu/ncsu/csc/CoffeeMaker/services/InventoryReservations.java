@@ -0,0 +1,258 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * In-memory table of ingredients held for orders that have been placed but not
+ * yet brewed. A hold claims its recipe's ingredients from the InventoryLedger
+ * straight away, so nobody else can buy them, but nothing is written to the
+ * database until the hold is committed. Holds that are neither committed nor
+ * cancelled before they expire are swept away and their ingredients handed
+ * back.
+ *
+ * The number of open holds is published as the `coffeemaker.reservations.open`
+ * gauge.
+ */
+@Component
+public class InventoryReservations {
+
+    /** Ledger the held ingredients are claimed from */
+    @Autowired
+    private InventoryLedger                ledger;
+
+    /** Used to translate held ingredients back to names */
+    @Autowired
+    private IngredientCatalog              catalog;
+
+    /** Registry the open hold count is published to */
+    @Autowired
+    private MeterRegistry                  registry;
+
+    /** How often expired holds are swept, in milliseconds */
+    @Value ( "${coffeemaker.reservations.sweep-interval-ms:1000}" )
+    private long                           sweepInterval;
+
+    /** Open holds, keyed by ID */
+    private final Map<String, Hold>        holds = new ConcurrentHashMap<String, Hold>();
+
+    /** Runs the expiry sweep */
+    private ScheduledExecutorService       sweeper;
+
+    /**
+     * Starts sweeping expired holds.
+     */
+    @PostConstruct
+    public void start () {
+        registry.gaugeMapSize( "coffeemaker.reservations.open", Tags.empty(), holds );
+        sweeper = Executors.newSingleThreadScheduledExecutor( r -> {
+            final Thread t = new Thread( r, "reservation-sweeper" );
+            t.setDaemon( true );
+            return t;
+        } );
+        sweeper.scheduleWithFixedDelay( this::sweep, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stops sweeping expired holds.
+     */
+    @PreDestroy
+    public void stop () {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Records a hold on a recipe's ingredients, which the caller must already
+     * have claimed from the ledger.
+     *
+     * @param recipe
+     *            the recipe the hold is for
+     * @param vector
+     *            the recipe, compiled
+     * @param ttl
+     *            how long the hold lasts, in milliseconds
+     * @return the new hold
+     */
+    public Hold add ( final Recipe recipe, final RecipeVector vector, final long ttl ) {
+        final Hold hold = new Hold( UUID.randomUUID().toString(), recipe, vector,
+                System.currentTimeMillis() + ttl );
+        holds.put( hold.getId(), hold );
+        return hold;
+    }
+
+    /**
+     * Removes an open hold so that it can be committed. If committing fails,
+     * the hold should be handed back with `restore()`.
+     *
+     * @param id
+     *            ID of the hold
+     * @return the hold, or null if there is no open hold with that ID
+     */
+    public Hold take ( final String id ) {
+        final Hold hold = holds.remove( id );
+        if ( null != hold && hold.isExpired( System.currentTimeMillis() ) ) {
+            ledger.release( hold.getVector() );
+            return null;
+        }
+        return hold;
+    }
+
+    /**
+     * Puts back a hold that was taken but could not be committed.
+     *
+     * @param hold
+     *            the hold to put back
+     */
+    public void restore ( final Hold hold ) {
+        holds.put( hold.getId(), hold );
+    }
+
+    /**
+     * Cancels an open hold, handing its ingredients back.
+     *
+     * @param id
+     *            ID of the hold
+     * @return true if there was an open hold with that ID
+     */
+    public boolean cancel ( final String id ) {
+        final Hold hold = holds.remove( id );
+        if ( null == hold ) {
+            return false;
+        }
+        ledger.release( hold.getVector() );
+        return true;
+    }
+
+    /**
+     * Returns the total amount of each ingredient held by open holds, so that
+     * it can be taken off of the Inventory when the ledger is loaded.
+     *
+     * @return held amounts, keyed by ingredient name
+     */
+    public Map<String, Integer> held () {
+        final Map<String, Integer> held = new HashMap<String, Integer>();
+        for ( final Hold hold : holds.values() ) {
+            final RecipeVector vector = hold.getVector();
+            for ( int i = 0; i < vector.size(); i++ ) {
+                held.merge( catalog.name( vector.ordinal( i ) ), vector.amount( i ), Integer::sum );
+            }
+        }
+        return held;
+    }
+
+    /**
+     * Removes every expired hold, handing its ingredients back.
+     */
+    void sweep () {
+        final long now = System.currentTimeMillis();
+        final Iterator<Hold> it = holds.values().iterator();
+        while ( it.hasNext() ) {
+            final Hold hold = it.next();
+            if ( hold.isExpired( now ) && holds.remove( hold.getId(), hold ) ) {
+                ledger.release( hold.getVector() );
+            }
+        }
+    }
+
+    /**
+     * Ingredients held for a single order.
+     */
+    public static final class Hold {
+
+        /** ID of the hold */
+        private final String       id;
+
+        /** Recipe the hold is for */
+        private final Recipe       recipe;
+
+        /** The recipe, compiled */
+        private final RecipeVector vector;
+
+        /** When the hold expires, in milliseconds since the epoch */
+        private final long         expiresAt;
+
+        /**
+         * Creates a hold.
+         *
+         * @param id
+         *            ID of the hold
+         * @param recipe
+         *            Recipe the hold is for
+         * @param vector
+         *            The recipe, compiled
+         * @param expiresAt
+         *            When the hold expires, in milliseconds since the epoch
+         */
+        Hold ( final String id, final Recipe recipe, final RecipeVector vector, final long expiresAt ) {
+            this.id = id;
+            this.recipe = recipe;
+            this.vector = vector;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Returns the ID of the hold.
+         *
+         * @return the ID
+         */
+        public String getId () {
+            return id;
+        }
+
+        /**
+         * Returns the recipe the hold is for.
+         *
+         * @return the recipe
+         */
+        public Recipe getRecipe () {
+            return recipe;
+        }
+
+        /**
+         * Returns the recipe the hold is for, compiled.
+         *
+         * @return the compiled recipe
+         */
+        public RecipeVector getVector () {
+            return vector;
+        }
+
+        /**
+         * Returns when the hold expires.
+         *
+         * @return the expiry time, in milliseconds since the epoch
+         */
+        public long getExpiresAt () {
+            return expiresAt;
+        }
+
+        /**
+         * Checks whether the hold has expired.
+         *
+         * @param now
+         *            the current time, in milliseconds since the epoch
+         * @return true if the hold has expired
+         */
+        boolean isExpired ( final long now ) {
+            return now >= expiresAt;
+        }
+    }
+
+}
@@ -1,6 +1,16 @@
 package edu.ncsu.csc.CoffeeMaker.services;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
 
 import javax.transaction.Transactional;
 
@@ -8,13 +18,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
 
+import edu.ncsu.csc.CoffeeMaker.forms.RestockForm;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.InventoryMovement.Kind;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.models.Sale;
+import edu.ncsu.csc.CoffeeMaker.repositories.IngredientRepository;
 import edu.ncsu.csc.CoffeeMaker.repositories.InventoryRepository;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * The InventoryService is used to handle CRUD operations on the Inventory
  * model. In addition to all functionality in `Service`, we also manage the
- * Inventory singleton.
+ * Inventory singleton, and the in-memory `InventoryLedger` used to decide
+ * whether beverages can be made. Every change to the ingredient levels is also
+ * recorded in the `InventoryMovements` log, and every beverage made in the
+ * `SalesHistory`.
  *
  * @author Kai Presler-Marshall
  *
@@ -28,7 +48,60 @@ public class InventoryService extends Service<Inventory, Long> {
      * operations on Inventory model.
      */
     @Autowired
-    private InventoryRepository inventoryRepository;
+    private InventoryRepository   inventoryRepository;
+
+    /**
+     * IngredientRepository, used to take ingredients out of the Inventory with
+     * single-row updates.
+     */
+    @Autowired
+    private IngredientRepository  ingredientRepository;
+
+    /**
+     * In-memory copy of the ingredient levels, used to make the decision on
+     * whether there is enough inventory without locking.
+     */
+    @Autowired
+    private InventoryLedger       ledger;
+
+    /** Used to compile recipes for the ledger */
+    @Autowired
+    private IngredientCatalog     catalog;
+
+    /** Keeps the recipes it caches compiled */
+    @Autowired
+    private RecipeCache           recipeCache;
+
+    /**
+     * Write-behind journal that purchases are recorded in instead of the
+     * database, if enabled.
+     */
+    @Autowired
+    private InventoryJournal      journal;
+
+    /** Ingredients held for orders that have not been committed yet */
+    @Autowired
+    private InventoryReservations reservations;
+
+    /** Serialises writes of the same ingredients to the database */
+    @Autowired
+    private IngredientLocks       locks;
+
+    /** Versions of the Inventory and Ingredients, for conditional GETs */
+    @Autowired
+    private ResourceVersions      versions;
+
+    /** Pushes changes to the ingredient levels to clients */
+    @Autowired
+    private ChangeFeed            changes;
+
+    /** Log of every change to the ingredient levels */
+    @Autowired
+    private InventoryMovements    movements;
+
+    /** History of every beverage made */
+    @Autowired
+    private SalesHistory          sales;
 
     @Override
     protected JpaRepository<Inventory, Long> getRepository () {
@@ -55,4 +128,551 @@ public class InventoryService extends Service<Inventory, Long> {
         }
     }
 
+    /**
+     * Retrieves the singleton Inventory instance for display. Read-only, so it
+     * is served by the read replica when one is configured, and never creates
+     * the Inventory: if there is none yet, an empty one is returned without
+     * being saved.
+     *
+     * @return the Inventory, or an empty one
+     */
+    @org.springframework.transaction.annotation.Transactional ( readOnly = true )
+    public Inventory findInventory () {
+        final List<Inventory> inventoryList = findAll();
+        return inventoryList.size() == 1 ? inventoryList.get( 0 ) : new Inventory();
+    }
+
+    /**
+     * Takes the ingredients needed for the provided recipe out of the
+     * Inventory. The decision is made against the `InventoryLedger` without
+     * taking any locks; only once the ingredients have been claimed there is
+     * the change written to the database.
+     *
+     * @param recipe
+     *            recipe to make
+     * @return true if there was enough inventory and it has been used, false
+     *         otherwise
+     */
+    public boolean consume ( final Recipe recipe ) {
+        return consumeAll( Collections.singletonList( recipe ), true )[0];
+    }
+
+    /**
+     * Takes the ingredients needed for several recipes out of the Inventory in
+     * a single transaction, with a single write to the database. A recipe may
+     * appear more than once; null entries are skipped (and reported as not
+     * made).
+     *
+     * @param recipes
+     *            recipes to make
+     * @param allOrNothing
+     *            if true, either every recipe is made or none are; otherwise
+     *            as many are made as the Inventory allows, in order
+     * @return for each recipe, whether it was made
+     */
+    public boolean[] consumeAll ( final List<Recipe> recipes, final boolean allOrNothing ) {
+        final RecipeVector[] vectors = new RecipeVector[recipes.size()];
+        final boolean[] made = new boolean[recipes.size()];
+        boolean all = true;
+        boolean any = false;
+        for ( int i = 0; i < recipes.size(); i++ ) {
+            final Recipe recipe = recipes.get( i );
+            if ( null != recipe ) {
+                vectors[i] = recipeCache.compile( recipe, catalog );
+                made[i] = claim( vectors[i] );
+            }
+            all &= made[i];
+            any |= made[i];
+            if ( allOrNothing && !all ) {
+                break;
+            }
+        }
+        if ( allOrNothing && !all ) {
+            release( vectors, made );
+            return new boolean[recipes.size()];
+        }
+        if ( !any ) {
+            return made;
+        }
+
+        final boolean[] claimed = made.clone();
+        try {
+            write( recipes, vectors, made, allOrNothing );
+        }
+        catch ( final RuntimeException e ) {
+            // nothing was written, so hand the ingredients back for a retry
+            release( vectors, claimed );
+            throw e;
+        }
+        return made;
+    }
+
+    /**
+     * Restocks several of the Inventory's ingredients at once, with a single
+     * UPDATE that adds to (or sets) each of their amounts in place, rather than
+     * loading the Inventory and saving it back. Purchases running at the same
+     * time are never lost, as each one only ever takes off what it uses. Lines
+     * for the same ingredient are applied in order. Either every line is
+     * applied or none are.
+     *
+     * The ingredients' locks are taken first, in the same order purchases take
+     * them, so a restock never deadlocks with a purchase.
+     *
+     * @param lines
+     *            the lines of the delivery
+     * @return the number of ingredients restocked
+     * @throws IllegalArgumentException
+     *             if a line has no name or a negative amount, or would take an
+     *             amount past the largest one that can be stored
+     * @throws NoSuchElementException
+     *             if an ingredient is not in the Inventory
+     */
+    public int restock ( final List<RestockForm> lines ) {
+        final Map<String, Integer> increments = new LinkedHashMap<String, Integer>();
+        final Map<String, Integer> levels = new LinkedHashMap<String, Integer>();
+        for ( final RestockForm line : lines ) {
+            final String name = line.getName();
+            final int add = null == line.getAdd() ? 0 : line.getAdd();
+            if ( null == name || add < 0 || ( null != line.getSet() && line.getSet() < 0 ) ) {
+                throw new IllegalArgumentException( "Invalid restock of " + name );
+            }
+            try {
+                if ( null != line.getSet() ) {
+                    increments.remove( name );
+                    levels.put( name, Math.addExact( line.getSet(), add ) );
+                }
+                else if ( levels.containsKey( name ) ) {
+                    levels.merge( name, add, Math::addExact );
+                }
+                else {
+                    increments.merge( name, add, Math::addExact );
+                }
+            }
+            catch ( final ArithmeticException e ) {
+                throw new IllegalArgumentException( "Restock of " + name + " is too large" );
+            }
+        }
+
+        final Set<String> names = new TreeSet<String>( increments.keySet() );
+        names.addAll( levels.keySet() );
+        // locking adds the names to the IngredientCatalog for good, so only
+        // ingredients that are in the Inventory may get that far
+        final Set<String> known = new HashSet<String>();
+        ingredientRepository.findInventoryLevels( names ).forEach( level -> known.add( level.getName() ) );
+        requireAll( names, known );
+        final int restocked;
+        // purchases writing the same ingredients wait, and are waited for, as
+        // usual; the rows are then locked first, so what they are restocked
+        // from is known
+        final IngredientLocks.Held held = locks.lock( names );
+        try {
+            final Map<String, Integer> before = new HashMap<String, Integer>();
+            ingredientRepository.findInventoryLevelsByNameForUpdate( names )
+                    .forEach( level -> before.put( level.getName(), level.getAmount() ) );
+            requireAll( names, before.keySet() );
+            increments.forEach( ( name, add ) -> {
+                if ( (long) before.get( name ) + add > Integer.MAX_VALUE ) {
+                    throw new IllegalArgumentException( "Restock of " + name + " is too large" );
+                }
+            } );
+
+            restocked = ingredientRepository.restock( increments, levels );
+            before.keySet().retainAll( levels.keySet() );
+            movements.record( Kind.RESTOCK, increments );
+            movements.recordAdjustment( levels, before );
+        }
+        finally {
+            held.releaseAfterCompletion();
+        }
+        ledger.invalidateOnCompletion();
+        versions.changed( Resource.INVENTORY, Resource.INGREDIENTS );
+        if ( changes.hasClients() ) {
+            ingredientRepository.findInventoryLevels( names )
+                    .forEach( level -> changes.ingredientChanged( level.getName(), level.getAmount() ) );
+        }
+        return restocked;
+    }
+
+    /**
+     * Checks that every ingredient being restocked is in the Inventory.
+     *
+     * @param names
+     *            names of the ingredients being restocked
+     * @param found
+     *            names of those found in the Inventory
+     * @throws NoSuchElementException
+     *             naming those that are not
+     */
+    private void requireAll ( final Set<String> names, final Set<String> found ) {
+        if ( found.size() != names.size() ) {
+            final Set<String> missing = new TreeSet<String>( names );
+            missing.removeAll( found );
+            throw new NoSuchElementException( "No ingredient in the Inventory named " + String.join( ", ", missing ) );
+        }
+    }
+
+    /**
+     * Places a hold on the ingredients needed for the provided recipe. They
+     * are taken from the `InventoryLedger` straight away, so no other purchase
+     * can use them, but the Inventory in the database is not changed until the
+     * hold is committed with `commitReservation()`.
+     *
+     * @param recipe
+     *            recipe to hold the ingredients for
+     * @param ttl
+     *            how long the hold lasts before it is released, in
+     *            milliseconds
+     * @return the hold, or null if there was not enough inventory
+     */
+    public InventoryReservations.Hold reserve ( final Recipe recipe, final long ttl ) {
+        final RecipeVector vector = recipeCache.compile( recipe, catalog );
+        /*
+         * The ledger is only ever loaded while holding its monitor, so no load
+         * can fall between the claim and the hold being recorded: it either
+         * sees neither, or the claim as a hold.
+         */
+        synchronized ( ledger ) {
+            if ( !claim( vector ) ) {
+                return null;
+            }
+            return reservations.add( recipe, vector, ttl );
+        }
+    }
+
+    /**
+     * Writes the ingredients held by a hold off of the Inventory. The hold must
+     * already have been taken out of the `InventoryReservations`; if this
+     * fails, with an exception or otherwise, its ingredients are still claimed
+     * from the ledger and it may be restored or cancelled.
+     *
+     * @param hold
+     *            the hold to commit
+     * @return true if the database had the ingredients and they were used
+     */
+    public boolean commitReservation ( final InventoryReservations.Hold hold ) {
+        final boolean[] made = { true };
+        write( Collections.singletonList( hold.getRecipe() ), new RecipeVector[] { hold.getVector() }, made, true );
+        return made[0];
+    }
+
+    /**
+     * Returns the level of every ingredient, as held by the ledger: what is in
+     * the Inventory, less purchases not yet written and open reservations.
+     *
+     * @return the levels, indexed by ordinal in the IngredientCatalog; -1 for
+     *         ingredients not in the Inventory
+     */
+    public int[] levels () {
+        while ( true ) {
+            if ( !ledger.isLoaded() ) {
+                loadLedger();
+            }
+            try {
+                return ledger.levels();
+            }
+            catch ( final IllegalStateException e ) {
+                // dropped by a concurrent change to the Inventory; load it again
+            }
+        }
+    }
+
+    /**
+     * Loads the ledger from the Inventory, taking off any purchases still in
+     * the journal and any ingredients held by open reservations.
+     */
+    private void loadLedger () {
+        final long generation = ledger.generation();
+        final Inventory inventory = getInventory();
+        final Map<String, Integer> outstanding = new HashMap<String, Integer>(
+                journal.unflushedSince( inventory.getJournalSequence() ) );
+        reservations.held().forEach( ( name, amount ) -> outstanding.merge( name, amount, Integer::sum ) );
+        ledger.load( inventory, outstanding, generation );
+    }
+
+    /**
+     * Claims a compiled recipe's ingredients from the ledger, loading it first
+     * if necessary.
+     *
+     * @param recipe
+     *            compiled recipe to make
+     * @return true if the ingredients were claimed
+     */
+    private boolean claim ( final RecipeVector recipe ) {
+        while ( true ) {
+            if ( !ledger.isLoaded() ) {
+                loadLedger();
+            }
+            try {
+                return ledger.tryConsume( recipe );
+            }
+            catch ( final IllegalStateException e ) {
+                // dropped by a concurrent change to the Inventory; load it again
+            }
+        }
+    }
+
+    /**
+     * Records the ingredients used by the recipes whose ingredients were
+     * claimed, either in the journal or in the database. Drops the ledger if
+     * the database disagreed with it, or arranges for it to be dropped if the
+     * current transaction does not commit.
+     *
+     * @param recipes
+     *            recipes that were attempted
+     * @param vectors
+     *            the recipes, compiled
+     * @param made
+     *            which of the recipes were made; updated in place
+     * @param allOrNothing
+     *            if true, a single recipe that cannot be made means none are
+     */
+    private void write ( final List<Recipe> recipes, final RecipeVector[] vectors, final boolean[] made,
+            final boolean allOrNothing ) {
+        final boolean agreed;
+        if ( journal.isEnabled() ) {
+            journal.append( recipes, made );
+            agreed = true;
+            // the database is behind the journal, so there is no stored level
+            // to send; clients fetch the Inventory again instead
+            changes.resync();
+        }
+        else {
+            // only purchases writing the same ingredients wait for each other
+            final IngredientLocks.Held held = locks.lock( vectors, made );
+            try {
+                agreed = persistConsumption( vectors, made, allOrNothing );
+                final Map<String, Integer> brewed = brewed( vectors, made );
+                movements.record( Kind.BREW, brewed );
+                // read back what was written while the rows are still ours, so
+                // purchases of the same ingredients are sent in commit order
+                if ( changes.hasClients() && !brewed.isEmpty() ) {
+                    ingredientRepository.findInventoryLevels( brewed.keySet() )
+                            .forEach( level -> changes.ingredientChanged( level.getName(), level.getAmount() ) );
+                }
+            }
+            finally {
+                held.releaseAfterCompletion();
+            }
+            versions.changed( Resource.INVENTORY, Resource.INGREDIENTS );
+        }
+        sales.record( sold( recipes, vectors, made ) );
+        if ( agreed ) {
+            ledger.invalidateOnRollback();
+        }
+        else {
+            // the database disagreed with the ledger, which can no longer be
+            // trusted
+            ledger.invalidateOnCompletion();
+        }
+    }
+
+    /**
+     * Adds up the ingredients used by the recipes that were made.
+     *
+     * @param vectors
+     *            compiled recipes that were attempted
+     * @param made
+     *            which of the recipes were made
+     * @return the change to each ingredient's level, by name
+     */
+    private Map<String, Integer> brewed ( final RecipeVector[] vectors, final boolean[] made ) {
+        final Map<String, Integer> brewed = new HashMap<String, Integer>();
+        for ( int i = 0; i < made.length; i++ ) {
+            for ( int j = 0; made[i] && j < vectors[i].size(); j++ ) {
+                brewed.merge( catalog.name( vectors[i].ordinal( j ) ), -vectors[i].amount( j ), Integer::sum );
+            }
+        }
+        return brewed;
+    }
+
+    /**
+     * Creates a Sale for each recipe that was made.
+     *
+     * @param recipes
+     *            recipes that were attempted
+     * @param vectors
+     *            the recipes, compiled
+     * @param made
+     *            which of the recipes were made
+     * @return the sales
+     */
+    private List<Sale> sold ( final List<Recipe> recipes, final RecipeVector[] vectors, final boolean[] made ) {
+        final List<Sale> sold = new ArrayList<Sale>();
+        for ( int i = 0; i < made.length; i++ ) {
+            if ( made[i] ) {
+                final Map<String, Integer> used = new HashMap<String, Integer>();
+                for ( int j = 0; j < vectors[i].size(); j++ ) {
+                    used.merge( catalog.name( vectors[i].ordinal( j ) ), vectors[i].amount( j ), Integer::sum );
+                }
+                sold.add( new Sale( recipes.get( i ).getName(), recipes.get( i ).getPrice(), used ) );
+            }
+        }
+        return sold;
+    }
+
+    /**
+     * Returns the level of each of an Inventory's ingredients as stored in the
+     * database, and locks them until the current transaction ends.
+     *
+     * @param inventory
+     *            the Inventory
+     * @return the levels, by name; empty if the Inventory has not been saved
+     */
+    private Map<String, Integer> lockLevels ( final Inventory inventory ) {
+        final Map<String, Integer> stored = new HashMap<String, Integer>();
+        if ( null != inventory.getId() ) {
+            ingredientRepository.findLevelsForUpdate( inventory.getId() )
+                    .forEach( level -> stored.merge( level.getName(), level.getAmount(), Integer::sum ) );
+        }
+        return stored;
+    }
+
+    /**
+     * Returns the ingredients claimed for the recipes that were made to the
+     * ledger.
+     *
+     * @param vectors
+     *            compiled recipes that were attempted
+     * @param made
+     *            which of the recipes had their ingredients claimed
+     */
+    private void release ( final RecipeVector[] vectors, final boolean[] made ) {
+        for ( int i = 0; i < made.length; i++ ) {
+            if ( made[i] ) {
+                ledger.release( vectors[i] );
+            }
+        }
+    }
+
+    /**
+     * Writes the ingredients used by the recipes made to the database, as one
+     * conditional UPDATE per ingredient ("take N off if there are at least N
+     * left"), all in the current transaction. Any recipe the database does not
+     * have enough for has the decrements already made for it undone and is
+     * marked as not made; in all-or-nothing mode, so are all of the others.
+     *
+     * @param vectors
+     *            compiled recipes that were attempted
+     * @param made
+     *            which of the recipes were made; updated in place
+     * @param allOrNothing
+     *            if true, a single recipe that cannot be made means none are
+     * @return true if the database agreed with every decision in `made`
+     */
+    private boolean persistConsumption ( final RecipeVector[] vectors, final boolean[] made,
+            final boolean allOrNothing ) {
+        boolean agreed = true;
+        for ( int i = 0; i < made.length; i++ ) {
+            if ( !made[i] || decrement( vectors[i] ) ) {
+                continue;
+            }
+            agreed = false;
+            if ( allOrNothing ) {
+                for ( int j = 0; j < i; j++ ) {
+                    if ( made[j] ) {
+                        increment( vectors[j], vectors[j].size() );
+                    }
+                }
+                Arrays.fill( made, false );
+                return false;
+            }
+            made[i] = false;
+        }
+        return agreed;
+    }
+
+    /**
+     * Takes a compiled recipe's ingredients off of the Inventory in the
+     * database. If there is not enough of one of them, those already taken are
+     * put back.
+     *
+     * @param recipe
+     *            compiled recipe that was made
+     * @return true if there was enough of every ingredient
+     */
+    private boolean decrement ( final RecipeVector recipe ) {
+        for ( int i = 0; i < recipe.size(); i++ ) {
+            if ( 0 == recipe.amount( i ) ) {
+                continue;
+            }
+            final long id = ledger.ingredientId( recipe.ordinal( i ) );
+            if ( id < 0 || 0 == ingredientRepository.decrementAmount( id, recipe.amount( i ) ) ) {
+                increment( recipe, i );
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts the first `count` ingredients of a compiled recipe back into the
+     * Inventory in the database.
+     *
+     * @param recipe
+     *            compiled recipe whose ingredients should be put back
+     * @param count
+     *            number of the recipe's ingredients to put back
+     */
+    private void increment ( final RecipeVector recipe, final int count ) {
+        for ( int i = 0; i < count; i++ ) {
+            if ( 0 != recipe.amount( i ) ) {
+                ingredientRepository.incrementAmount( ledger.ingredientId( recipe.ordinal( i ) ), recipe.amount( i ) );
+            }
+        }
+    }
+
+    @Override
+    public void save ( final Inventory obj ) {
+        final Map<String, Integer> before = lockLevels( obj );
+        super.save( obj );
+        movements.recordAdjustment( lockLevels( obj ), before );
+        ledger.invalidateOnCompletion();
+        versions.changed( Resource.INVENTORY, Resource.INGREDIENTS );
+        for ( final Ingredient ing : obj.getIngInventory() ) {
+            changes.ingredientChanged( ing.getName(), ing.getAmount() );
+        }
+    }
+
+    @Override
+    public void saveAll ( final List<Inventory> objects ) {
+        final Map<String, Integer> before = new HashMap<String, Integer>();
+        for ( final Inventory inventory : objects ) {
+            lockLevels( inventory ).forEach( ( name, amount ) -> before.merge( name, amount, Integer::sum ) );
+        }
+        super.saveAll( objects );
+        final Map<String, Integer> after = new HashMap<String, Integer>();
+        for ( final Inventory inventory : objects ) {
+            lockLevels( inventory ).forEach( ( name, amount ) -> after.merge( name, amount, Integer::sum ) );
+        }
+        movements.recordAdjustment( after, before );
+        ledger.invalidateOnCompletion();
+        versions.changed( Resource.INVENTORY, Resource.INGREDIENTS );
+        changes.resync();
+    }
+
+    @Override
+    public void delete ( final Inventory obj ) {
+        final Map<String, Integer> before = lockLevels( obj );
+        super.delete( obj );
+        inventoryRepository.flush();
+        movements.recordAdjustment( Collections.emptyMap(), before );
+        ledger.invalidateOnCompletion();
+        versions.changed( Resource.INVENTORY, Resource.INGREDIENTS );
+        changes.resync();
+    }
+
+    @Override
+    public void deleteAll () {
+        final Map<String, Integer> before = new HashMap<String, Integer>();
+        for ( final Inventory inventory : inventoryRepository.findAll() ) {
+            lockLevels( inventory ).forEach( ( name, amount ) -> before.merge( name, amount, Integer::sum ) );
+        }
+        super.deleteAll();
+        inventoryRepository.flush();
+        movements.recordAdjustment( Collections.emptyMap(), before );
+        ledger.invalidateOnCompletion();
+        versions.changed( Resource.INVENTORY, Resource.INGREDIENTS );
+        changes.resync();
+    }
+
 }
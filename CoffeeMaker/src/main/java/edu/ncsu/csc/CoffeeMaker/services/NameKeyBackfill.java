@@ -0,0 +1,62 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.repositories.IngredientRepository;
+import edu.ncsu.csc.CoffeeMaker.repositories.RecipeRepository;
+
+/**
+ * Fills in the normalised names of recipes and ingredients that were saved
+ * before they were kept, so that they can be found by name through the unique
+ * indexes. Runs once the application has started. Should two of them have the
+ * same normalised name, that kind of record is left as it was and a warning is
+ * logged; the duplicate has to be renamed or removed by hand.
+ */
+@Component
+public class NameKeyBackfill {
+
+    /** Logger for names that could not be filled in */
+    private static final Logger        LOGGER = Logger.getLogger( NameKeyBackfill.class.getName() );
+
+    /** Used to fill in the recipe names */
+    @Autowired
+    private RecipeRepository           recipeRepository;
+
+    /** Used to fill in the ingredient names */
+    @Autowired
+    private IngredientRepository       ingredientRepository;
+
+    /** Used to run each fill-in in a transaction of its own */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Fills in the normalised names.
+     */
+    @EventListener ( ApplicationReadyEvent.class )
+    public void fillIn () {
+        final TransactionTemplate transaction = new TransactionTemplate( transactionManager );
+        try {
+            transaction.execute( status -> recipeRepository.fillInNameKeys() );
+        }
+        catch ( final DataAccessException e ) {
+            LOGGER.warning( "Recipes with duplicate names prevent them from being found by name: " + e.getMessage() );
+        }
+        try {
+            transaction.execute( status -> ingredientRepository.fillInCatalogNames() );
+        }
+        catch ( final DataAccessException e ) {
+            LOGGER.warning(
+                    "Ingredients with duplicate names prevent them from being found by name: " + e.getMessage() );
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Runs a unit of work that reads, changes and saves versioned entities (the
+ * Inventory and its Ingredients), running it again with a short, randomised,
+ * exponential backoff if another writer changed the same rows in the meantime,
+ * or if the database gave up waiting for a lock another writer held (a
+ * deadlock or a lock timeout).
+ * Each attempt must run in its own transaction, so work is only retried when
+ * called outside of one; inside an existing transaction a conflict is passed
+ * straight on to the caller.
+ *
+ * Conflicts, retries, and units of work that gave up are counted in the
+ * `coffeemaker.inventory.optimistic.*` metrics.
+ */
+@Component
+public class OptimisticRetry {
+
+    /** Longest the backoff between two attempts may grow to, in milliseconds */
+    private static final long MAX_BACKOFF = 200;
+
+    /** Number of times the work is attempted before giving up */
+    private final int         maxAttempts;
+
+    /** Backoff before the first retry, in milliseconds; doubled each time */
+    private final long        backoff;
+
+    /** Number of optimistic locking conflicts seen */
+    private final Counter     conflicts;
+
+    /** Number of times work was run again after a conflict */
+    private final Counter     retries;
+
+    /** Number of times work failed on every attempt */
+    private final Counter     exhausted;
+
+    /**
+     * Creates the retry helper.
+     *
+     * @param maxAttempts
+     *            number of times work is attempted before giving up
+     * @param backoff
+     *            backoff before the first retry, in milliseconds
+     * @param registry
+     *            registry to publish the conflict and retry counts to
+     */
+    @Autowired
+    public OptimisticRetry ( @Value ( "${coffeemaker.inventory.retry.max-attempts:5}" ) final int maxAttempts,
+            @Value ( "${coffeemaker.inventory.retry.backoff-ms:5}" ) final long backoff,
+            final MeterRegistry registry ) {
+        this.maxAttempts = Math.max( 1, maxAttempts );
+        this.backoff = backoff;
+        this.conflicts = registry.counter( "coffeemaker.inventory.optimistic.conflicts" );
+        this.retries = registry.counter( "coffeemaker.inventory.optimistic.retries" );
+        this.exhausted = registry.counter( "coffeemaker.inventory.optimistic.exhausted" );
+    }
+
+    /**
+     * Runs the provided work, retrying it if it fails because of a concurrent
+     * update.
+     *
+     * @param <T>
+     *            type of the work's result
+     * @param work
+     *            the work to run; must start its own transaction
+     * @return the result of the first attempt that succeeded
+     * @throws OptimisticLockingFailureException
+     *             if every attempt conflicted with another writer
+     * @throws PessimisticLockingFailureException
+     *             if the last attempt could not get a lock
+     */
+    public <T> T run ( final Supplier<T> work ) {
+        final int attempts = TransactionSynchronizationManager.isActualTransactionActive() ? 1 : maxAttempts;
+        long sleep = backoff;
+        for ( int attempt = 1;; attempt++ ) {
+            try {
+                return work.get();
+            }
+            catch ( final OptimisticLockingFailureException | PessimisticLockingFailureException e ) {
+                conflicts.increment();
+                if ( attempt >= attempts ) {
+                    exhausted.increment();
+                    throw e;
+                }
+            }
+            retries.increment();
+            try {
+                Thread.sleep( ThreadLocalRandom.current().nextLong( sleep + 1 ) );
+            }
+            catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( "Interrupted while waiting to retry", e );
+            }
+            sleep = Math.min( MAX_BACKOFF, sleep * 2 );
+        }
+    }
+
+    /**
+     * Runs the provided work, retrying it if it fails because of a concurrent
+     * update.
+     *
+     * @param work
+     *            the work to run; must start its own transaction
+     * @throws OptimisticLockingFailureException
+     *             if every attempt conflicted with another writer
+     * @throws PessimisticLockingFailureException
+     *             if the last attempt could not get a lock
+     */
+    public void run ( final Runnable work ) {
+        run( () -> {
+            work.run();
+            return null;
+        } );
+    }
+
+}
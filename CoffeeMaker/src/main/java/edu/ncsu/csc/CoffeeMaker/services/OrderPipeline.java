@@ -0,0 +1,304 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Makes beverages in the background. An order is accepted straight away and
+ * given an ID; a small, fixed pool of workers then looks up the recipe, checks
+ * the payment, and takes the ingredients out of the Inventory, while the
+ * caller polls for the outcome. Orders wait in a bounded queue, and once it is
+ * full new orders are turned away rather than left to time out.
+ *
+ * Finished orders are kept for a while so that their outcome can be fetched,
+ * then forgotten. Orders are remembered in the order they finished, so
+ * forgetting them only ever looks at the oldest. The queue length is published as the
+ * `coffeemaker.orders.queued` gauge, and turned away orders are counted in
+ * `coffeemaker.orders.rejected`.
+ */
+@Component
+public class OrderPipeline {
+
+    /** Used to look up the recipe ordered */
+    @Autowired
+    private RecipeService      recipeService;
+
+    /** Used to take the ingredients out of the Inventory */
+    @Autowired
+    private InventoryService   inventoryService;
+
+    /** Retries purchases that conflict with a concurrent update */
+    @Autowired
+    private OptimisticRetry    retry;
+
+    /** Registry the queue metrics are published to */
+    @Autowired
+    private MeterRegistry      registry;
+
+    /** Number of workers making beverages */
+    @Value ( "${coffeemaker.orders.workers:4}" )
+    private int                workers;
+
+    /** Number of orders that may wait for a worker */
+    @Value ( "${coffeemaker.orders.queue-capacity:100}" )
+    private int                capacity;
+
+    /** How long a finished order is kept, in seconds */
+    @Value ( "${coffeemaker.orders.retention-seconds:600}" )
+    private long               retention;
+
+    /** Orders that are waiting, being made, or recently finished, keyed by ID */
+    private final Map<String, Order> orders = new ConcurrentHashMap<String, Order>();
+
+    /** Finished orders, oldest first */
+    private final Queue<Finished>    finished = new ConcurrentLinkedQueue<Finished>();
+
+    /** Runs the orders */
+    private ThreadPoolExecutor executor;
+
+    /** Number of orders turned away because the queue was full */
+    private Counter            rejected;
+
+    /**
+     * Starts the workers.
+     */
+    @PostConstruct
+    public void start () {
+        final AtomicInteger threads = new AtomicInteger();
+        executor = new ThreadPoolExecutor( workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>( Math.max( 1, capacity ) ), r -> {
+                    final Thread t = new Thread( r, "order-worker-" + threads.incrementAndGet() );
+                    t.setDaemon( true );
+                    return t;
+                } );
+        registry.gaugeCollectionSize( "coffeemaker.orders.queued", Tags.empty(), executor.getQueue() );
+        rejected = registry.counter( "coffeemaker.orders.rejected" );
+    }
+
+    /**
+     * Stops the workers, abandoning any orders still queued.
+     */
+    @PreDestroy
+    public void stop () {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Accepts an order, to be made in the background.
+     *
+     * @param recipe
+     *            name of the recipe ordered
+     * @param amtPaid
+     *            amount paid
+     * @return the order, or null if too many orders are waiting already
+     */
+    public Order submit ( final String recipe, final int amtPaid ) {
+        forgetFinished();
+        final Order order = new Order( UUID.randomUUID().toString(), recipe );
+        orders.put( order.getId(), order );
+        try {
+            executor.execute( () -> make( order, amtPaid ) );
+        }
+        catch ( final RejectedExecutionException e ) {
+            orders.remove( order.getId() );
+            rejected.increment();
+            return null;
+        }
+        return order;
+    }
+
+    /**
+     * Returns an order that is waiting, being made, or recently finished.
+     *
+     * @param id
+     *            ID of the order
+     * @return the order, or null if there is none with that ID
+     */
+    public Order find ( final String id ) {
+        return orders.get( id );
+    }
+
+    /**
+     * Makes an order. Run by the workers.
+     *
+     * @param order
+     *            the order
+     * @param amtPaid
+     *            amount paid
+     */
+    private void make ( final Order order, final int amtPaid ) {
+        order.status = OrderStatus.BREWING;
+        try {
+            final Recipe recipe = recipeService.findByName( order.getRecipe() );
+            if ( recipe == null ) {
+                order.finish( OrderStatus.FAILED, "No recipe selected" );
+            }
+            else if ( amtPaid < recipe.getPrice() ) {
+                order.finish( OrderStatus.FAILED, "Not enough money paid" );
+            }
+            else if ( retry.run( () -> inventoryService.consume( recipe ) ) ) {
+                order.finish( OrderStatus.DONE, String.valueOf( amtPaid - recipe.getPrice() ) );
+            }
+            else {
+                order.finish( OrderStatus.FAILED, "Not enough inventory" );
+            }
+        }
+        catch ( final RuntimeException e ) {
+            order.finish( OrderStatus.FAILED, "Could not make coffee" );
+        }
+        finished.add( new Finished( order.getId(), System.currentTimeMillis() ) );
+    }
+
+    /**
+     * Forgets orders that finished longer ago than they are kept for. Only
+     * those are looked at, along with the first that is still kept.
+     */
+    private void forgetFinished () {
+        final long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis( retention );
+        for ( Finished oldest = finished.peek(); null != oldest && oldest.at < cutoff; oldest = finished.peek() ) {
+            if ( finished.remove( oldest ) ) {
+                orders.remove( oldest.id );
+            }
+        }
+    }
+
+    /**
+     * When an order finished.
+     */
+    private static final class Finished {
+
+        /** ID of the order */
+        private final String id;
+
+        /** When it finished, in milliseconds since the epoch */
+        private final long   at;
+
+        /**
+         * Records that an order has finished.
+         *
+         * @param id
+         *            ID of the order
+         * @param at
+         *            when it finished, in milliseconds since the epoch
+         */
+        Finished ( final String id, final long at ) {
+            this.id = id;
+            this.at = at;
+        }
+    }
+
+    /**
+     * Where an order is in the pipeline.
+     */
+    public enum OrderStatus {
+        /** Waiting for a worker */
+        QUEUED,
+        /** Being made */
+        BREWING,
+        /** Made; the message is the change due */
+        DONE,
+        /** Not made; the message says why */
+        FAILED
+    }
+
+    /**
+     * A beverage ordered through the pipeline.
+     */
+    public static final class Order {
+
+        /** ID of the order */
+        private final String         id;
+
+        /** Name of the recipe ordered */
+        private final String         recipe;
+
+        /** Where the order is in the pipeline */
+        private volatile OrderStatus status = OrderStatus.QUEUED;
+
+        /** Change due if made, why not otherwise; null until finished */
+        private volatile String      message;
+
+        /**
+         * Creates a queued order.
+         *
+         * @param id
+         *            ID of the order
+         * @param recipe
+         *            Name of the recipe ordered
+         */
+        Order ( final String id, final String recipe ) {
+            this.id = id;
+            this.recipe = recipe;
+        }
+
+        /**
+         * Records the outcome of the order.
+         *
+         * @param outcome
+         *            DONE or FAILED
+         * @param text
+         *            change due, or why the order failed
+         */
+        void finish ( final OrderStatus outcome, final String text ) {
+            message = text;
+            status = outcome;
+        }
+
+        /**
+         * Returns the ID of the order.
+         *
+         * @return the ID
+         */
+        public String getId () {
+            return id;
+        }
+
+        /**
+         * Returns the name of the recipe ordered.
+         *
+         * @return the recipe name
+         */
+        public String getRecipe () {
+            return recipe;
+        }
+
+        /**
+         * Returns where the order is in the pipeline.
+         *
+         * @return the status
+         */
+        public OrderStatus getStatus () {
+            return status;
+        }
+
+        /**
+         * Returns the change due if the order was made, or why it was not.
+         *
+         * @return the message, null if the order has not finished
+         */
+        public String getMessage () {
+            return message;
+        }
+    }
+
+}
@@ -0,0 +1,315 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Read-through cache of the recipe catalog, used by the RecipeService so that
+ * looking up a recipe to brew or listing the menu does not go to the database
+ * each time. Recipes are kept by name alongside the full list of recipes; once
+ * the cache is full, the recipe used least recently is evicted.
+ *
+ * Everything is dropped whenever a recipe (or ingredient) is saved or deleted,
+ * and again once that transaction completes, so nothing read while the change
+ * was in flight survives it. Each drop starts a new generation. Every entry is
+ * tagged with the generation it was read in, and an entry from an earlier
+ * generation is treated as missing, so a value read from the database while a
+ * drop happened is never served.
+ *
+ * Lookups take no lock, as every purchase looks its recipe up here: the
+ * entries live in a ConcurrentHashMap and each records when it was last used.
+ * Only caching a recipe read from the database, which is rare, may have to
+ * look through the entries for one to evict.
+ *
+ * The cached recipes are also kept compiled into RecipeVectors, so a purchase
+ * does not compile its recipe again every time. A vector is dropped along with
+ * its recipe; the IngredientCatalog never reassigns an ordinal, so a vector
+ * stays valid for as long as its recipe is unchanged.
+ *
+ * Hits, misses and evictions are counted in the
+ * `coffeemaker.recipes.cache.*` metrics.
+ */
+@Component
+public class RecipeCache {
+
+    /** Maximum number of recipes kept by name */
+    private final int                       maxSize;
+
+    /** Recipes by normalised name */
+    private final Map<String, Entry>        byName = new ConcurrentHashMap<String, Entry>();
+
+    /** Every recipe, null if not cached */
+    private volatile Listing                all;
+
+    /** Incremented every time the cache is dropped */
+    private final AtomicLong                generation = new AtomicLong();
+
+    /** Number of lookups answered from the cache */
+    private final Counter                   hits;
+
+    /** Number of lookups that had to go to the database */
+    private final Counter                   misses;
+
+    /** Number of recipes evicted to stay within the maximum size */
+    private final Counter                   evictions;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxSize
+     *            maximum number of recipes kept by name
+     * @param registry
+     *            registry to publish the hit, miss and eviction counts to
+     */
+    @Autowired
+    public RecipeCache ( @Value ( "${coffeemaker.recipes.cache.max-size:1000}" ) final int maxSize,
+            final MeterRegistry registry ) {
+        this.maxSize = Math.max( 1, maxSize );
+        this.hits = registry.counter( "coffeemaker.recipes.cache.hits" );
+        this.misses = registry.counter( "coffeemaker.recipes.cache.misses" );
+        this.evictions = registry.counter( "coffeemaker.recipes.cache.evictions" );
+    }
+
+    /**
+     * Returns the current generation, to be passed to `put()` or `putAll()`
+     * along with whatever is read from the database after calling this.
+     *
+     * @return the generation
+     */
+    public long generation () {
+        return generation.get();
+    }
+
+    /**
+     * Looks up a recipe by name, ignoring case and surrounding whitespace.
+     *
+     * @param name
+     *            name of the recipe
+     * @return the recipe, or null if it is not cached
+     */
+    public Recipe get ( final String name ) {
+        final Entry entry = current( Recipe.normalizeName( name ) );
+        if ( null == entry ) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastUsed = System.nanoTime();
+        return entry.recipe;
+    }
+
+    /**
+     * Caches a recipe read from the database, unless the cache has been dropped
+     * since it was read.
+     *
+     * @param recipe
+     *            the recipe
+     * @param readGeneration
+     *            the generation before it was read
+     */
+    public void put ( final Recipe recipe, final long readGeneration ) {
+        if ( readGeneration != generation.get() ) {
+            return;
+        }
+        // a drop from here on leaves the entry tagged with an old generation
+        byName.put( Recipe.normalizeName( recipe.getName() ), new Entry( recipe, readGeneration ) );
+        if ( byName.size() > maxSize ) {
+            evict();
+        }
+    }
+
+    /**
+     * Evicts the recipes used least recently until the cache is back within
+     * its maximum size.
+     */
+    private synchronized void evict () {
+        while ( byName.size() > maxSize ) {
+            Map.Entry<String, Entry> eldest = null;
+            for ( final Map.Entry<String, Entry> e : byName.entrySet() ) {
+                if ( null == eldest || e.getValue().lastUsed < eldest.getValue().lastUsed ) {
+                    eldest = e;
+                }
+            }
+            if ( null == eldest ) {
+                return;
+            }
+            if ( byName.remove( eldest.getKey(), eldest.getValue() ) ) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Returns a recipe compiled into the ordinals and amounts of the
+     * ingredients it needs. A recipe returned by `get()` is compiled the first
+     * time it is used (or, rarely, by each of several purchases that get there
+     * at once), until it is dropped from the cache; any other recipe is
+     * compiled every time.
+     *
+     * @param recipe
+     *            the recipe
+     * @param catalog
+     *            catalog to compile it with
+     * @return the recipe's requirement vector
+     */
+    public RecipeVector compile ( final Recipe recipe, final IngredientCatalog catalog ) {
+        final Entry entry = current( Recipe.normalizeName( recipe.getName() ) );
+        if ( null == entry || entry.recipe != recipe ) {
+            return catalog.compile( recipe );
+        }
+        RecipeVector vector = entry.vector;
+        if ( null == vector ) {
+            vector = catalog.compile( recipe );
+            entry.vector = vector;
+        }
+        return vector;
+    }
+
+    /**
+     * Returns every recipe.
+     *
+     * @return a copy of the list of recipes, or null if it is not cached
+     */
+    public List<Recipe> getAll () {
+        final Listing listing = all;
+        if ( null == listing || listing.generation != generation.get() ) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new ArrayList<Recipe>( listing.recipes );
+    }
+
+    /**
+     * Caches the list of every recipe read from the database, unless the cache
+     * has been dropped since it was read.
+     *
+     * @param recipes
+     *            every recipe
+     * @param readGeneration
+     *            the generation before they were read
+     */
+    public void putAll ( final List<Recipe> recipes, final long readGeneration ) {
+        if ( readGeneration == generation.get() ) {
+            all = new Listing( new ArrayList<Recipe>( recipes ), readGeneration );
+        }
+    }
+
+    /**
+     * Drops everything in the cache.
+     */
+    public void invalidate () {
+        generation.incrementAndGet();
+        byName.clear();
+        all = null;
+    }
+
+    /**
+     * Returns the entry for a recipe, unless it is missing or was read before
+     * the cache was last dropped.
+     *
+     * @param normalized
+     *            normalised name of the recipe
+     * @return the entry, or null
+     */
+    private Entry current ( final String normalized ) {
+        final Entry entry = byName.get( normalized );
+        if ( null == entry ) {
+            return null;
+        }
+        if ( entry.generation != generation.get() ) {
+            byName.remove( normalized, entry );
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Drops everything in the cache now and, if called inside of a
+     * transaction, again once it has committed or rolled back. Called when a
+     * recipe is changed.
+     */
+    public void invalidateOnCompletion () {
+        invalidate();
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion ( final int status ) {
+                invalidate();
+            }
+        } );
+    }
+
+    /**
+     * A cached recipe.
+     */
+    private static final class Entry {
+
+        /** The recipe */
+        private final Recipe          recipe;
+
+        /** Generation the recipe was read in */
+        private final long            generation;
+
+        /** The recipe, compiled; null until it is first needed */
+        private volatile RecipeVector vector;
+
+        /** When the recipe was last looked up, from `System.nanoTime()` */
+        private volatile long         lastUsed;
+
+        /**
+         * Creates an entry for a recipe that has just been read.
+         *
+         * @param recipe
+         *            the recipe
+         * @param generation
+         *            generation it was read in
+         */
+        Entry ( final Recipe recipe, final long generation ) {
+            this.recipe = recipe;
+            this.generation = generation;
+            this.lastUsed = System.nanoTime();
+        }
+    }
+
+    /**
+     * The cached list of every recipe.
+     */
+    private static final class Listing {
+
+        /** Every recipe */
+        private final List<Recipe> recipes;
+
+        /** Generation the list was read in */
+        private final long         generation;
+
+        /**
+         * Creates a listing of recipes that have just been read.
+         *
+         * @param recipes
+         *            every recipe
+         * @param generation
+         *            generation they were read in
+         */
+        Listing ( final List<Recipe> recipes, final long generation ) {
+            this.recipes = recipes;
+            this.generation = generation;
+        }
+    }
+
+}
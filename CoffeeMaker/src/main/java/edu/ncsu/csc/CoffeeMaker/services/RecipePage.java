@@ -0,0 +1,78 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.List;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+
+/**
+ * One page of the recipe list, along with the cursor to pass back in order to
+ * fetch the page after it. Pages are cut by keyset rather than by offset, so
+ * fetching a page costs the same however far into the list it is, and recipes
+ * added or removed meanwhile do not shift the pages that follow.
+ */
+public class RecipePage {
+
+    /** What the recipes can be listed by */
+    public enum SortBy {
+        /** By name, then ID */
+        NAME,
+        /** By price, then ID */
+        PRICE;
+
+        /**
+         * Looks up an ordering by name, ignoring case.
+         *
+         * @param name
+         *            name of the ordering
+         * @return the ordering
+         * @throws IllegalArgumentException
+         *             if there is no ordering with that name
+         */
+        public static SortBy parse ( final String name ) {
+            for ( final SortBy sort : values() ) {
+                if ( sort.name().equalsIgnoreCase( name ) ) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException( "Recipes cannot be sorted by " + name );
+        }
+    }
+
+    /** Recipes on this page */
+    private final List<Recipe> recipes;
+
+    /** Cursor of the next page; null if this is the last one */
+    private final String       next;
+
+    /**
+     * Creates a page.
+     *
+     * @param recipes
+     *            recipes on the page
+     * @param next
+     *            cursor of the next page, null if this is the last one
+     */
+    public RecipePage ( final List<Recipe> recipes, final String next ) {
+        this.recipes = recipes;
+        this.next = next;
+    }
+
+    /**
+     * Returns the recipes on this page.
+     *
+     * @return the recipes
+     */
+    public List<Recipe> getRecipes () {
+        return recipes;
+    }
+
+    /**
+     * Returns the cursor of the next page.
+     *
+     * @return the cursor, null if this is the last page
+     */
+    public String getNext () {
+        return next;
+    }
+
+}
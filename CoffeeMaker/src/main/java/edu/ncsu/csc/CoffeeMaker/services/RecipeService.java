@@ -1,18 +1,29 @@
 package edu.ncsu.csc.CoffeeMaker.services;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
 
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
 import edu.ncsu.csc.CoffeeMaker.repositories.RecipeRepository;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * The RecipeService is used to handle CRUD operations on the Recipe model. In
  * addition to all functionality from `Service`, we also have functionality for
- * retrieving a single Recipe by name.
+ * retrieving a single Recipe by name, and for listing recipes a page at a
+ * time. Lookups are served from the `RecipeCache` where possible.
  *
  * @author Kai Presler-Marshall
  *
@@ -21,6 +32,9 @@ import edu.ncsu.csc.CoffeeMaker.repositories.RecipeRepository;
 @Transactional
 public class RecipeService extends Service<Recipe, Long> {
 
+    /** Most recipes returned on a single page */
+    public static final int  MAX_PAGE_SIZE = 100;
+
     /**
      * RecipeRepository, to be autowired in by Spring and provide CRUD
      * operations on Recipe model.
@@ -28,6 +42,18 @@ public class RecipeService extends Service<Recipe, Long> {
     @Autowired
     private RecipeRepository recipeRepository;
 
+    /** Cache of recipes read from the database */
+    @Autowired
+    private RecipeCache      cache;
+
+    /** Version of the recipes, for conditional GETs */
+    @Autowired
+    private ResourceVersions versions;
+
+    /** Pushes changes to the recipes to clients */
+    @Autowired
+    private ChangeFeed       changes;
+
     @Override
     protected JpaRepository getRepository () {
         return recipeRepository;
@@ -41,7 +67,165 @@ public class RecipeService extends Service<Recipe, Long> {
      * @return found recipe, null if none
      */
     public Recipe findByName ( final String name ) {
-        return recipeRepository.findByName( name );
+        final Recipe cached = cache.get( name );
+        if ( null != cached ) {
+            return cached;
+        }
+        final long generation = cache.generation();
+        final Recipe recipe = recipeRepository.findByName( name );
+        if ( null != recipe ) {
+            cache.put( recipe, generation );
+        }
+        return recipe;
+    }
+
+    @Override
+    public List<Recipe> findAll () {
+        final List<Recipe> cached = cache.getAll();
+        if ( null != cached ) {
+            return cached;
+        }
+        final long generation = cache.generation();
+        final List<Recipe> recipes = recipeRepository.findAllWithIngredients();
+        cache.putAll( recipes, generation );
+        return recipes;
+    }
+
+    /**
+     * Finds one page of recipes, in order and within a price range. Pages are
+     * read straight from the database rather than the cache, as the recipe
+     * list may be too long to keep in memory; being read-only, they come from
+     * the read replica when one is configured.
+     *
+     * @param sort
+     *            what to list the recipes by
+     * @param cursor
+     *            cursor of the page, as returned with the page before it; null
+     *            for the first page
+     * @param minPrice
+     *            lowest price, inclusive; null for no lower bound
+     * @param maxPrice
+     *            highest price, inclusive; null for no upper bound
+     * @param limit
+     *            most recipes to return, at most MAX_PAGE_SIZE
+     * @return the page
+     * @throws IllegalArgumentException
+     *             if the cursor is malformed or was not issued for the same
+     *             ordering, or the limit is out of range
+     */
+    @org.springframework.transaction.annotation.Transactional ( readOnly = true )
+    public RecipePage findPage ( final RecipePage.SortBy sort, final String cursor, final Integer minPrice,
+            final Integer maxPrice, final int limit ) {
+        if ( limit < 1 || limit > MAX_PAGE_SIZE ) {
+            throw new IllegalArgumentException( "Page size must be between 1 and " + MAX_PAGE_SIZE );
+        }
+        final int min = null == minPrice ? 0 : minPrice;
+        final int max = null == maxPrice ? Integer.MAX_VALUE : maxPrice;
+        /* One more than asked for, to tell whether there is a next page */
+        final Pageable page = PageRequest.of( 0, limit + 1 );
+
+        final String[] after = decodeCursor( sort, cursor );
+        final long afterId = null == after ? -1 : Long.parseLong( after[1] );
+        final List<Long> ids;
+        if ( sort == RecipePage.SortBy.PRICE ) {
+            final int afterPrice = null == after ? -1 : Integer.parseInt( after[2] );
+            ids = recipeRepository.findIdsAfterPrice( afterPrice, afterId, min, max, page );
+        }
+        else {
+            ids = recipeRepository.findIdsAfterName( null == after ? "" : after[2], afterId, min, max, page );
+        }
+
+        final boolean more = ids.size() > limit;
+        final List<Long> pageIds = more ? ids.subList( 0, limit ) : ids;
+        final List<Recipe> recipes = new ArrayList<Recipe>( pageIds.size() );
+        if ( !pageIds.isEmpty() ) {
+            final Map<Long, Recipe> byId = new HashMap<Long, Recipe>();
+            for ( final Recipe recipe : recipeRepository.findAllWithIngredientsByIdIn( pageIds ) ) {
+                byId.put( recipe.getId(), recipe );
+            }
+            for ( final Long id : pageIds ) {
+                final Recipe recipe = byId.get( id );
+                /* Deleted between the two queries */
+                if ( null != recipe ) {
+                    recipes.add( recipe );
+                }
+            }
+        }
+        final Recipe last = more && !recipes.isEmpty() ? recipes.get( recipes.size() - 1 ) : null;
+        return new RecipePage( recipes, null == last ? null : encodeCursor( sort, last ) );
+    }
+
+    /**
+     * Builds the cursor of the page after a recipe. The cursor is opaque to
+     * clients: it names the ordering, and the recipe's ID and sort key.
+     *
+     * @param sort
+     *            what the recipes are listed by
+     * @param last
+     *            last recipe on the page
+     * @return the cursor
+     */
+    private static String encodeCursor ( final RecipePage.SortBy sort, final Recipe last ) {
+        final String key = sort == RecipePage.SortBy.PRICE ? String.valueOf( last.getPrice() ) : last.getName();
+        final String cursor = sort.name() + ":" + last.getId() + ":" + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString( cursor.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Reads a cursor built by `encodeCursor()`.
+     *
+     * @param sort
+     *            what the recipes are listed by
+     * @param cursor
+     *            the cursor, or null
+     * @return the ordering, ID and sort key, or null if there was no cursor
+     * @throws IllegalArgumentException
+     *             if the cursor is malformed or was issued for another ordering
+     */
+    private static String[] decodeCursor ( final RecipePage.SortBy sort, final String cursor ) {
+        if ( null == cursor || cursor.isEmpty() ) {
+            return null;
+        }
+        final String[] parts = new String( Base64.getUrlDecoder().decode( cursor ), StandardCharsets.UTF_8 )
+                .split( ":", 3 );
+        if ( parts.length != 3 || !sort.name().equals( parts[0] ) ) {
+            throw new IllegalArgumentException( "Invalid cursor " + cursor );
+        }
+        return parts;
+    }
+
+    @Override
+    public void save ( final Recipe obj ) {
+        super.save( obj );
+        cache.invalidateOnCompletion();
+        versions.changed( Resource.RECIPES );
+        changes.recipeChanged( obj.getName(), false );
+    }
+
+    @Override
+    public void saveAll ( final List<Recipe> objects ) {
+        super.saveAll( objects );
+        cache.invalidateOnCompletion();
+        versions.changed( Resource.RECIPES );
+        for ( final Recipe recipe : objects ) {
+            changes.recipeChanged( recipe.getName(), false );
+        }
+    }
+
+    @Override
+    public void delete ( final Recipe obj ) {
+        super.delete( obj );
+        cache.invalidateOnCompletion();
+        versions.changed( Resource.RECIPES );
+        changes.recipeChanged( obj.getName(), true );
+    }
+
+    @Override
+    public void deleteAll () {
+        super.deleteAll();
+        cache.invalidateOnCompletion();
+        versions.changed( Resource.RECIPES );
+        changes.resync();
     }
 
 }
@@ -0,0 +1,193 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
+
+/**
+ * The recipe list, and each recipe, already rendered to JSON (plain and
+ * gzipped) so that the recipe endpoints can write bytes straight to the
+ * response instead of serialising entities on every request. Renderings are
+ * made lazily, with the same ObjectMapper Spring uses for every other
+ * response, and are thrown away as soon as the recipes' version in
+ * ResourceVersions moves on.
+ */
+@Component
+public class RecipeSnapshot {
+
+    /** Used to load the recipes */
+    @Autowired
+    private RecipeService       recipeService;
+
+    /** Tells when the recipes have changed */
+    @Autowired
+    private ResourceVersions    versions;
+
+    /** Renders the recipes to JSON */
+    @Autowired
+    private ObjectMapper        mapper;
+
+    /** Renderings for the current version of the recipes */
+    private volatile Renderings current = new Renderings( -1 );
+
+    /**
+     * Returns the list of every recipe, rendered.
+     *
+     * @return the rendered list
+     */
+    public Rendered list () {
+        final Renderings renderings = renderings();
+        Rendered list = renderings.list;
+        if ( null == list ) {
+            list = render( recipeService.findAll() );
+            renderings.list = list;
+        }
+        return list;
+    }
+
+    /**
+     * Returns a single recipe, rendered.
+     *
+     * @param name
+     *            name of the recipe, ignoring case and surrounding whitespace
+     * @return the rendered recipe, null if there is no recipe with that name
+     */
+    public Rendered recipe ( final String name ) {
+        final Renderings renderings = renderings();
+        Rendered recipe = renderings.byName.get( Recipe.normalizeName( name ) );
+        if ( null == recipe ) {
+            final Recipe found = recipeService.findByName( name );
+            if ( null == found ) {
+                return null;
+            }
+            recipe = render( found );
+            // by the recipe's own name, so there is one rendering per recipe
+            // however it is asked for
+            renderings.byName.put( Recipe.normalizeName( found.getName() ), recipe );
+        }
+        return recipe;
+    }
+
+    /**
+     * Returns the renderings for the current version of the recipes, starting
+     * afresh if they have changed. The version is read before anything is
+     * loaded, so anything rendered from a change still in flight is thrown
+     * away once it completes.
+     *
+     * @return the renderings
+     */
+    private Renderings renderings () {
+        final long version = versions.version( Resource.RECIPES );
+        final Renderings renderings = current;
+        if ( renderings.version == version ) {
+            return renderings;
+        }
+        final Renderings fresh = new Renderings( version );
+        if ( renderings.version < version ) {
+            current = fresh;
+        }
+        return fresh;
+    }
+
+    /**
+     * Renders an object to JSON, plain and gzipped.
+     *
+     * @param value
+     *            the object
+     * @return the rendering
+     */
+    private Rendered render ( final Object value ) {
+        try {
+            final byte[] json = mapper.writeValueAsBytes( value );
+            final ByteArrayOutputStream gzipped = new ByteArrayOutputStream( json.length / 4 + 64 );
+            try ( GZIPOutputStream out = new GZIPOutputStream( gzipped ) ) {
+                out.write( json );
+            }
+            return new Rendered( json, gzipped.toByteArray() );
+        }
+        catch ( final IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Everything rendered for one version of the recipes.
+     */
+    private static final class Renderings {
+
+        /** Version of the recipes these were rendered from */
+        private final long                  version;
+
+        /** The list of every recipe; null until first asked for */
+        private volatile Rendered           list;
+
+        /** Single recipes, by normalised name */
+        private final Map<String, Rendered> byName = new ConcurrentHashMap<String, Rendered>();
+
+        /**
+         * Starts the renderings for a version of the recipes.
+         *
+         * @param version
+         *            the version
+         */
+        Renderings ( final long version ) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * JSON rendering of a recipe or list of recipes.
+     */
+    public static final class Rendered {
+
+        /** UTF-8 encoded JSON */
+        private final byte[] json;
+
+        /** UTF-8 encoded JSON, gzipped */
+        private final byte[] gzip;
+
+        /**
+         * Creates a rendering.
+         *
+         * @param json
+         *            UTF-8 encoded JSON
+         * @param gzip
+         *            the same, gzipped
+         */
+        Rendered ( final byte[] json, final byte[] gzip ) {
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        /**
+         * Returns the rendering as UTF-8 encoded JSON. Must not be modified.
+         *
+         * @return the JSON
+         */
+        public byte[] getJson () {
+            return json;
+        }
+
+        /**
+         * Returns the rendering as gzipped, UTF-8 encoded JSON. Must not be
+         * modified.
+         *
+         * @return the gzipped JSON
+         */
+        public byte[] getGzip () {
+            return gzip;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+/**
+ * A recipe compiled against the IngredientCatalog: the ordinal of each
+ * ingredient it needs, and how much of it. Each ordinal appears only once.
+ * Instances are immutable.
+ */
+public final class RecipeVector {
+
+    /** Ordinals of the ingredients needed */
+    private final int[] ordinals;
+
+    /** Amount of each ingredient needed, parallel to `ordinals` */
+    private final int[] amounts;
+
+    /**
+     * Creates a RecipeVector. The arrays are used as-is and must not be
+     * changed afterwards.
+     *
+     * @param ordinals
+     *            ordinals of the ingredients needed
+     * @param amounts
+     *            amount of each ingredient needed
+     */
+    RecipeVector ( final int[] ordinals, final int[] amounts ) {
+        this.ordinals = ordinals;
+        this.amounts = amounts;
+    }
+
+    /**
+     * Returns the number of distinct ingredients needed.
+     *
+     * @return the number of ingredients
+     */
+    public int size () {
+        return ordinals.length;
+    }
+
+    /**
+     * Returns the ordinal of the i-th ingredient needed.
+     *
+     * @param i
+     *            index of the ingredient, below `size()`
+     * @return the ingredient's ordinal
+     */
+    public int ordinal ( final int i ) {
+        return ordinals[i];
+    }
+
+    /**
+     * Returns the amount of the i-th ingredient needed.
+     *
+     * @param i
+     *            index of the ingredient, below `size()`
+     * @return the amount needed
+     */
+    public int amount ( final int i ) {
+        return amounts[i];
+    }
+
+}
@@ -0,0 +1,128 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Version counters for the collections exposed through the REST API, used to
+ * answer conditional GETs. Each counter only ever goes up, and is bumped by the
+ * services whenever something in its collection may have changed, so an
+ * unchanged ETag means an unchanged response and the controllers can send 304
+ * Not Modified without loading anything.
+ *
+ * Counters are bumped as soon as a change is made and again once its
+ * transaction completes, so a response read while the change was in flight is
+ * never labelled with the version that follows it. ETags include the time the
+ * application started, so they are not reused across restarts.
+ *
+ * The versions are those of the primary database. When read-only transactions
+ * are served by a read replica, a response read from it may be older than the
+ * current version, so such responses are not tagged at all (see
+ * {@link #tagsReadOnlyReads()}).
+ */
+@Component
+public class ResourceVersions {
+
+    /** Collections with a version */
+    public enum Resource {
+        /** The recipes, and the ingredients in them */
+        RECIPES,
+        /** The ingredients, in recipes and in the Inventory */
+        INGREDIENTS,
+        /** The Inventory and its ingredient levels */
+        INVENTORY
+    }
+
+    /** Distinguishes ETags from different runs of the application */
+    private final String                    epoch    = Long.toString( System.currentTimeMillis(), 36 );
+
+    /** The counters */
+    private final Map<Resource, AtomicLong> versions = new EnumMap<Resource, AtomicLong>( Resource.class );
+
+    /** URL of the read replica, empty if there is none */
+    @Value ( "${coffeemaker.datasource.replica.url:}" )
+    private String                          replicaUrl;
+
+    /**
+     * Creates the counters, all at zero.
+     */
+    public ResourceVersions () {
+        for ( final Resource resource : Resource.values() ) {
+            versions.put( resource, new AtomicLong() );
+        }
+    }
+
+    /**
+     * Returns the current version of a collection.
+     *
+     * @param resource
+     *            the collection
+     * @return the version
+     */
+    public long version ( final Resource resource ) {
+        return versions.get( resource ).get();
+    }
+
+    /**
+     * Returns the current ETag of a collection.
+     *
+     * @param resource
+     *            the collection
+     * @return the ETag, quoted
+     */
+    public String etag ( final Resource resource ) {
+        return "\"" + resource.name().toLowerCase() + "-" + epoch + "-" + version( resource ) + "\"";
+    }
+
+    /**
+     * Returns whether a response read in a read-only transaction may be
+     * tagged with the current ETag of its collection. It may not when a read
+     * replica is configured: the replica can lag behind the primary, and a
+     * stale body labelled with the new version would then be revalidated as
+     * current until the next change.
+     *
+     * @return true if read-only reads come from the primary
+     */
+    public boolean tagsReadOnlyReads () {
+        return null == replicaUrl || replicaUrl.isEmpty();
+    }
+
+    /**
+     * Records that the provided collections have changed, now and once the
+     * current transaction (if any) has committed or rolled back.
+     *
+     * @param resources
+     *            the collections that changed
+     */
+    public void changed ( final Resource... resources ) {
+        bump( resources );
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion ( final int status ) {
+                bump( resources );
+            }
+        } );
+    }
+
+    /**
+     * Bumps the counters of the provided collections.
+     *
+     * @param resources
+     *            the collections that changed
+     */
+    private void bump ( final Resource... resources ) {
+        for ( final Resource resource : resources ) {
+            versions.get( resource ).incrementAndGet();
+        }
+    }
+
+}
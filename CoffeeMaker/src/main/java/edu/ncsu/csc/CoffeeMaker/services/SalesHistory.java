@@ -0,0 +1,413 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.models.Sale;
+import edu.ncsu.csc.CoffeeMaker.models.SalesRollup;
+import edu.ncsu.csc.CoffeeMaker.models.SalesRollup.Granularity;
+import edu.ncsu.csc.CoffeeMaker.repositories.SaleRepository;
+import edu.ncsu.csc.CoffeeMaker.repositories.SalesRollupRepository;
+
+/**
+ * History of every beverage sold, and the per-minute, per-hour and per-day
+ * SalesRollups that are reported on instead of it. Each Sale is saved in the
+ * transaction that makes the beverage; once that commits it is added to the
+ * rollups held in memory, which are written to the database every
+ * `coffeemaker.sales.flush-interval-ms` with a single update per rollup no
+ * matter how many sales went into it. The sales written are marked as rolled
+ * up in the same transaction, so any that were not when the application
+ * stopped are rolled up again on startup. Like the InventoryJournal, this
+ * assumes it is the only instance writing to the database.
+ */
+@Component
+public class SalesHistory {
+
+    /** Logger for rollups that could not be written */
+    private static final Logger         LOGGER      = Logger.getLogger( SalesHistory.class.getName() );
+
+    /** Most buckets that one call to `rollups()` may cover */
+    public static final int             MAX_BUCKETS = 10_000;
+
+    /** Most sales marked as rolled up by a single statement */
+    private static final int            MARK_CHUNK  = 1000;
+
+    /** Used to save the sales, and mark them as rolled up */
+    @Autowired
+    private SaleRepository              saleRepository;
+
+    /** Used to write the rollups and read them back */
+    @Autowired
+    private SalesRollupRepository       rollupRepository;
+
+    /** Used to write each batch of rollups in a transaction */
+    @Autowired
+    private PlatformTransactionManager  transactionManager;
+
+    /** How often the rollups are written, in milliseconds */
+    @Value ( "${coffeemaker.sales.flush-interval-ms:5000}" )
+    private long                        flushInterval;
+
+    /**
+     * Held exclusively while rollups are written, so that they are never read
+     * when they have been taken out of memory but are not in the database yet
+     */
+    private final ReadWriteLock         flushLock   = new ReentrantReadWriteLock();
+
+    /** Sales committed since the rollups were last written; guarded by this */
+    private Batch                       pending     = new Batch();
+
+    /** Writes the rollups in the background */
+    private ScheduledExecutorService    scheduler;
+
+    /**
+     * Rolls up any sales that were not when the application last stopped, and
+     * starts writing the rollups.
+     */
+    @PostConstruct
+    public void start () {
+        add( saleRepository.findNotRolledUp() );
+        scheduler = Executors.newSingleThreadScheduledExecutor( r -> {
+            final Thread t = new Thread( r, "sales-rollups" );
+            t.setDaemon( true );
+            return t;
+        } );
+        scheduler.scheduleWithFixedDelay( this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stops writing the rollups in the background, and writes those still in
+     * memory.
+     */
+    @PreDestroy
+    public void stop () {
+        scheduler.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * Saves beverages that were made. Must be called inside of the transaction
+     * that makes them; they are added to the rollups once it commits.
+     *
+     * @param sales
+     *            the sales
+     */
+    public void record ( final List<Sale> sales ) {
+        if ( sales.isEmpty() ) {
+            return;
+        }
+        saleRepository.saveAll( sales );
+        afterCommit( () -> add( sales ) );
+    }
+
+    /**
+     * Returns the rollups of sales over a range of time, including sales that
+     * have not been written to the database yet.
+     *
+     * @param granularity
+     *            length of the buckets
+     * @param from
+     *            start of the range; the bucket it falls in is included
+     * @param to
+     *            end of the range; buckets starting at or after it are not
+     *            included
+     * @param recipe
+     *            name of the only recipe to include; null for every recipe
+     * @return a rollup for each recipe sold in each bucket, in order of bucket
+     *         and then recipe
+     * @throws IllegalArgumentException
+     *             if the range is empty, or covers more than `MAX_BUCKETS`
+     *             buckets
+     */
+    public List<SalesRollup> rollups ( final Granularity granularity, final Instant from, final Instant to,
+            final String recipe ) {
+        final Instant start = granularity.bucket( from );
+        if ( !start.isBefore( to ) ) {
+            throw new IllegalArgumentException( "from must be before to" );
+        }
+        if ( granularity.getUnit().between( start, to ) >= MAX_BUCKETS ) {
+            throw new IllegalArgumentException( "at most " + MAX_BUCKETS + " buckets can be fetched at once" );
+        }
+
+        final Map<Key, SalesRollup> rollups = new LinkedHashMap<Key, SalesRollup>();
+        final List<SalesRollup> unwritten = new ArrayList<SalesRollup>();
+        flushLock.readLock().lock();
+        try {
+            // copied, so that what is returned is never written back
+            rollupRepository.findBetween( granularity, start, to, recipe )
+                    .forEach( stored -> merge( rollups, stored ) );
+            synchronized ( this ) {
+                pending.rollups.values().forEach( rollup -> unwritten.add( copy( rollup ) ) );
+            }
+        }
+        finally {
+            flushLock.readLock().unlock();
+        }
+        for ( final SalesRollup rollup : unwritten ) {
+            if ( granularity == rollup.getGranularity() && !rollup.getBucket().isBefore( start )
+                    && rollup.getBucket().isBefore( to )
+                    && ( null == recipe || recipe.equals( rollup.getRecipe() ) ) ) {
+                merge( rollups, rollup );
+            }
+        }
+
+        final List<SalesRollup> sorted = new ArrayList<SalesRollup>( rollups.values() );
+        sorted.sort( Comparator.comparing( SalesRollup::getBucket ).thenComparing( SalesRollup::getRecipe ) );
+        return sorted;
+    }
+
+    /**
+     * Writes the rollups of every sale committed since they were last written,
+     * in a single transaction. If that fails, they are kept in memory to be
+     * written next time.
+     *
+     * @return the number of sales rolled up
+     */
+    public int flush () {
+        flushLock.writeLock().lock();
+        try {
+            final Batch batch = drain();
+            if ( batch.sales.isEmpty() ) {
+                return 0;
+            }
+            try {
+                new TransactionTemplate( transactionManager ).execute( status -> {
+                    batch.rollups.values().forEach( this::write );
+                    final int count = batch.sales.size();
+                    for ( int i = 0; i < count; i += MARK_CHUNK ) {
+                        saleRepository.markRolledUp( batch.sales.subList( i, Math.min( i + MARK_CHUNK, count ) ) );
+                    }
+                    return null;
+                } );
+            }
+            catch ( final RuntimeException e ) {
+                restore( batch );
+                throw e;
+            }
+            return batch.sales.size();
+        }
+        finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs `flush()` from the background task, where an exception would stop
+     * any further flushes from being scheduled.
+     */
+    private void flushQuietly () {
+        try {
+            flush();
+        }
+        catch ( final RuntimeException e ) {
+            LOGGER.log( Level.WARNING, "Could not write the sales rollups", e );
+        }
+    }
+
+    /**
+     * Adds a rollup held in memory to the one stored for the same recipe and
+     * bucket, creating it if there is none yet.
+     *
+     * @param rollup
+     *            the rollup held in memory
+     */
+    private void write ( final SalesRollup rollup ) {
+        final SalesRollup stored = rollupRepository.findByGranularityAndBucketAndRecipe( rollup.getGranularity(),
+                rollup.getBucket(), rollup.getRecipe() );
+        if ( null == stored ) {
+            rollupRepository.save( copy( rollup ) );
+        }
+        else {
+            stored.add( rollup );
+        }
+    }
+
+    /**
+     * Adds committed sales to the rollups held in memory.
+     *
+     * @param sales
+     *            the sales
+     */
+    private synchronized void add ( final List<Sale> sales ) {
+        for ( final Sale sale : sales ) {
+            for ( final Granularity granularity : Granularity.values() ) {
+                final Key key = new Key( granularity, granularity.bucket( sale.getSoldAt() ), sale.getRecipe() );
+                pending.rollups.computeIfAbsent( key, k -> new SalesRollup( k.granularity, k.bucket, k.recipe ) )
+                        .add( sale );
+            }
+            pending.sales.add( (Long) sale.getId() );
+        }
+    }
+
+    /**
+     * Takes the rollups held in memory, leaving none.
+     *
+     * @return the rollups taken
+     */
+    private synchronized Batch drain () {
+        final Batch drained = pending;
+        pending = new Batch();
+        return drained;
+    }
+
+    /**
+     * Puts rollups that could not be written back in memory, along with those
+     * added since they were taken.
+     *
+     * @param batch
+     *            the rollups that could not be written
+     */
+    private synchronized void restore ( final Batch batch ) {
+        pending.rollups.forEach( ( key, rollup ) -> merge( batch.rollups, key, rollup ) );
+        batch.sales.addAll( pending.sales );
+        pending = batch;
+    }
+
+    /**
+     * Adds a copy of a rollup to those collected, by recipe and bucket.
+     *
+     * @param rollups
+     *            the rollups collected
+     * @param rollup
+     *            the rollup to add
+     */
+    private static void merge ( final Map<Key, SalesRollup> rollups, final SalesRollup rollup ) {
+        merge( rollups, new Key( rollup.getGranularity(), rollup.getBucket(), rollup.getRecipe() ), rollup );
+    }
+
+    /**
+     * Adds a copy of a rollup to those collected.
+     *
+     * @param rollups
+     *            the rollups collected
+     * @param key
+     *            recipe and bucket of the rollup
+     * @param rollup
+     *            the rollup to add
+     */
+    private static void merge ( final Map<Key, SalesRollup> rollups, final Key key, final SalesRollup rollup ) {
+        final SalesRollup collected = rollups.get( key );
+        if ( null == collected ) {
+            rollups.put( key, copy( rollup ) );
+        }
+        else {
+            collected.add( rollup );
+        }
+    }
+
+    /**
+     * Copies a rollup into a new one that has not been saved.
+     *
+     * @param rollup
+     *            the rollup
+     * @return the copy
+     */
+    private static SalesRollup copy ( final SalesRollup rollup ) {
+        final SalesRollup copy = new SalesRollup( rollup.getGranularity(), rollup.getBucket(), rollup.getRecipe() );
+        copy.add( rollup );
+        return copy;
+    }
+
+    /**
+     * Runs an action once the current transaction commits, or straight away
+     * if there is none.
+     *
+     * @param action
+     *            the action
+     */
+    private void afterCommit ( final Runnable action ) {
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit () {
+                action.run();
+            }
+        } );
+    }
+
+    /**
+     * Rollups of sales that have not been written to the database, and the
+     * sales that went into them.
+     */
+    private static final class Batch {
+
+        /** Rollups, by recipe and bucket */
+        private final Map<Key, SalesRollup> rollups = new HashMap<Key, SalesRollup>();
+
+        /** Ids of the sales that went into them */
+        private final List<Long>            sales   = new ArrayList<Long>();
+    }
+
+    /**
+     * Recipe and bucket of a rollup.
+     */
+    private static final class Key {
+
+        /** Length of the bucket */
+        private final Granularity granularity;
+
+        /** Start of the bucket */
+        private final Instant     bucket;
+
+        /** Name of the recipe */
+        private final String      recipe;
+
+        /**
+         * Creates a Key.
+         *
+         * @param granularity
+         *            length of the bucket
+         * @param bucket
+         *            start of the bucket
+         * @param recipe
+         *            name of the recipe
+         */
+        private Key ( final Granularity granularity, final Instant bucket, final String recipe ) {
+            this.granularity = granularity;
+            this.bucket = bucket;
+            this.recipe = recipe;
+        }
+
+        @Override
+        public boolean equals ( final Object obj ) {
+            if ( !( obj instanceof Key ) ) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return granularity == other.granularity && bucket.equals( other.bucket ) && recipe.equals( other.recipe );
+        }
+
+        @Override
+        public int hashCode () {
+            return Objects.hash( granularity, bucket, recipe );
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package edu.ncsu.csc.CoffeeMaker.api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import edu.ncsu.csc.CoffeeMaker.forms.RestockForm;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryReservations;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * Tests the stream of changes. Not transactional, as changes are only sent
+ * once they have been committed.
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+@AutoConfigureMockMvc
+public class APIChangeTest {
+
+    private MockMvc               mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private RecipeService         service;
+
+    @Autowired
+    private InventoryService      inventoryService;
+
+    @Autowired
+    private InventoryReservations reservations;
+
+    @Before
+    public void setup () {
+        mvc = MockMvcBuilders.webAppContextSetup( context ).build();
+    }
+
+    /**
+     * Waits for the provided text to be sent on an event stream.
+     *
+     * @param response
+     *            the event stream
+     * @param text
+     *            the text
+     * @return everything sent so far
+     */
+    private String await ( final MockHttpServletResponse response, final String text ) throws Exception {
+        final long deadline = System.currentTimeMillis() + 5000;
+        String sent = response.getContentAsString();
+        while ( !sent.contains( text ) && System.currentTimeMillis() < deadline ) {
+            Thread.sleep( 20 );
+            sent = response.getContentAsString();
+        }
+        return sent;
+    }
+
+    @Test
+    public void testRecipeChangesAreSent () throws Exception {
+        final MockHttpServletResponse response = mvc.perform( get( "/api/v1/changes" ) )
+                .andExpect( request().asyncStarted() ).andReturn().getResponse();
+
+        final Recipe recipe = new Recipe();
+        recipe.setName( "Streamed Coffee" );
+        recipe.setPrice( 50 );
+        recipe.addIngredient( new Ingredient( "Coffee", 3 ) );
+        service.save( recipe );
+        try {
+            Assert.assertTrue( await( response, "\"name\":\"Streamed Coffee\",\"removed\":false" )
+                    .contains( "event:recipe" ) );
+        }
+        finally {
+            service.delete( recipe );
+        }
+        Assert.assertTrue( await( response, "\"name\":\"Streamed Coffee\",\"removed\":true" )
+                .contains( "\"removed\":true" ) );
+    }
+
+    @Test
+    public void testRestockSendsTheCommittedAmount () throws Exception {
+        final String name = "Streamed" + System.nanoTime();
+        final Inventory inventory = inventoryService.getInventory();
+        inventory.addIngredient( new Ingredient( name, 4 ) );
+        inventoryService.save( inventory );
+
+        final MockHttpServletResponse response = mvc.perform( get( "/api/v1/changes" ) )
+                .andExpect( request().asyncStarted() ).andReturn().getResponse();
+        /* Restocking drops the ledger, so the amount has to come from what was written */
+        inventoryService.restock( Collections.singletonList( new RestockForm( name, 6, null ) ) );
+        Assert.assertTrue( await( response, "\"name\":\"" + name + "\",\"amount\":10" )
+                .contains( "\"name\":\"" + name + "\",\"amount\":10" ) );
+    }
+
+    @Test
+    public void testPurchaseSendsTheStoredAmount () throws Exception {
+        final String name = "Streamed" + System.nanoTime();
+        final Inventory inventory = inventoryService.getInventory();
+        inventory.addIngredient( new Ingredient( name, 10 ) );
+        inventoryService.save( inventory );
+        final Recipe recipe = new Recipe();
+        recipe.setName( name );
+        recipe.setPrice( 50 );
+        recipe.addIngredient( new Ingredient( name, 1 ) );
+
+        /* The hold comes off of the ledger, but not off of what is stored */
+        final InventoryReservations.Hold hold = inventoryService.reserve( recipe, 60000 );
+        try {
+            final MockHttpServletResponse response = mvc.perform( get( "/api/v1/changes" ) )
+                    .andExpect( request().asyncStarted() ).andReturn().getResponse();
+            Assert.assertTrue( inventoryService.consume( recipe ) );
+            Assert.assertTrue( await( response, "\"name\":\"" + name + "\",\"amount\":9" )
+                    .contains( "\"name\":\"" + name + "\",\"amount\":9" ) );
+
+            final JsonObject stored = JsonParser
+                    .parseString( mvc.perform( get( "/api/v1/inventory" ) ).andReturn().getResponse()
+                            .getContentAsString() )
+                    .getAsJsonObject();
+            Integer amount = null;
+            for ( final JsonElement ingredient : stored.getAsJsonArray( "ingInventory" ) ) {
+                if ( name.equals( ingredient.getAsJsonObject().get( "name" ).getAsString() ) ) {
+                    amount = ingredient.getAsJsonObject().get( "amount" ).getAsInt();
+                }
+            }
+            Assert.assertEquals( "The amount sent is the one served", Integer.valueOf( 9 ), amount );
+        }
+        finally {
+            reservations.cancel( hold.getId() );
+        }
+    }
+
+}
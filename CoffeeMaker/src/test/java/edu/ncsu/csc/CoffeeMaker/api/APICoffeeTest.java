@@ -1,13 +1,16 @@
 package edu.ncsu.csc.CoffeeMaker.api;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.transaction.Transactional;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -21,9 +24,13 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import edu.ncsu.csc.CoffeeMaker.common.TestUtils;
+import edu.ncsu.csc.CoffeeMaker.forms.OrderForm;
+import edu.ncsu.csc.CoffeeMaker.forms.RestockForm;
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.models.Inventory;
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.AvailableRecipes;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientCatalog;
 import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
 import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
 
@@ -47,6 +54,12 @@ public class APICoffeeTest {
     @Autowired
     private InventoryService      iService;
 
+    @Autowired
+    private AvailableRecipes      available;
+
+    @Autowired
+    private IngredientCatalog     catalog;
+
     /**
      * Sets up the tests.
      */
@@ -121,4 +134,143 @@ public class APICoffeeTest {
 
     }
 
+    @Test
+    @Transactional
+    public void testPurchaseBatch () throws Exception {
+        /* Two cups take 6 of the 15 coffee */
+
+        final List<OrderForm> orders = new ArrayList<OrderForm>();
+        orders.add( new OrderForm( "Coffee", 60 ) );
+        orders.add( new OrderForm( "Coffee", 50 ) );
+
+        mvc.perform( post( "/api/v1/makecoffee/batch" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( orders ) ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$[0].message" ).value( "10" ) )
+                .andExpect( jsonPath( "$[1].message" ).value( "0" ) );
+
+        Assert.assertEquals( 9, (int) iService.getInventory().getAmountInInventory( "Coffee" ) );
+    }
+
+    @Test
+    @Transactional
+    public void testPurchaseBatchAllOrNothing () throws Exception {
+        /* Six cups need 18 coffee, but there is only 15 */
+
+        final List<OrderForm> orders = new ArrayList<OrderForm>();
+        for ( int i = 0; i < 6; i++ ) {
+            orders.add( new OrderForm( "Coffee", 50 ) );
+        }
+
+        mvc.perform( post( "/api/v1/makecoffee/batch" ).param( "mode", "ALL_OR_NOTHING" )
+                .contentType( MediaType.APPLICATION_JSON ).content( TestUtils.asJsonString( orders ) ) )
+                .andExpect( status().isConflict() ).andExpect( jsonPath( "$[0].status" ).value( "failed" ) )
+                .andExpect( jsonPath( "$[5].message" ).value( "Not enough inventory" ) );
+
+        Assert.assertEquals( 15, (int) iService.getInventory().getAmountInInventory( "Coffee" ) );
+
+        /* An order that is not paid for cancels the whole batch */
+        orders.clear();
+        orders.add( new OrderForm( "Coffee", 50 ) );
+        orders.add( new OrderForm( "Coffee", 10 ) );
+
+        mvc.perform( post( "/api/v1/makecoffee/batch" ).param( "mode", "ALL_OR_NOTHING" )
+                .contentType( MediaType.APPLICATION_JSON ).content( TestUtils.asJsonString( orders ) ) )
+                .andExpect( status().isConflict() ).andExpect( jsonPath( "$[0].message" ).value( "Batch cancelled" ) )
+                .andExpect( jsonPath( "$[1].message" ).value( "Not enough money paid" ) );
+    }
+
+    @Test
+    @Transactional
+    public void testPurchaseBatchBestEffort () throws Exception {
+        /* Six cups need 18 coffee; the first five can be made */
+
+        final List<OrderForm> orders = new ArrayList<OrderForm>();
+        for ( int i = 0; i < 6; i++ ) {
+            orders.add( new OrderForm( "Coffee", 50 ) );
+        }
+
+        mvc.perform( post( "/api/v1/makecoffee/batch" ).param( "mode", "BEST_EFFORT" )
+                .contentType( MediaType.APPLICATION_JSON ).content( TestUtils.asJsonString( orders ) ) )
+                .andExpect( status().isOk() ).andExpect( jsonPath( "$[4].status" ).value( "success" ) )
+                .andExpect( jsonPath( "$[5].status" ).value( "failed" ) )
+                .andExpect( jsonPath( "$[5].message" ).value( "Not enough inventory" ) );
+
+        Assert.assertEquals( 0, (int) iService.getInventory().getAmountInInventory( "Coffee" ) );
+    }
+
+    @Test
+    @Transactional
+    public void testAvailableRecipes () throws Exception {
+        /* 15 coffee at 3 a cup allows five cups; making one leaves four */
+
+        mvc.perform( get( "/api/v1/recipes/available" ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$[?(@.name == 'Coffee')].cups" ).value( 5 ) );
+        Assert.assertSame( "Nothing has moved, so the published list is reused", available.available(),
+                available.available() );
+
+        mvc.perform( post( "/api/v1/makecoffee/Coffee" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( 50 ) ) ).andExpect( status().isOk() );
+
+        mvc.perform( get( "/api/v1/recipes/available" ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$[?(@.name == 'Coffee')].cups" ).value( 4 ) );
+
+        final Inventory ivt = iService.getInventory();
+        ivt.setAmountInInventory( "Milk", 0 );
+        iService.save( ivt );
+
+        mvc.perform( get( "/api/v1/recipes/available" ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$[?(@.name == 'Coffee')]" ).isEmpty() );
+    }
+
+    @Test
+    @Transactional
+    public void testRestock () throws Exception {
+        /* Lines for the same ingredient add up; a set replaces what is there */
+
+        final List<RestockForm> delivery = new ArrayList<RestockForm>();
+        delivery.add( new RestockForm( "Coffee", 5, null ) );
+        delivery.add( new RestockForm( "Milk", null, 2 ) );
+        delivery.add( new RestockForm( "Coffee", 1, null ) );
+
+        mvc.perform( post( "/api/v1/inventory/restock" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( delivery ) ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.message" ).value( "2 ingredients restocked" ) );
+
+        final Inventory ivt = iService.getInventory();
+        Assert.assertEquals( 21, (int) ivt.getAmountInInventory( "Coffee" ) );
+        Assert.assertEquals( 2, (int) ivt.getAmountInInventory( "Milk" ) );
+        Assert.assertEquals( 15, (int) ivt.getAmountInInventory( "Sugar" ) );
+    }
+
+    @Test
+    @Transactional
+    public void testRestockInvalid () throws Exception {
+        final List<RestockForm> delivery = new ArrayList<RestockForm>();
+        delivery.add( new RestockForm( "Coffee", -5, null ) );
+        mvc.perform( post( "/api/v1/inventory/restock" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( delivery ) ) ).andExpect( status().isBadRequest() );
+
+        delivery.clear();
+        delivery.add( new RestockForm( "Coffee", 5, null ) );
+        delivery.add( new RestockForm( "Cinnamon", 5, null ) );
+        final int catalogued = catalog.size();
+        mvc.perform( post( "/api/v1/inventory/restock" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( delivery ) ) ).andExpect( status().isNotFound() )
+                .andExpect( jsonPath( "$.message" ).value( "No ingredient in the Inventory named Cinnamon" ) );
+        Assert.assertEquals( "Unknown names are not catalogued", catalogued, catalog.size() );
+        Assert.assertEquals( -1, catalog.find( "Cinnamon" ) );
+
+        delivery.clear();
+        delivery.add( new RestockForm( "Coffee", Integer.MAX_VALUE, null ) );
+        mvc.perform( post( "/api/v1/inventory/restock" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( delivery ) ) ).andExpect( status().isBadRequest() )
+                .andExpect( jsonPath( "$.message" ).value( "Restock of Coffee is too large" ) );
+
+        delivery.clear();
+        delivery.add( new RestockForm( "Coffee", 5, null ) );
+        delivery.add( new RestockForm( "Coffee", Integer.MAX_VALUE - 1, null ) );
+        mvc.perform( post( "/api/v1/inventory/restock" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( delivery ) ) ).andExpect( status().isBadRequest() );
+    }
+
 }
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import javax.transaction.Transactional;
@@ -23,7 +24,10 @@ import org.springframework.web.context.WebApplicationContext;
 
 import edu.ncsu.csc.CoffeeMaker.common.TestUtils;
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
 import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryMovements;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
 
 @RunWith ( SpringRunner.class )
 @SpringBootTest
@@ -42,6 +46,12 @@ public class APIIngredientTest {
     @Autowired
     private IngredientService     service;
 
+    @Autowired
+    private InventoryService      inventoryService;
+
+    @Autowired
+    private InventoryMovements    movements;
+
     /**
      * Sets up the tests. Need delete, put, get
      */
@@ -237,4 +247,24 @@ public class APIIngredientTest {
 
     }
 
+    @Test
+    public void testEditInventoryIngredientIsLogged () throws Exception {
+        /* Not rolled back, so that the edit commits and reaches the projection */
+        final String name = "Audited" + System.nanoTime();
+        final Inventory ivt = inventoryService.getInventory();
+        ivt.addIngredient( new Ingredient( name, 10 ) );
+        inventoryService.save( ivt );
+
+        /* The Inventory's own row, also managed through the IngredientService */
+        service.save( inventoryService.getInventory().findIngredientByName( name ) );
+
+        mvc.perform( put( "/api/v1/ingredients/" + name ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( new Ingredient( name, 7 ) ) ) ).andExpect( status().isOk() );
+
+        final int amount = inventoryService.getInventory().getAmountInInventory( name );
+        Assert.assertEquals( 7, amount );
+        Assert.assertEquals( amount, (int) movements.snapshot().getLevels().get( name ) );
+        Assert.assertEquals( amount, (int) movements.levels().get( name ) );
+    }
+
 }
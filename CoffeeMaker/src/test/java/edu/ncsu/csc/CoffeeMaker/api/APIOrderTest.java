@@ -0,0 +1,203 @@
+package edu.ncsu.csc.CoffeeMaker.api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.google.gson.JsonParser;
+
+import edu.ncsu.csc.CoffeeMaker.common.TestUtils;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientLocks;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.OrderPipeline;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * Tests orders made in the background. A single worker and a queue of one
+ * make it easy to fill the pipeline, and finished orders are only kept until
+ * the next order is placed.
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest ( properties = { "coffeemaker.orders.workers=1", "coffeemaker.orders.queue-capacity=1",
+        "coffeemaker.orders.retention-seconds=0" } )
+@AutoConfigureMockMvc
+public class APIOrderTest {
+
+    /**
+     * MockMvc uses Spring's testing framework to handle requests to the REST
+     * API
+     */
+    private MockMvc               mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private OrderPipeline         pipeline;
+
+    @Autowired
+    private RecipeService         recipeService;
+
+    @Autowired
+    private InventoryService      inventoryService;
+
+    @Autowired
+    private IngredientLocks       locks;
+
+    private String                recipe;
+
+    /**
+     * Sets up the tests.
+     */
+    @Before
+    public void setup () {
+        mvc = MockMvcBuilders.webAppContextSetup( context ).build();
+
+        final Inventory inventory = inventoryService.getInventory();
+        if ( null == inventory.findIngredientByName( "Coffee" ) ) {
+            inventory.addIngredient( new Ingredient( "Coffee", 0 ) );
+        }
+        inventory.setAmountInInventory( "Coffee", 100 );
+        inventoryService.save( inventory );
+
+        recipe = "Pipelined" + System.nanoTime();
+        final Recipe r = new Recipe();
+        r.setName( recipe );
+        r.setPrice( 50 );
+        r.addIngredient( new Ingredient( "Coffee", 1 ) );
+        recipeService.save( r );
+    }
+
+    /**
+     * Places an order in the background.
+     *
+     * @return the response's Location
+     */
+    private String order () throws Exception {
+        return mvc
+                .perform( post( "/api/v1/makecoffee/" + recipe ).param( "async", "true" )
+                        .contentType( MediaType.APPLICATION_JSON ).content( TestUtils.asJsonString( 60 ) ) )
+                .andExpect( status().isAccepted() ).andExpect( jsonPath( "$.status" ).value( "QUEUED" ) )
+                .andReturn().getResponse().getHeader( HttpHeaders.LOCATION );
+    }
+
+    /**
+     * Polls an order until it has finished.
+     *
+     * @param location
+     *            where the order is
+     * @return the last response's body
+     */
+    private String poll ( final String location ) throws Exception {
+        String body = "";
+        for ( int i = 0; i < 100; i++ ) {
+            body = mvc.perform( get( location ) ).andExpect( status().isOk() ).andReturn().getResponse()
+                    .getContentAsString();
+            final String status = JsonParser.parseString( body ).getAsJsonObject().get( "status" ).getAsString();
+            if ( "DONE".equals( status ) || "FAILED".equals( status ) ) {
+                break;
+            }
+            Thread.sleep( 50 );
+        }
+        return body;
+    }
+
+    @Test
+    public void testAsyncOrderIsMade () throws Exception {
+        final String location = order();
+        Assert.assertNotNull( location );
+        Assert.assertTrue( location.startsWith( "/api/v1/orders/" ) );
+
+        final String body = poll( location );
+        Assert.assertEquals( "DONE", JsonParser.parseString( body ).getAsJsonObject().get( "status" ).getAsString() );
+        Assert.assertEquals( "The change due", "10",
+                JsonParser.parseString( body ).getAsJsonObject().get( "message" ).getAsString() );
+        Assert.assertEquals( 99, (int) inventoryService.getInventory().getAmountInInventory( "Coffee" ) );
+    }
+
+    @Test
+    public void testFullQueueIsTurnedAway () throws Exception {
+        /* The only worker waits on the Coffee lock while it is held here */
+        final IngredientLocks.Held held = locks.lock( Collections.singleton( "Coffee" ) );
+        final String brewing;
+        final String queued;
+        try {
+            brewing = order();
+            final String id = brewing.substring( brewing.lastIndexOf( '/' ) + 1 );
+            for ( int i = 0; i < 100 && OrderPipeline.OrderStatus.QUEUED == pipeline.find( id ).getStatus(); i++ ) {
+                Thread.sleep( 20 );
+            }
+            queued = order();
+
+            mvc.perform( post( "/api/v1/makecoffee/" + recipe ).param( "async", "true" )
+                    .contentType( MediaType.APPLICATION_JSON ).content( TestUtils.asJsonString( 60 ) ) )
+                    .andExpect( status().isServiceUnavailable() ).andExpect( header().string( "Retry-After", "1" ) );
+        }
+        finally {
+            held.release();
+        }
+
+        Assert.assertTrue( poll( brewing ).contains( "\"DONE\"" ) );
+        Assert.assertTrue( "Orders accepted before the queue filled are still made",
+                poll( queued ).contains( "\"DONE\"" ) );
+    }
+
+    @Test
+    public void testAsyncOrderIsAcceptedThenFinished () throws Exception {
+        /* The recipe is only looked up by the worker, so a missing one still gets an order ID */
+        final String body = mvc
+                .perform( post( "/api/v1/makecoffee/NoSuchCoffee" ).param( "async", "true" )
+                        .contentType( MediaType.APPLICATION_JSON ).content( TestUtils.asJsonString( 50 ) ) )
+                .andExpect( status().isAccepted() ).andExpect( header().exists( "Location" ) )
+                .andExpect( jsonPath( "$.recipe" ).value( "NoSuchCoffee" ) ).andReturn().getResponse()
+                .getContentAsString();
+        final String id = JsonParser.parseString( body ).getAsJsonObject().get( "id" ).getAsString();
+
+        for ( int i = 0; i < 100 && OrderPipeline.OrderStatus.FAILED != pipeline.find( id ).getStatus(); i++ ) {
+            Thread.sleep( 50 );
+        }
+        Assert.assertEquals( OrderPipeline.OrderStatus.FAILED, pipeline.find( id ).getStatus() );
+
+        mvc.perform( get( "/api/v1/orders/" + id ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.status" ).value( "FAILED" ) )
+                .andExpect( jsonPath( "$.message" ).value( "No recipe selected" ) );
+    }
+
+    @Test
+    public void testFinishedOrdersAreForgotten () throws Exception {
+        final String first = order();
+        Assert.assertTrue( poll( first ).contains( "\"DONE\"" ) );
+        Thread.sleep( 10 );
+
+        final String second = order();
+        mvc.perform( get( first ) ).andExpect( status().isNotFound() );
+        Assert.assertTrue( "Orders still being made are kept", poll( second ).contains( "\"DONE\"" ) );
+    }
+
+    @Test
+    public void testUnknownOrder () throws Exception {
+        mvc.perform( get( "/api/v1/orders/not-an-order" ) ).andExpect( status().isNotFound() );
+    }
+
+}
@@ -1,8 +1,15 @@
 package edu.ncsu.csc.CoffeeMaker.api;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -10,6 +17,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -119,6 +127,27 @@ public class APIRecipeTest {
         Assert.assertEquals( "There should only one recipe in the CoffeeMaker", 1, service.findAll().size() );
     }
 
+    @Test
+    @Transactional
+    public void testReservedRecipeName () throws Exception {
+
+        /* /recipes/available would never reach a recipe named Available */
+
+        final Recipe r = createRecipe( " Available ", 50, 3, 1, 1, 0 );
+        mvc.perform( post( "/api/v1/recipes" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( r ) ) ).andExpect( status().isBadRequest() );
+
+        Assert.assertNull( service.findByName( "Available" ) );
+
+        /* Nor would /makecoffee/batch make a recipe named Batch */
+
+        final Recipe batch = createRecipe( "Batch", 50, 3, 1, 1, 0 );
+        mvc.perform( post( "/api/v1/recipes" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( batch ) ) ).andExpect( status().isBadRequest() );
+
+        Assert.assertNull( service.findByName( "Batch" ) );
+    }
+
     @Test
     @Transactional
     public void testAddRecipe15 () throws Exception {
@@ -145,6 +174,81 @@ public class APIRecipeTest {
         Assert.assertEquals( "Creating a fourth recipe should not get saved", 3, service.count() );
     }
 
+    @Test
+    @Transactional
+    public void testRecipesNotModified () throws Exception {
+
+        /* Tests that the recipe list is only sent again once it has changed */
+
+        final String etag = mvc.perform( get( "/api/v1/recipes" ) ).andExpect( status().isOk() )
+                .andExpect( header().exists( HttpHeaders.ETAG ) ).andReturn().getResponse()
+                .getHeader( HttpHeaders.ETAG );
+
+        mvc.perform( get( "/api/v1/recipes" ).header( HttpHeaders.IF_NONE_MATCH, etag ) )
+                .andExpect( status().isNotModified() );
+
+        service.save( createRecipe( "Coffee", 50, 3, 1, 1, 0 ) );
+
+        final String changed = mvc.perform( get( "/api/v1/recipes" ).header( HttpHeaders.IF_NONE_MATCH, etag ) )
+                .andExpect( status().isOk() ).andReturn().getResponse().getHeader( HttpHeaders.ETAG );
+        Assert.assertNotEquals( etag, changed );
+    }
+
+    @Test
+    @Transactional
+    public void testRecipesGzipped () throws Exception {
+
+        /* Tests that the pre-rendered recipe list is sent gzipped when asked for */
+
+        service.deleteAll();
+        service.save( createRecipe( "Coffee", 50, 3, 1, 1, 0 ) );
+
+        final byte[] body = mvc.perform( get( "/api/v1/recipes" ).header( HttpHeaders.ACCEPT_ENCODING, "gzip" ) )
+                .andExpect( status().isOk() ).andExpect( header().string( HttpHeaders.CONTENT_ENCODING, "gzip" ) )
+                .andReturn().getResponse().getContentAsByteArray();
+
+        final String json;
+        try ( GZIPInputStream in = new GZIPInputStream( new ByteArrayInputStream( body ) ) ) {
+            json = new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+        }
+        Assert.assertTrue( json.startsWith( "[" ) );
+        Assert.assertTrue( json.contains( "\"name\":\"Coffee\"" ) );
+
+        mvc.perform( get( "/api/v1/recipes/Coffee" ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.price" ).value( 50 ) );
+    }
+
+    @Test
+    @Transactional
+    public void testRecipesPaged () throws Exception {
+
+        /* Tests that recipes can be listed a page at a time, by price */
+
+        service.deleteAll();
+        service.save( createRecipe( "Mocha", 75, 3, 1, 1, 2 ) );
+        service.save( createRecipe( "Coffee", 50, 3, 1, 1, 0 ) );
+        service.save( createRecipe( "Latte", 60, 3, 2, 1, 0 ) );
+
+        final String next = mvc.perform( get( "/api/v1/recipes?sort=price&limit=2" ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.recipes.length()" ).value( 2 ) )
+                .andExpect( jsonPath( "$.recipes[0].name" ).value( "Coffee" ) )
+                .andExpect( jsonPath( "$.recipes[1].name" ).value( "Latte" ) )
+                .andExpect( jsonPath( "$.recipes[1].ingredients.length()" ).value( 4 ) ).andReturn().getResponse()
+                .getContentAsString().replaceAll( ".*\"next\":\"([^\"]+)\".*", "$1" );
+
+        mvc.perform( get( "/api/v1/recipes?sort=price&limit=2&after=" + next ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.recipes.length()" ).value( 1 ) )
+                .andExpect( jsonPath( "$.recipes[0].name" ).value( "Mocha" ) )
+                .andExpect( jsonPath( "$.next" ).doesNotExist() );
+
+        mvc.perform( get( "/api/v1/recipes?minPrice=55&maxPrice=80" ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.recipes.length()" ).value( 2 ) )
+                .andExpect( jsonPath( "$.recipes[0].name" ).value( "Latte" ) );
+
+        mvc.perform( get( "/api/v1/recipes?sort=name&after=" + next ) ).andExpect( status().isBadRequest() );
+        mvc.perform( get( "/api/v1/recipes?sort=calories" ) ).andExpect( status().isBadRequest() );
+    }
+
     // Allows fast creation of recipes for tests
     private Recipe createRecipe ( final String name, final Integer price, final Integer coffee, final Integer milk,
             final Integer sugar, final Integer chocolate ) {
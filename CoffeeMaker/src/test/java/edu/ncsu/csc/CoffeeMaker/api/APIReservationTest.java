@@ -0,0 +1,192 @@
+package edu.ncsu.csc.CoffeeMaker.api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.google.gson.JsonParser;
+
+import edu.ncsu.csc.CoffeeMaker.common.TestUtils;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryLedger;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryReservations;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+@AutoConfigureMockMvc
+public class APIReservationTest {
+
+    /**
+     * MockMvc uses Spring's testing framework to handle requests to the REST
+     * API
+     */
+    private MockMvc               mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private RecipeService         service;
+
+    @Autowired
+    private InventoryService      iService;
+
+    @Autowired
+    private InventoryReservations reservations;
+
+    @Autowired
+    private InventoryLedger       ledger;
+
+    /** Reservations made by a test, cancelled afterwards */
+    private final List<String>    made = new ArrayList<String>();
+
+    /**
+     * Sets up the tests.
+     */
+    @Before
+    public void setup () {
+        mvc = MockMvcBuilders.webAppContextSetup( context ).build();
+
+        final Inventory ivt = iService.getInventory();
+        final ArrayList<Ingredient> ingredients = new ArrayList<Ingredient>();
+        ingredients.add( new Ingredient( "Coffee", 15 ) );
+        ingredients.add( new Ingredient( "Milk", 15 ) );
+        ivt.addIngredients( ingredients );
+        iService.save( ivt );
+
+        final Recipe recipe = new Recipe();
+        recipe.setName( "Coffee" );
+        recipe.setPrice( 50 );
+        recipe.addIngredient( new Ingredient( "Coffee", 3 ) );
+        recipe.addIngredient( new Ingredient( "Milk", 1 ) );
+        service.save( recipe );
+    }
+
+    /**
+     * Cancels anything the test left reserved; reservations are not rolled
+     * back with the test's transaction.
+     */
+    @After
+    public void tearDown () {
+        made.forEach( reservations::cancel );
+    }
+
+    /**
+     * Reserves a cup of coffee through the API.
+     *
+     * @return ID of the reservation
+     */
+    private String reserve () throws Exception {
+        final String body = mvc.perform( post( "/api/v1/reservations/Coffee" ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.recipe" ).value( "Coffee" ) ).andReturn().getResponse().getContentAsString();
+        final String id = JsonParser.parseString( body ).getAsJsonObject().get( "id" ).getAsString();
+        made.add( id );
+        return id;
+    }
+
+    @Test
+    @Transactional
+    public void testReserveAndCommit () throws Exception {
+        final int coffee = iService.getInventory().getAmountInInventory( "Coffee" );
+        final String id = reserve();
+
+        Assert.assertEquals( "A reservation does not change the stored Inventory", coffee,
+                (int) iService.getInventory().getAmountInInventory( "Coffee" ) );
+
+        mvc.perform( post( "/api/v1/reservations/" + id + "/commit" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( 40 ) ) ).andExpect( status().isConflict() )
+                .andExpect( jsonPath( "$.message" ).value( "Not enough money paid" ) );
+
+        mvc.perform( post( "/api/v1/reservations/" + id + "/commit" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( 60 ) ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.message" ).value( "10" ) );
+
+        Assert.assertEquals( coffee - 3, (int) iService.getInventory().getAmountInInventory( "Coffee" ) );
+
+        mvc.perform( post( "/api/v1/reservations/" + id + "/commit" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( 60 ) ) ).andExpect( status().isNotFound() );
+    }
+
+    @Test
+    @Transactional
+    public void testHeldIngredientsCannotBeBought () throws Exception {
+        final Inventory ivt = iService.getInventory();
+        final int cups = Math.min( ivt.getAmountInInventory( "Coffee" ) / 3, ivt.getAmountInInventory( "Milk" ) );
+        for ( int i = 0; i < cups; i++ ) {
+            reserve();
+        }
+
+        mvc.perform( post( "/api/v1/reservations/Coffee" ) ).andExpect( status().isConflict() )
+                .andExpect( jsonPath( "$.message" ).value( "Not enough inventory" ) );
+        mvc.perform( post( "/api/v1/makecoffee/Coffee" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( 50 ) ) ).andExpect( status().isConflict() )
+                .andExpect( jsonPath( "$.message" ).value( "Not enough inventory" ) );
+
+        /* Cancelling one frees up enough for a purchase */
+        mvc.perform( delete( "/api/v1/reservations/" + made.get( 0 ) ) ).andExpect( status().isOk() );
+        mvc.perform( post( "/api/v1/makecoffee/Coffee" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( 50 ) ) ).andExpect( status().isOk() );
+    }
+
+    @Test
+    @Transactional
+    public void testExpiredReservation () throws Exception {
+        final String body = mvc.perform( post( "/api/v1/reservations/Coffee" ).param( "ttl", "1" ) )
+                .andExpect( status().isOk() ).andReturn().getResponse().getContentAsString();
+        final String id = JsonParser.parseString( body ).getAsJsonObject().get( "id" ).getAsString();
+        made.add( id );
+
+        Thread.sleep( 1100 );
+
+        mvc.perform( post( "/api/v1/reservations/" + id + "/commit" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( 50 ) ) ).andExpect( status().isNotFound() );
+        mvc.perform( delete( "/api/v1/reservations/" + id ) ).andExpect( status().isNotFound() );
+    }
+
+    @Test
+    @Transactional
+    public void testHeldIngredientsCountedOnceAfterReload () throws Exception {
+        final int coffee = iService.getInventory().getAmountInInventory( "Coffee" );
+        reserve();
+        Assert.assertEquals( coffee - 3, (int) ledger.getAmount( "Coffee" ) );
+
+        ledger.invalidate();
+        iService.levels();
+        Assert.assertEquals( "The hold is taken off of the reloaded ledger, and only once", coffee - 3,
+                (int) ledger.getAmount( "Coffee" ) );
+    }
+
+    @Test
+    @Transactional
+    public void testReservationTooLong () throws Exception {
+        mvc.perform( post( "/api/v1/reservations/Coffee" ).param( "ttl", String.valueOf( Long.MAX_VALUE ) ) )
+                .andExpect( status().isBadRequest() )
+                .andExpect( jsonPath( "$.message" ).value( "Reservations can last at most 3600 seconds" ) );
+        mvc.perform( post( "/api/v1/reservations/Coffee" ).param( "ttl", "0" ) ).andExpect( status().isBadRequest() );
+    }
+
+}
@@ -0,0 +1,118 @@
+package edu.ncsu.csc.CoffeeMaker.api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import edu.ncsu.csc.CoffeeMaker.common.TestUtils;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.models.SalesRollup;
+import edu.ncsu.csc.CoffeeMaker.models.SalesRollup.Granularity;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+import edu.ncsu.csc.CoffeeMaker.services.SalesHistory;
+
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+@AutoConfigureMockMvc
+public class APISalesTest {
+
+    /**
+     * MockMvc uses Spring's testing framework to handle requests to the REST
+     * API
+     */
+    private MockMvc               mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private RecipeService         recipeService;
+
+    @Autowired
+    private InventoryService      inventoryService;
+
+    @Autowired
+    private SalesHistory          sales;
+
+    /**
+     * Sets up the tests.
+     */
+    @Before
+    public void setup () {
+        mvc = MockMvcBuilders.webAppContextSetup( context ).build();
+
+        final Inventory ivt = inventoryService.getInventory();
+        final List<Ingredient> stock = new ArrayList<Ingredient>();
+        stock.add( new Ingredient( "Coffee", 15 ) );
+        stock.add( new Ingredient( "Milk", 15 ) );
+        ivt.addIngredients( stock );
+        inventoryService.save( ivt );
+    }
+
+    @Test
+    public void testSalesAreRolledUp () throws Exception {
+        /* Not rolled back, so the purchases commit; a new recipe keeps other sales out */
+        final String name = "Rollup" + System.nanoTime();
+        final Recipe recipe = new Recipe();
+        recipe.setName( name );
+        recipe.setPrice( 50 );
+        recipe.addIngredient( new Ingredient( "Coffee", 3 ) );
+        recipe.addIngredient( new Ingredient( "Milk", 1 ) );
+        recipeService.save( recipe );
+
+        for ( int i = 0; i < 2; i++ ) {
+            mvc.perform( post( "/api/v1/makecoffee/" + name ).contentType( MediaType.APPLICATION_JSON )
+                    .content( TestUtils.asJsonString( 60 ) ) ).andExpect( status().isOk() );
+        }
+
+        /* Sales still held in memory are reported, and are not counted again once written */
+        for ( int flushed = 0; flushed < 2; flushed++ ) {
+            for ( final Granularity granularity : Granularity.values() ) {
+                final List<SalesRollup> rollups = sales.rollups( granularity,
+                        Instant.now().minus( 1, ChronoUnit.DAYS ), Instant.now().plus( 1, ChronoUnit.DAYS ), name );
+                Assert.assertEquals( 2, rollups.stream().mapToLong( SalesRollup::getCount ).sum() );
+                Assert.assertEquals( 100, rollups.stream().mapToLong( SalesRollup::getRevenue ).sum() );
+                Assert.assertEquals( 6,
+                        rollups.stream().mapToLong( rollup -> rollup.getIngredients().get( "Coffee" ) ).sum() );
+            }
+            sales.flush();
+        }
+
+        mvc.perform( get( "/api/v1/sales" ).param( "granularity", "MINUTE" ).param( "recipe", name ) )
+                .andExpect( status().isOk() ).andExpect( jsonPath( "$[0].recipe" ).value( name ) );
+
+        recipeService.delete( recipe );
+    }
+
+    @Test
+    public void testInvalidRange () throws Exception {
+        mvc.perform( get( "/api/v1/sales" ).param( "from", "2020-01-02T00:00:00Z" ).param( "to",
+                "2020-01-01T00:00:00Z" ) ).andExpect( status().isBadRequest() );
+
+        mvc.perform( get( "/api/v1/sales" ).param( "granularity", "MINUTE" ).param( "from", "2000-01-01T00:00:00Z" ) )
+                .andExpect( status().isBadRequest() );
+    }
+
+}
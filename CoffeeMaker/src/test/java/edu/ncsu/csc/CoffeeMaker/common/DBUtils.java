@@ -3,6 +3,7 @@ package edu.ncsu.csc.CoffeeMaker.common;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 
 import javax.sql.DataSource;
@@ -18,6 +19,12 @@ public class DBUtils {
             final DatabaseMetaData metaData = conn.getMetaData();
             String dbName = metaData.getURL();
 
+            /* The h2 profile runs on an embedded H2 database instead */
+            if ( dbName.startsWith( "jdbc:h2:" ) ) {
+                resetH2( conn );
+                return;
+            }
+
             /*
              * DB URL looks something like
              * `jdbc:mysql://localhost:3306/CoffeeMaker?
@@ -57,4 +64,31 @@ public class DBUtils {
         }
     }
 
+    /**
+     * Empties every table of the embedded H2 database used by the h2 profile.
+     * IDs come from a real sequence there rather than a table, so nothing
+     * needs to be skipped.
+     *
+     * @param conn
+     *            connection to the database
+     * @throws SQLException
+     *             if a table cannot be emptied
+     */
+    static private void resetH2 ( final Connection conn ) throws SQLException {
+        final ResultSet tables = conn.getMetaData().getTables( null, conn.getSchema(), null,
+                new String[] { "TABLE" } );
+
+        try ( Statement st = conn.createStatement(); ) {
+
+            st.executeUpdate( "SET REFERENTIAL_INTEGRITY FALSE" );
+
+            while ( tables.next() ) {
+                st.executeUpdate( "TRUNCATE TABLE " + tables.getString( "TABLE_NAME" ) );
+            }
+
+            st.executeUpdate( "SET REFERENTIAL_INTEGRITY TRUE" );
+
+        }
+    }
+
 }
@@ -0,0 +1,61 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManagerFactory;
+import javax.transaction.Transactional;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+
+/**
+ * Checks that saving many ingredients at once takes IDs a block at a time and
+ * sends the inserts in batches, rather than one round trip per row.
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+public class IngredientBatchTest {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private IngredientService    ingredientService;
+
+    @Test
+    @Transactional
+    public void testSaveAllIsBatched () {
+        final int rows = 120;
+        final List<Ingredient> ingredients = new ArrayList<Ingredient>( rows );
+        for ( int i = 0; i < rows; i++ ) {
+            ingredients.add( new Ingredient( "Batched " + i, i ) );
+        }
+
+        final Statistics statistics = entityManagerFactory.unwrap( SessionFactory.class ).getStatistics();
+        statistics.clear();
+        ingredientService.saveAll( ingredients );
+
+        final Set<Serializable> ids = new HashSet<Serializable>();
+        for ( final Ingredient ingredient : ingredients ) {
+            ids.add( ingredient.getId() );
+        }
+        Assert.assertEquals( "Every ingredient should get its own ID", rows, ids.size() );
+        Assert.assertEquals( rows, statistics.getEntityInsertCount() );
+        Assert.assertTrue( "Inserts and ID allocation should not take a statement per row, took "
+                + statistics.getPrepareStatementCount(), statistics.getPrepareStatementCount() < 20 );
+    }
+
+}
@@ -0,0 +1,179 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientCatalog;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientLocks;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeVector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class IngredientLocksTest {
+
+    private static final boolean[] MADE = { true };
+
+    private IngredientCatalog      catalog;
+
+    private SimpleMeterRegistry    registry;
+
+    private IngredientLocks        locks;
+
+    @Before
+    public void setup () {
+        catalog = new IngredientCatalog();
+        registry = new SimpleMeterRegistry();
+        locks = new IngredientLocks( 64, catalog, registry );
+    }
+
+    /**
+     * Compiles a recipe using the provided ingredients, one unit of each.
+     *
+     * @param names
+     *            names of the ingredients
+     * @return the compiled recipe
+     */
+    private RecipeVector recipe ( final String... names ) {
+        final Recipe recipe = new Recipe();
+        recipe.setName( String.join( "-", names ) );
+        for ( final String name : names ) {
+            recipe.addIngredient( new Ingredient( name, 1 ) );
+        }
+        return catalog.compile( recipe );
+    }
+
+    /**
+     * Starts a thread that locks the ingredients of a recipe and releases them
+     * again.
+     *
+     * @param vector
+     *            the recipe
+     * @return the thread
+     */
+    private Thread brew ( final RecipeVector vector ) {
+        final Thread t = new Thread( () -> locks.lock( new RecipeVector[] { vector }, MADE ).release() );
+        t.start();
+        return t;
+    }
+
+    @Test
+    public void testDisjointRecipesDoNotWait () throws Exception {
+        final IngredientLocks.Held latte = locks.lock( new RecipeVector[] { recipe( "Coffee", "Milk" ) }, MADE );
+        final Thread hotChocolate = brew( recipe( "Chocolate", "Sugar" ) );
+        hotChocolate.join( 5000 );
+        Assert.assertFalse( "A recipe sharing no ingredients should not wait", hotChocolate.isAlive() );
+        latte.release();
+
+        Assert.assertEquals( 0.0, registry.counter( "coffeemaker.inventory.lock.contended", "stripe", "2" ).count(),
+                0 );
+    }
+
+    @Test
+    public void testSharedIngredientWaits () throws Exception {
+        final IngredientLocks.Held latte = locks.lock( new RecipeVector[] { recipe( "Coffee", "Milk" ) }, MADE );
+        final Thread mocha = brew( recipe( "Chocolate", "Coffee" ) );
+        mocha.join( 200 );
+        Assert.assertTrue( "A recipe sharing an ingredient should wait for it", mocha.isAlive() );
+
+        latte.release();
+        mocha.join( 5000 );
+        Assert.assertFalse( mocha.isAlive() );
+        Assert.assertEquals( 1.0,
+                registry.counter( "coffeemaker.inventory.lock.contended", "stripe", "0" ).count(), 0 );
+    }
+
+    @Test
+    public void testOppositeOrdersDoNotDeadlock () throws Exception {
+        final RecipeVector milkFirst = recipe( "Milk", "Coffee" );
+        final RecipeVector coffeeFirst = recipe( "Coffee", "Milk" );
+        final Thread a = new Thread( () -> {
+            for ( int i = 0; i < 10000; i++ ) {
+                locks.lock( new RecipeVector[] { milkFirst }, MADE ).release();
+            }
+        } );
+        final Thread b = new Thread( () -> {
+            for ( int i = 0; i < 10000; i++ ) {
+                locks.lock( new RecipeVector[] { coffeeFirst }, MADE ).release();
+            }
+        } );
+        a.start();
+        b.start();
+        a.join( 10000 );
+        b.join( 10000 );
+        Assert.assertFalse( a.isAlive() );
+        Assert.assertFalse( b.isAlive() );
+    }
+
+    @Test
+    public void testNestedPurchasesShareLocks () throws Exception {
+        final RecipeVector latte = recipe( "Coffee", "Milk" );
+        final IngredientLocks.Held outer = locks.lock( new RecipeVector[] { latte }, MADE );
+        final IngredientLocks.Held inner = locks.lock( new RecipeVector[] { latte }, MADE );
+        inner.release();
+
+        final Thread other = brew( latte );
+        other.join( 200 );
+        Assert.assertTrue( "Still held by the outer purchase", other.isAlive() );
+        outer.release();
+        other.join( 5000 );
+        Assert.assertFalse( other.isAlive() );
+    }
+
+    @Test
+    public void testOutOfOrderLockTakenWhenFree () throws Exception {
+        recipe( "Coffee", "Milk" );
+        final IngredientLocks.Held milk = locks.lock( Collections.singleton( "Milk" ) );
+        final IngredientLocks.Held coffee = locks.lock( Collections.singleton( "Coffee" ) );
+        coffee.release();
+        milk.release();
+
+        final Thread latte = brew( recipe( "Coffee", "Milk" ) );
+        latte.join( 5000 );
+        Assert.assertFalse( "Everything was released", latte.isAlive() );
+    }
+
+    @Test
+    public void testOutOfOrderLockIsNotWaitedFor () throws Exception {
+        recipe( "Coffee", "Milk" );
+        final CountDownLatch taken = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( 1 );
+        final Thread other = new Thread( () -> {
+            final IngredientLocks.Held coffee = locks.lock( Collections.singleton( "Coffee" ) );
+            taken.countDown();
+            try {
+                done.await();
+            }
+            catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            coffee.release();
+        } );
+        other.start();
+        taken.await();
+
+        final IngredientLocks.Held milk = locks.lock( Collections.singleton( "Milk" ) );
+        try {
+            locks.lock( new RecipeVector[] { recipe( "Coffee", "Milk" ) }, MADE );
+            Assert.fail( "Waiting for Coffee while holding Milk could deadlock" );
+        }
+        catch ( final CannotAcquireLockException e ) {
+            // expected
+        }
+        finally {
+            milk.release();
+            done.countDown();
+        }
+        other.join( 5000 );
+
+        final Thread latte = brew( recipe( "Coffee", "Milk" ) );
+        latte.join( 5000 );
+        Assert.assertFalse( "The refused acquisition left nothing held", latte.isAlive() );
+    }
+
+}
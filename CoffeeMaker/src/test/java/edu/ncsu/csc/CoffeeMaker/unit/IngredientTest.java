@@ -12,6 +12,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -208,4 +209,20 @@ public class IngredientTest {
 
     }
 
+    @Test
+    @Transactional
+    public void testIngredientNamesAreUnique () {
+        // Names are compared ignoring case and surrounding whitespace
+        service.save( new Ingredient( "Coffee", 5 ) );
+
+        assertEquals( "Coffee", service.findByName( "COFFEE" ).getName() );
+        try {
+            service.save( new Ingredient( "coffee ", 3 ) );
+            Assert.fail( "An Ingredient was able to be created with the same name as another" );
+        }
+        catch ( final DataIntegrityViolationException e ) {
+            // expected
+        }
+    }
+
 }
@@ -0,0 +1,144 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryJournal;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryLedger;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+
+/**
+ * Checks the write-behind journal: purchases reach it only once committed,
+ * flushing rotates it away, and entries left behind by a crash are replayed.
+ * The background flush is pushed out of the way, so the tests flush by hand.
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest ( properties = { "coffeemaker.inventory.write-behind.enabled=true",
+        "coffeemaker.inventory.write-behind.journal=" + InventoryJournalTest.JOURNAL,
+        "coffeemaker.inventory.write-behind.flush-interval-ms=3600000" } )
+public class InventoryJournalTest {
+
+    static final String                JOURNAL = "target/inventory-journal-test/inventory.journal";
+
+    @Autowired
+    private InventoryJournal           journal;
+
+    @Autowired
+    private InventoryService           inventoryService;
+
+    @Autowired
+    private InventoryLedger            ledger;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final Path                 file    = Paths.get( JOURNAL );
+
+    private Recipe                     espresso;
+
+    @Before
+    public void setup () {
+        journal.flush();
+        final Inventory inventory = inventoryService.getInventory();
+        if ( null == inventory.findIngredientByName( "Coffee" ) ) {
+            inventory.addIngredient( new Ingredient( "Coffee", 0 ) );
+        }
+        inventory.setAmountInInventory( "Coffee", 20 );
+        inventoryService.save( inventory );
+
+        espresso = new Recipe();
+        espresso.setName( "Journaled" );
+        espresso.setPrice( 50 );
+        espresso.addIngredient( new Ingredient( "Coffee", 3 ) );
+    }
+
+    @Test
+    public void testRolledBackPurchaseIsNotJournaled () throws Exception {
+        new TransactionTemplate( transactionManager ).execute( status -> {
+            Assert.assertTrue( inventoryService.consume( espresso ) );
+            Assert.assertEquals( "Counted as used while its transaction is in flight", 3,
+                    (int) journal.unflushedSince( 0 ).get( "Coffee" ) );
+            status.setRollbackOnly();
+            return null;
+        } );
+
+        Assert.assertTrue( journal.unflushedSince( 0 ).isEmpty() );
+        Assert.assertEquals( 0, Files.size( file ) );
+        journal.flush();
+        Assert.assertEquals( 20, stored() );
+        inventoryService.levels();
+        Assert.assertEquals( "The ledger gave the claim back", 20, (int) ledger.getAmount( "Coffee" ) );
+    }
+
+    @Test
+    public void testFlushRotatesTheJournal () throws Exception {
+        Assert.assertTrue( inventoryService.consume( espresso ) );
+        Assert.assertTrue( "Appended once committed", Files.size( file ) > 0 );
+        Assert.assertEquals( "Not yet written to the database", 20, stored() );
+
+        journal.flush();
+        Assert.assertEquals( 17, stored() );
+        Assert.assertEquals( 0, Files.size( file ) );
+        try ( Stream<Path> files = Files.list( file.getParent() ) ) {
+            Assert.assertEquals( "The segment rotated away has been removed", 1, files.count() );
+        }
+        Assert.assertTrue(
+                journal.unflushedSince( inventoryService.getInventory().getJournalSequence() ).isEmpty() );
+    }
+
+    @Test
+    public void testReplayAfterCrash () throws Exception {
+        journal.stop();
+        final long applied = inventoryService.getInventory().getJournalSequence();
+        /* Left behind by a crash: one entry already applied, one not, and a torn write */
+        Files.write( file,
+                Arrays.asList( "{\"seq\":" + applied + ",\"used\":{\"Coffee\":5}}",
+                        "{\"seq\":" + ( applied + 1 ) + ",\"used\":{\"Coffee\":2}}",
+                        "{\"seq\":" + ( applied + 2 ) + ",\"used\":{\"Coff" ),
+                StandardCharsets.UTF_8 );
+        final Path unrelated = Paths.get( JOURNAL + ".bak" );
+        Files.write( unrelated,
+                Collections.singletonList( "{\"seq\":" + ( applied + 1 ) + ",\"used\":{\"Coffee\":9}}" ),
+                StandardCharsets.UTF_8 );
+        try {
+            journal.start();
+            Assert.assertEquals( "Only the entry not yet applied is replayed", 18, stored() );
+            Assert.assertEquals( applied + 1, inventoryService.getInventory().getJournalSequence() );
+            Assert.assertTrue( "Files that only start with the journal's name are left alone",
+                    Files.exists( unrelated ) );
+        }
+        finally {
+            Files.deleteIfExists( unrelated );
+        }
+
+        Assert.assertTrue( inventoryService.consume( espresso ) );
+        journal.flush();
+        Assert.assertEquals( "Numbering carries on after the replayed entries", 15, stored() );
+    }
+
+    /**
+     * Returns the amount of Coffee stored in the database.
+     */
+    private int stored () {
+        return inventoryService.getInventory().getAmountInInventory( "Coffee" );
+    }
+
+}
@@ -0,0 +1,122 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.repositories.IngredientRepository;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryLedger;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+
+/**
+ * Checks that a copy of the Inventory loaded into the ledger while a change to
+ * it is in flight does not outlive that change, and that a ledger that has
+ * drifted from the database cannot sell what the database does not have.
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+public class InventoryLedgerReloadTest {
+
+    @Autowired
+    private InventoryService           inventoryService;
+
+    @Autowired
+    private InventoryLedger            ledger;
+
+    @Autowired
+    private IngredientRepository       ingredientRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ExecutorService      other = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown () {
+        other.shutdownNow();
+    }
+
+    @Test
+    public void testReloadDuringSaveDoesNotSurviveIt () throws Exception {
+        final Inventory empty = inventoryService.getInventory();
+        if ( null == empty.findIngredientByName( "Coffee" ) ) {
+            empty.addIngredient( new Ingredient( "Coffee", 0 ) );
+        }
+        empty.setAmountInInventory( "Coffee", 0 );
+        inventoryService.save( empty );
+
+        new TransactionTemplate( transactionManager ).execute( status -> {
+            final Inventory stocked = inventoryService.getInventory();
+            stocked.setAmountInInventory( "Coffee", 40 );
+            inventoryService.save( stocked );
+            try {
+                /* A purchase on another thread loads the ledger before the save commits */
+                other.submit( () -> inventoryService.levels() ).get();
+            }
+            catch ( final Exception e ) {
+                throw new IllegalStateException( e );
+            }
+            return null;
+        } );
+
+        inventoryService.levels();
+        Assert.assertEquals( "The copy loaded before the commit should have been dropped", 40,
+                (int) ledger.getAmount( "Coffee" ) );
+
+        final Recipe espresso = new Recipe();
+        espresso.setName( "Reloaded" );
+        espresso.setPrice( 50 );
+        espresso.addIngredient( new Ingredient( "Coffee", 3 ) );
+        Assert.assertTrue( inventoryService.consume( espresso ) );
+    }
+
+    @Test
+    public void testPurchaseRefusedWhenTheDatabaseHasLess () {
+        final Inventory inventory = inventoryService.getInventory();
+        for ( final String name : new String[] { "Coffee", "Milk" } ) {
+            if ( null == inventory.findIngredientByName( name ) ) {
+                inventory.addIngredient( new Ingredient( name, 0 ) );
+            }
+            inventory.setAmountInInventory( name, 10 );
+        }
+        inventoryService.save( inventory );
+        inventoryService.levels();
+
+        /* Taken out of the database behind the ledger's back */
+        final long coffee = (Long) inventoryService.getInventory().findIngredientByName( "Coffee" ).getId();
+        new TransactionTemplate( transactionManager )
+                .execute( status -> ingredientRepository.decrementAmount( coffee, 8 ) );
+        Assert.assertEquals( 10, (int) ledger.getAmount( "Coffee" ) );
+
+        /* Milk is taken off first, then there is not enough Coffee */
+        final Recipe latte = new Recipe();
+        latte.setName( "Drifted" );
+        latte.setPrice( 50 );
+        latte.addIngredient( new Ingredient( "Milk", 3 ) );
+        latte.addIngredient( new Ingredient( "Coffee", 5 ) );
+        Assert.assertFalse( inventoryService.consume( latte ) );
+
+        final Inventory stored = inventoryService.getInventory();
+        Assert.assertEquals( "The Milk already taken off was put back", 10,
+                (int) stored.getAmountInInventory( "Milk" ) );
+        Assert.assertEquals( 2, (int) stored.getAmountInInventory( "Coffee" ) );
+
+        inventoryService.levels();
+        Assert.assertEquals( "The ledger was dropped and loaded from the database again", 2,
+                (int) ledger.getAmount( "Coffee" ) );
+        Assert.assertEquals( 10, (int) ledger.getAmount( "Milk" ) );
+    }
+
+}
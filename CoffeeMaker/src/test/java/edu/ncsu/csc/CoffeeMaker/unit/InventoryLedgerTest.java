@@ -0,0 +1,142 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientCatalog;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryLedger;
+
+public class InventoryLedgerTest {
+
+    private InventoryLedger ledger;
+
+    private Recipe          coffee;
+
+    /**
+     * Sets up the tests by loading a ledger from a small Inventory.
+     */
+    @Before
+    public void setup () {
+        final List<Ingredient> ingredients = new ArrayList<Ingredient>();
+        ingredients.add( new Ingredient( "Coffee", 500 ) );
+        ingredients.add( new Ingredient( "Milk", 20 ) );
+
+        ledger = new InventoryLedger( new IngredientCatalog() );
+        ledger.load( new Inventory( ingredients ) );
+
+        coffee = new Recipe();
+        coffee.setName( "Coffee" );
+        coffee.setPrice( 50 );
+        coffee.addIngredient( new Ingredient( "Coffee", 3 ) );
+        coffee.addIngredient( new Ingredient( "Milk", 1 ) );
+    }
+
+    @Test
+    public void testConsume () {
+        Assert.assertTrue( ledger.tryConsume( coffee ) );
+        Assert.assertEquals( 497, (int) ledger.getAmount( "Coffee" ) );
+        Assert.assertEquals( 19, (int) ledger.getAmount( "Milk" ) );
+
+        ledger.release( coffee );
+        Assert.assertEquals( 500, (int) ledger.getAmount( "Coffee" ) );
+        Assert.assertEquals( 20, (int) ledger.getAmount( "Milk" ) );
+    }
+
+    @Test
+    public void testNotEnoughTakesNothing () {
+        final Recipe latte = new Recipe();
+        latte.setName( "Latte" );
+        latte.addIngredient( new Ingredient( "Coffee", 3 ) );
+        latte.addIngredient( new Ingredient( "Milk", 21 ) );
+
+        Assert.assertFalse( ledger.tryConsume( latte ) );
+        Assert.assertEquals( "A failed purchase should not take any coffee", 500,
+                (int) ledger.getAmount( "Coffee" ) );
+
+        final Recipe mocha = new Recipe();
+        mocha.setName( "Mocha" );
+        mocha.addIngredient( new Ingredient( "Coffee", 3 ) );
+        mocha.addIngredient( new Ingredient( "Chocolate", 1 ) );
+
+        Assert.assertFalse( "Ingredients missing from the inventory are never enough", ledger.tryConsume( mocha ) );
+        Assert.assertEquals( 500, (int) ledger.getAmount( "Coffee" ) );
+    }
+
+    @Test
+    public void testRepeatedIngredientsAreAddedUp () {
+        final Recipe milky = new Recipe();
+        milky.setName( "Milky" );
+        milky.addIngredient( new Ingredient( "Milk", 15 ) );
+        milky.addIngredient( new Ingredient( "Milk", 15 ) );
+
+        Assert.assertFalse( "30 milk is needed, but there is only 20", ledger.tryConsume( milky ) );
+        Assert.assertEquals( 20, (int) ledger.getAmount( "Milk" ) );
+    }
+
+    @Test
+    public void testInvalidate () {
+        ledger.invalidate();
+        Assert.assertFalse( ledger.isLoaded() );
+        Assert.assertNull( ledger.getAmount( "Coffee" ) );
+        try {
+            ledger.tryConsume( coffee );
+            Assert.fail( "An unloaded ledger should not be able to make a decision" );
+        }
+        catch ( final IllegalStateException ise ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentConsumeNeverOversells () throws Exception {
+        final AtomicInteger made = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for ( int t = 0; t < 8; t++ ) {
+            threads.add( new Thread( () -> {
+                for ( int i = 0; i < 10; i++ ) {
+                    if ( ledger.tryConsume( coffee ) ) {
+                        made.incrementAndGet();
+                    }
+                }
+            } ) );
+        }
+        for ( final Thread t : threads ) {
+            t.start();
+        }
+        for ( final Thread t : threads ) {
+            t.join();
+        }
+
+        /* Milk runs out first: 20 units at 1 per cup */
+        Assert.assertEquals( 20, made.get() );
+        Assert.assertEquals( 0, (int) ledger.getAmount( "Milk" ) );
+        Assert.assertEquals( 500 - 3 * 20, (int) ledger.getAmount( "Coffee" ) );
+    }
+
+    @Test
+    public void testLoadFromBeforeAnInvalidateIsNotPublished () {
+        final long generation = ledger.generation();
+        final List<Ingredient> stale = new ArrayList<Ingredient>();
+        stale.add( new Ingredient( "Coffee", 7 ) );
+        stale.add( new Ingredient( "Milk", 7 ) );
+
+        /* A change commits and drops the ledger after the Inventory was read */
+        ledger.invalidate();
+        ledger.load( new Inventory( stale ), Collections.emptyMap(), generation );
+        Assert.assertFalse( "The copy read before the change is thrown away", ledger.isLoaded() );
+
+        ledger.load( new Inventory( stale ), Collections.emptyMap(), ledger.generation() );
+        Assert.assertTrue( ledger.isLoaded() );
+        Assert.assertEquals( 7, (int) ledger.getAmount( "Coffee" ) );
+    }
+
+}
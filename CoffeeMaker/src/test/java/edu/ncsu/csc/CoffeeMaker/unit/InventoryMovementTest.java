@@ -0,0 +1,93 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.ncsu.csc.CoffeeMaker.forms.RestockForm;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.InventoryMovement;
+import edu.ncsu.csc.CoffeeMaker.models.InventoryMovement.Kind;
+import edu.ncsu.csc.CoffeeMaker.models.InventorySnapshot;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryMovements;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+
+/**
+ * Checks that every change to the Inventory is logged as a movement, and that
+ * snapshots rolled up from the log agree with the Inventory.
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+public class InventoryMovementTest {
+
+    @Autowired
+    private InventoryService   inventoryService;
+
+    @Autowired
+    private InventoryMovements movements;
+
+    @Test
+    @Transactional
+    public void testMovementsAreLogged () {
+        final Inventory ivt = inventoryService.getInventory();
+        final List<Ingredient> stock = new ArrayList<Ingredient>();
+        stock.add( new Ingredient( "Coffee", 10 ) );
+        stock.add( new Ingredient( "Milk", 10 ) );
+        ivt.addIngredients( stock );
+        inventoryService.save( ivt );
+
+        final InventorySnapshot first = movements.snapshot();
+        final int coffee = inventoryService.getInventory().getAmountInInventory( "Coffee" );
+        final int milk = inventoryService.getInventory().getAmountInInventory( "Milk" );
+
+        final Recipe recipe = new Recipe();
+        recipe.setName( "Logged" );
+        recipe.setPrice( 50 );
+        recipe.addIngredient( new Ingredient( "Coffee", 3 ) );
+        recipe.addIngredient( new Ingredient( "Milk", 1 ) );
+        Assert.assertTrue( inventoryService.consume( recipe ) );
+
+        final List<RestockForm> delivery = new ArrayList<RestockForm>();
+        delivery.add( new RestockForm( "Coffee", 5, null ) );
+        delivery.add( new RestockForm( "Milk", null, 2 ) );
+        inventoryService.restock( delivery );
+
+        final List<InventoryMovement> logged = movements.history( first.getLastMovement(), 10 );
+        Assert.assertEquals( 4, logged.size() );
+        Assert.assertEquals( -3, delta( logged, Kind.BREW, "Coffee" ) );
+        Assert.assertEquals( -1, delta( logged, Kind.BREW, "Milk" ) );
+        Assert.assertEquals( 5, delta( logged, Kind.RESTOCK, "Coffee" ) );
+        Assert.assertEquals( 2 - ( milk - 1 ), delta( logged, Kind.ADJUSTMENT, "Milk" ) );
+
+        /* The next snapshot is the last one plus everything logged since */
+        final InventorySnapshot second = movements.snapshot();
+        Assert.assertEquals( logged.get( logged.size() - 1 ).getId(), second.getLastMovement() );
+        Assert.assertEquals( 2, second.getLevels().get( "Coffee" ) - first.getLevels().get( "Coffee" ) );
+        Assert.assertEquals( 2 - milk, second.getLevels().get( "Milk" ) - first.getLevels().get( "Milk" ) );
+        Assert.assertEquals( coffee + 2, (int) inventoryService.getInventory().getAmountInInventory( "Coffee" ) );
+
+        Assert.assertEquals( "Nothing moved, so no new snapshot is needed", second.getId(),
+                movements.snapshot().getId() );
+    }
+
+    private int delta ( final List<InventoryMovement> logged, final Kind kind, final String ingredient ) {
+        for ( final InventoryMovement movement : logged ) {
+            if ( kind == movement.getKind() && ingredient.equals( movement.getIngredient() ) ) {
+                return movement.getDelta();
+            }
+        }
+        Assert.fail( "No " + kind + " movement of " + ingredient );
+        return 0;
+    }
+
+}
@@ -0,0 +1,92 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.services.OptimisticRetry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class OptimisticRetryTest {
+
+    private SimpleMeterRegistry registry;
+
+    private OptimisticRetry     retry;
+
+    @Before
+    public void setup () {
+        registry = new SimpleMeterRegistry();
+        retry = new OptimisticRetry( 3, 1, registry );
+    }
+
+    @Test
+    public void testRetriesConflicts () {
+        final AtomicInteger attempts = new AtomicInteger();
+        final String result = retry.run( () -> {
+            if ( attempts.incrementAndGet() < 3 ) {
+                throw new ObjectOptimisticLockingFailureException( Inventory.class, 1L );
+            }
+            return "made";
+        } );
+
+        Assert.assertEquals( "made", result );
+        Assert.assertEquals( 3, attempts.get() );
+        Assert.assertEquals( 2.0, registry.counter( "coffeemaker.inventory.optimistic.conflicts" ).count(), 0 );
+        Assert.assertEquals( 2.0, registry.counter( "coffeemaker.inventory.optimistic.retries" ).count(), 0 );
+        Assert.assertEquals( 0.0, registry.counter( "coffeemaker.inventory.optimistic.exhausted" ).count(), 0 );
+    }
+
+    @Test
+    public void testRetriesLockFailures () {
+        final AtomicInteger attempts = new AtomicInteger();
+        final String result = retry.run( () -> {
+            if ( attempts.incrementAndGet() < 2 ) {
+                throw new CannotAcquireLockException( "Deadlock found when trying to get lock" );
+            }
+            return "restocked";
+        } );
+
+        Assert.assertEquals( "restocked", result );
+        Assert.assertEquals( 2, attempts.get() );
+    }
+
+    @Test
+    public void testGivesUp () {
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            retry.run( () -> {
+                attempts.incrementAndGet();
+                throw new ObjectOptimisticLockingFailureException( Inventory.class, 1L );
+            } );
+            Assert.fail( "Work that always conflicts should fail" );
+        }
+        catch ( final OptimisticLockingFailureException e ) {
+            // expected
+        }
+
+        Assert.assertEquals( 3, attempts.get() );
+        Assert.assertEquals( 1.0, registry.counter( "coffeemaker.inventory.optimistic.exhausted" ).count(), 0 );
+    }
+
+    @Test
+    public void testOtherFailuresAreNotRetried () {
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            retry.run( () -> {
+                attempts.incrementAndGet();
+                throw new IllegalArgumentException( "Recipe not found" );
+            } );
+            Assert.fail();
+        }
+        catch ( final IllegalArgumentException e ) {
+            Assert.assertEquals( 1, attempts.get() );
+        }
+    }
+
+}
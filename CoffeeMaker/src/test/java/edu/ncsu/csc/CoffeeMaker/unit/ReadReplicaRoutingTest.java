@@ -0,0 +1,126 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
+
+/**
+ * Checks that read-only transactions are sent to the read replica and
+ * everything else to the primary, with two embedded databases standing in for
+ * them.
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest ( properties = "coffeemaker.datasource.replica.url=" + ReadReplicaRoutingTest.REPLICA_URL )
+@AutoConfigureMockMvc
+@ActiveProfiles ( "h2" )
+public class ReadReplicaRoutingTest {
+
+    static final String                REPLICA_URL = "jdbc:h2:mem:CoffeeMakerReplica;MODE=MySQL;"
+            + "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private MockMvc                    mvc;
+
+    @Autowired
+    @Qualifier ( "primaryDataSource" )
+    private DataSource                 primary;
+
+    @Autowired
+    private IngredientService          ingredientService;
+
+    @Autowired
+    private ResourceVersions           versions;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager              entityManager;
+
+    @Test
+    public void testReadOnlyTransactionsUseTheReplica () {
+        Assert.assertEquals( "coffeemakerreplica", database( true ) );
+        Assert.assertEquals( "coffeemaker", database( false ) );
+        Assert.assertEquals( "A read-only transaction after a write still goes to the replica",
+                "coffeemakerreplica", database( true ) );
+    }
+
+    @Test
+    public void testReplicaServedReadsAreNotTaggedWithThePrimarysVersion () throws Exception {
+        catchUpReplica();
+        final String name = "Lagging" + System.nanoTime();
+        ingredientService.save( new Ingredient( name, 5 ) );
+        Assert.assertTrue( "The replica has not seen the new ingredient yet", ingredientService.findAll().stream()
+                .noneMatch( ingredient -> name.equals( ingredient.getName() ) ) );
+
+        final String current = versions.etag( Resource.INGREDIENTS );
+        mvc.perform( get( "/api/v1/ingredients" ) ).andExpect( status().isOk() )
+                .andExpect( header().doesNotExist( HttpHeaders.ETAG ) );
+        mvc.perform( get( "/api/v1/ingredients" ).header( HttpHeaders.IF_NONE_MATCH, current ) )
+                .andExpect( status().isOk() );
+        mvc.perform( get( "/api/v1/inventory" ) ).andExpect( status().isOk() )
+                .andExpect( header().doesNotExist( HttpHeaders.ETAG ) );
+        mvc.perform( get( "/api/v1/recipes" ).param( "limit", "5" ) ).andExpect( status().isOk() )
+                .andExpect( header().doesNotExist( HttpHeaders.ETAG ) );
+
+        mvc.perform( get( "/api/v1/recipes" ) ).andExpect( status().isOk() )
+                .andExpect( header().exists( HttpHeaders.ETAG ) );
+    }
+
+    /**
+     * Copies everything in the primary to the replica, which then lags behind
+     * until the next copy.
+     */
+    private void catchUpReplica () throws Exception {
+        final File script = File.createTempFile( "primary", ".sql" );
+        try ( Connection connection = primary.getConnection();
+                Statement statement = connection.createStatement() ) {
+            statement.execute( "SCRIPT TO '" + script.getAbsolutePath() + "'" );
+        }
+        try ( Connection connection = DriverManager.getConnection( REPLICA_URL, "sa", "" );
+                Statement statement = connection.createStatement() ) {
+            statement.execute( "DROP ALL OBJECTS" );
+            statement.execute( "RUNSCRIPT FROM '" + script.getAbsolutePath() + "'" );
+        }
+        script.delete();
+    }
+
+    /**
+     * Returns the name of the database a transaction runs against.
+     */
+    private String database ( final boolean readOnly ) {
+        final TransactionTemplate template = new TransactionTemplate( transactionManager );
+        template.setReadOnly( readOnly );
+        return template.execute( status -> String
+                .valueOf( entityManager.createNativeQuery( "select database()" ).getSingleResult() ).toLowerCase() );
+    }
+
+}
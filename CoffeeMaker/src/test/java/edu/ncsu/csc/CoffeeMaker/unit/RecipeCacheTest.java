@@ -0,0 +1,124 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientCatalog;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeCache;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeVector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RecipeCacheTest {
+
+    private SimpleMeterRegistry registry;
+
+    private RecipeCache         cache;
+
+    @Before
+    public void setup () {
+        registry = new SimpleMeterRegistry();
+        cache = new RecipeCache( 2, registry );
+    }
+
+    /**
+     * Creates a recipe with the provided name.
+     *
+     * @param name
+     *            name of the recipe
+     * @return the recipe
+     */
+    private static Recipe recipe ( final String name ) {
+        final Recipe recipe = new Recipe();
+        recipe.setName( name );
+        recipe.setPrice( 50 );
+        return recipe;
+    }
+
+    @Test
+    public void testHitsAndMisses () {
+        final Recipe coffee = recipe( "Coffee" );
+        Assert.assertNull( cache.get( "Coffee" ) );
+        cache.put( coffee, cache.generation() );
+        Assert.assertSame( coffee, cache.get( "Coffee" ) );
+
+        Assert.assertEquals( 1.0, registry.counter( "coffeemaker.recipes.cache.hits" ).count(), 0 );
+        Assert.assertEquals( 1.0, registry.counter( "coffeemaker.recipes.cache.misses" ).count(), 0 );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted () {
+        cache.put( recipe( "Coffee" ), cache.generation() );
+        cache.put( recipe( "Latte" ), cache.generation() );
+        cache.get( "Coffee" );
+        cache.put( recipe( "Mocha" ), cache.generation() );
+
+        Assert.assertNotNull( cache.get( "Coffee" ) );
+        Assert.assertNull( "Latte was used least recently", cache.get( "Latte" ) );
+        Assert.assertNotNull( cache.get( "Mocha" ) );
+        Assert.assertEquals( 1.0, registry.counter( "coffeemaker.recipes.cache.evictions" ).count(), 0 );
+    }
+
+    @Test
+    public void testInvalidate () {
+        cache.put( recipe( "Coffee" ), cache.generation() );
+        cache.putAll( Arrays.asList( recipe( "Coffee" ) ), cache.generation() );
+        Assert.assertEquals( 1, cache.getAll().size() );
+
+        cache.invalidateOnCompletion();
+        Assert.assertNull( cache.get( "Coffee" ) );
+        Assert.assertNull( cache.getAll() );
+    }
+
+    @Test
+    public void testReadsFromBeforeAnInvalidateAreNotCached () {
+        final long generation = cache.generation();
+        cache.invalidate();
+        cache.put( recipe( "Coffee" ), generation );
+        cache.putAll( Arrays.asList( recipe( "Coffee" ) ), generation );
+
+        Assert.assertNull( "The recipe may have changed while it was being read", cache.get( "Coffee" ) );
+        Assert.assertNull( cache.getAll() );
+    }
+
+    @Test
+    public void testCachedRecipesAreCompiledOnce () {
+        final IngredientCatalog catalog = new IngredientCatalog();
+        final Recipe coffee = recipe( "Coffee" );
+        coffee.addIngredient( new Ingredient( "Coffee", 3 ) );
+        cache.put( coffee, cache.generation() );
+
+        final RecipeVector compiled = cache.compile( cache.get( "Coffee" ), catalog );
+        Assert.assertSame( compiled, cache.compile( coffee, catalog ) );
+        Assert.assertEquals( 3, compiled.amount( 0 ) );
+
+        final Recipe copy = recipe( "Coffee" );
+        copy.addIngredient( new Ingredient( "Coffee", 5 ) );
+        Assert.assertEquals( "Only the cached instance uses the compiled vector", 5,
+                cache.compile( copy, catalog ).amount( 0 ) );
+
+        cache.invalidate();
+        Assert.assertNotSame( "Dropped along with the recipe", compiled, cache.compile( coffee, catalog ) );
+    }
+
+    @Test
+    public void testLookupsTakeNoLock () throws Exception {
+        final IngredientCatalog catalog = new IngredientCatalog();
+        final Recipe coffee = recipe( "Coffee" );
+        coffee.addIngredient( new Ingredient( "Coffee", 3 ) );
+        cache.put( coffee, cache.generation() );
+
+        final Thread brew = new Thread( () -> cache.compile( cache.get( "Coffee" ), catalog ) );
+        /* Held while an eviction is under way */
+        synchronized ( cache ) {
+            brew.start();
+            brew.join( 5000 );
+            Assert.assertFalse( "A lookup should not wait for an eviction", brew.isAlive() );
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.repositories.RecipeRepository;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * Checks that listing the recipes loads their ingredients in the same query,
+ * no matter how many recipes there are. Not transactional, so that nothing is
+ * already loaded in the session.
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+public class RecipeFetchTest {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private RecipeRepository     recipeRepository;
+
+    @Autowired
+    private RecipeService        recipeService;
+
+    private Statistics           statistics;
+
+    @Before
+    public void setup () {
+        recipeService.deleteAll();
+        statistics = entityManagerFactory.unwrap( SessionFactory.class ).getStatistics();
+    }
+
+    @Test
+    public void testListingIsOneQuery () {
+        for ( int i = 0; i < 3; i++ ) {
+            final Recipe recipe = new Recipe();
+            recipe.setName( "Fetched " + i );
+            recipe.setPrice( 50 );
+            recipe.addIngredient( new Ingredient( "Coffee", 3 ) );
+            recipe.addIngredient( new Ingredient( "Milk", 1 ) );
+            recipeService.save( recipe );
+        }
+
+        try {
+            statistics.clear();
+            final List<Recipe> recipes = recipeRepository.findAllWithIngredients();
+
+            Assert.assertEquals( "Each recipe should be listed once", 3, recipes.size() );
+            for ( final Recipe recipe : recipes ) {
+                Assert.assertEquals( 2, recipe.getIngredients().size() );
+            }
+            Assert.assertEquals( "The recipes and their ingredients should be loaded together", 1,
+                    statistics.getPrepareStatementCount() );
+        }
+        finally {
+            recipeService.deleteAll();
+        }
+    }
+
+}
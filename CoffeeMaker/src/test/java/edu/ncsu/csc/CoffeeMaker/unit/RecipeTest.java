@@ -16,6 +16,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -370,6 +371,22 @@ public class RecipeTest {
          */
     }
 
+    @Test
+    @Transactional
+    public void testRecipeNamesAreUnique () {
+        // Names are compared ignoring case and surrounding whitespace
+        service.save( createRecipe( "Coffee", 50, 3, 1, 1, 0 ) );
+
+        Assert.assertEquals( "Coffee", service.findByName( " coffee " ).getName() );
+        try {
+            service.save( createRecipe( "COFFEE", 60, 3, 1, 1, 0 ) );
+            Assert.fail( "A recipe was able to be created with the same name as another" );
+        }
+        catch ( final DataIntegrityViolationException e ) {
+            // expected
+        }
+    }
+
     private Recipe createRecipe ( final String name, final Integer price, final Integer coffee, final Integer milk,
             final Integer sugar, final Integer chocolate ) {
         final Recipe recipe = new Recipe();
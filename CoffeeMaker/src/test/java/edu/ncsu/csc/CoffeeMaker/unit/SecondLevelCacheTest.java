@@ -0,0 +1,85 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.repositories.RecipeRepository;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * Checks that repeated lookups are answered from Hibernate's second-level and
+ * query caches instead of the database. Not transactional, as each lookup has
+ * to run in a session of its own to show the effect.
+ */
+@RunWith ( SpringRunner.class )
+@SpringBootTest
+public class SecondLevelCacheTest {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private RecipeRepository     recipeRepository;
+
+    @Autowired
+    private RecipeService        recipeService;
+
+    @Autowired
+    private InventoryService     inventoryService;
+
+    private Statistics           statistics;
+
+    @Before
+    public void setup () {
+        statistics = entityManagerFactory.unwrap( SessionFactory.class ).getStatistics();
+    }
+
+    @Test
+    public void testRecipeLookupIsCached () {
+        final Recipe recipe = new Recipe();
+        recipe.setName( "Cached Coffee" );
+        recipe.setPrice( 50 );
+        recipe.addIngredient( new Ingredient( "Coffee", 3 ) );
+        recipe.addIngredient( new Ingredient( "Milk", 1 ) );
+        recipeService.save( recipe );
+
+        try {
+            recipeRepository.findByName( "Cached Coffee" );
+
+            statistics.clear();
+            final Recipe found = recipeRepository.findByName( "Cached Coffee" );
+
+            Assert.assertEquals( 2, found.getIngredients().size() );
+            Assert.assertEquals( "The recipe and its ingredients should all come from the cache", 0,
+                    statistics.getPrepareStatementCount() );
+            Assert.assertEquals( 1, statistics.getQueryCacheHitCount() );
+        }
+        finally {
+            recipeService.delete( recipe );
+        }
+    }
+
+    @Test
+    public void testInventoryLookupIsCached () {
+        inventoryService.getInventory();
+
+        statistics.clear();
+        inventoryService.getInventory();
+
+        Assert.assertEquals( "The Inventory and its ingredients should all come from the cache", 0,
+                statistics.getPrepareStatementCount() );
+    }
+
+}